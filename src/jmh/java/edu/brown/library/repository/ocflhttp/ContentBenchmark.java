@@ -0,0 +1,93 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import edu.wisc.library.ocfl.api.model.DigestAlgorithm;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Whole GET & HEAD requests for a file's content, for a file of fileSize bytes in a synthetic object with
+ filesPerObject files: the full content, a 64KB range, a HEAD, & a conditional GET that gets a 304.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentBenchmark {
+
+    @Param({"1024", "1048576", "16777216"})
+    int fileSize;
+
+    @Param({"10"})
+    int filesPerObject;
+
+    LocalServer localServer;
+    String getRequest;
+    String rangeRequest;
+    String headRequest;
+    String notModifiedRequest;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        localServer = new LocalServer();
+        var repository = new SyntheticRepository();
+        repository.filesPerObject = filesPerObject;
+        repository.minFileSize = fileSize;
+        repository.maxFileSize = fileSize;
+        repository.generate(localServer.ocflHttp);
+        var objectId = SyntheticRepository.getObjectId(0);
+        var fileName = SyntheticRepository.getFileName(0);
+        var uri = "/" + objectId + "/files/" + fileName + "/content";
+        var digest = localServer.ocflHttp.repo.describeVersion(ObjectVersionId.head(objectId))
+                .getFile(fileName).getFixity().get(DigestAlgorithm.sha512);
+        getRequest = LocalServer.get(uri);
+        rangeRequest = LocalServer.get(uri, "Range: bytes=0-" + (Math.min(fileSize, 65536) - 1));
+        headRequest = LocalServer.request("HEAD", uri);
+        notModifiedRequest = LocalServer.get(uri, "If-None-Match: \"" + digest + "\"");
+        if (localServer.getStatus(getRequest) != 200 || localServer.getStatus(rangeRequest) != 206 ||
+                localServer.getStatus(headRequest) != 200 || localServer.getStatus(notModifiedRequest) != 304) {
+            throw new IllegalStateException("unexpected response status");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        localServer.stop();
+    }
+
+    @Benchmark
+    public ByteBuffer get() throws Exception {
+        return localServer.send(getRequest);
+    }
+
+    @Benchmark
+    public ByteBuffer getRange() throws Exception {
+        return localServer.send(rangeRequest);
+    }
+
+    @Benchmark
+    public ByteBuffer head() throws Exception {
+        return localServer.send(headRequest);
+    }
+
+    @Benchmark
+    public ByteBuffer getNotModified() throws Exception {
+        return localServer.send(notModifiedRequest);
+    }
+}
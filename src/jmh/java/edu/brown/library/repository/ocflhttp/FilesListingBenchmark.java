@@ -0,0 +1,99 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Whole GET /<object_id>/files requests (routing, the listing & writing the JSON), on one synthetic object with
+ filesPerObject files & versionsPerObject versions. Plus a request that doesn't match any route, for the cost
+ of everything up to the routing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilesListingBenchmark {
+
+    @Param({"100", "10000"})
+    int filesPerObject;
+
+    @Param({"1", "10"})
+    int versionsPerObject;
+
+    //0 turns the response cache off, so every request renders the listing
+    @Param({"0", "67108864"})
+    long responseCacheMaxBytes;
+
+    LocalServer localServer;
+    String listingRequest;
+    String listingAllFieldsRequest;
+    String listingNdjsonRequest;
+    String listingPageRequest;
+    String notFoundRequest;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        localServer = new LocalServer(config -> config.responseCacheMaxBytes = responseCacheMaxBytes);
+        var repository = new SyntheticRepository();
+        repository.filesPerObject = filesPerObject;
+        repository.versionsPerObject = versionsPerObject;
+        repository.generate(localServer.ocflHttp);
+        var uri = "/" + SyntheticRepository.getObjectId(0) + "/files";
+        listingRequest = LocalServer.get(uri);
+        listingAllFieldsRequest = LocalServer.get(uri + "?fields=state,size,mimetype,checksum,lastModified&includeDeleted=true");
+        listingNdjsonRequest = LocalServer.get(uri + "?fields=state,size", "Accept: application/x-ndjson");
+        listingPageRequest = LocalServer.get(uri + "?fields=state,size&limit=100&cursor=" + OcflHttp.encodeCursor(SyntheticRepository.getFileName(filesPerObject / 2)));
+        notFoundRequest = LocalServer.get("/" + SyntheticRepository.getObjectId(0) + "/unknown");
+        for (String request : new String[] {listingRequest, listingAllFieldsRequest, listingNdjsonRequest, listingPageRequest}) {
+            if (localServer.getStatus(request) != 200) {
+                throw new IllegalStateException("request failed: " + request);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        localServer.stop();
+    }
+
+    @Benchmark
+    public ByteBuffer listing() throws Exception {
+        return localServer.send(listingRequest);
+    }
+
+    @Benchmark
+    public ByteBuffer listingAllFields() throws Exception {
+        return localServer.send(listingAllFieldsRequest);
+    }
+
+    @Benchmark
+    public ByteBuffer listingNdjson() throws Exception {
+        return localServer.send(listingNdjsonRequest);
+    }
+
+    @Benchmark
+    public ByteBuffer listingPage() throws Exception {
+        return localServer.send(listingPageRequest);
+    }
+
+    @Benchmark
+    public ByteBuffer routeNotFound() throws Exception {
+        return localServer.send(notFoundRequest);
+    }
+}
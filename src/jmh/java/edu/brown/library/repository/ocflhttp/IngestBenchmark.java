@@ -0,0 +1,89 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+Time to write one new version with fileCount files of fileSize bytes each, with uploads ingested one file at
+ a time (ingestThreads = 1) or on the parallel ingest pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestBenchmark {
+
+    @Param({"1", "4", "8"})
+    int ingestThreads;
+
+    @Param({"10", "200"})
+    int fileCount;
+
+    @Param({"4096", "1048576"})
+    int fileSize;
+
+    Path repoRoot;
+    Path workDir;
+    OcflHttp ocflHttp;
+    byte[][] contents;
+    int objectCount = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        repoRoot = Files.createTempDirectory("ocfl-java-http-bench");
+        workDir = Files.createTempDirectory("ocfl-java-http-bench-work");
+        var config = OcflHttpConfig.of(repoRoot, workDir, OcflHttpConfig.DEFAULT_FILE_SIZE_THRESHOLD, List.of());
+        config.ingestThreads = ingestThreads;
+        ocflHttp = new OcflHttp(config);
+        //different content for each file, so ocfl-java doesn't dedupe them
+        var random = new Random(1);
+        contents = new byte[fileCount][fileSize];
+        for (byte[] content : contents) {
+            random.nextBytes(content);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        if (ocflHttp.ingester != null) {
+            ocflHttp.ingester.close();
+        }
+        ocflHttp.repo.close();
+        TestUtils.deleteDirectory(repoRoot);
+        TestUtils.deleteDirectory(workDir);
+    }
+
+    @Benchmark
+    public void writeNewObject() throws Exception {
+        var files = new HashMap<String, InputStream>();
+        for (int i = 0; i < fileCount; i++) {
+            files.put("file" + i, new ByteArrayInputStream(contents[i]));
+        }
+        objectCount++;
+        ocflHttp.writeFilesToObject(ObjectVersionId.version("bench:" + objectCount, 0), files, new VersionInfo(), false);
+    }
+}
@@ -0,0 +1,270 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.server.Server;
+
+/*
+End-to-end load test: generates a synthetic repository, then for each server thread pool setting it starts
+ OcflHttp.getServer() in this JVM, runs a mix of reads & writes against it from --clients threads, & reports
+ throughput & latency percentiles for each kind of request.
+Options (all optional):
+    --objects 100 --files 100 --versions 5       size of the generated repository
+    --min-size 1024 --max-size 1048576           file sizes, spread on a log scale
+    --pools 8:32,8:200                           server thread pool settings to run, as minThreads:maxThreads
+    --clients 16                                 concurrent client threads
+    --warmup 10 --duration 30                    seconds for each pool setting
+    --mix list=30,listFields=10,content=30,head=10,versions=10,update=8,create=2
+    --client <class name>                        a LoadTestClient implementation
+    --repo <dir> --work <dir>                    use (& keep) these directories - an existing repo isn't regenerated
+    --port 8000
+ */
+public class LoadTest {
+
+    static final String Boundary = "LoadTestBoundary";
+
+    final Map<String, String> options = new HashMap<>();
+    int objectCount;
+    int filesPerObject;
+    int clientCount;
+    int port;
+    LinkedHashMap<String, Integer> mix = new LinkedHashMap<>();
+    final AtomicInteger createdObjects = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest(args).run();
+    }
+
+    LoadTest(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("invalid option: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        objectCount = getInt("objects", 100);
+        filesPerObject = getInt("files", 100);
+        clientCount = getInt("clients", 16);
+        port = getInt("port", 8000);
+        for (String entry : options.getOrDefault("mix", "list=30,listFields=10,content=30,head=10,versions=10,update=8,create=2").split(",")) {
+            var parts = entry.split("=");
+            mix.put(parts[0], Integer.parseInt(parts[1]));
+        }
+    }
+
+    int getInt(String name, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    void run() throws Exception {
+        var keepDirs = options.containsKey("repo");
+        var repoRoot = keepDirs ? Path.of(options.get("repo")) : Files.createTempDirectory("ocfl-java-http-load");
+        var workDir = options.containsKey("work") ? Path.of(options.get("work")) : Files.createTempDirectory("ocfl-java-http-load-work");
+        try {
+            var config = OcflHttpConfig.of(repoRoot, workDir, OcflHttpConfig.DEFAULT_FILE_SIZE_THRESHOLD, List.of());
+            if (!Files.exists(repoRoot.resolve("0=ocfl_1.0"))) {
+                var repository = new SyntheticRepository();
+                repository.objectCount = objectCount;
+                repository.filesPerObject = filesPerObject;
+                repository.versionsPerObject = getInt("versions", 5);
+                repository.minFileSize = getInt("min-size", 1024);
+                repository.maxFileSize = getInt("max-size", 1048576);
+                var start = System.nanoTime();
+                var ocflHttp = new OcflHttp(config);
+                repository.generate(ocflHttp);
+                ocflHttp.repo.close();
+                System.out.printf("generated %d objects in %.1fs%n", objectCount, (System.nanoTime() - start) / 1e9);
+            }
+            for (String pool : options.getOrDefault("pools", "8:32,8:200").split(",")) {
+                var threads = pool.split(":");
+                runPoolSetting(config, Integer.parseInt(threads[0]), Integer.parseInt(threads[1]));
+            }
+        } finally {
+            if (!keepDirs) {
+                TestUtils.deleteDirectory(repoRoot);
+                TestUtils.deleteDirectory(workDir);
+            }
+        }
+    }
+
+    void runPoolSetting(OcflHttpConfig config, int minThreads, int maxThreads) throws Exception {
+        //a fresh handler for each setting, so they all start with cold caches
+        var ocflHttp = new OcflHttp(config);
+        Server server = OcflHttp.getServer(port, minThreads, maxThreads);
+        server.setHandler(ocflHttp);
+        server.start();
+        try {
+            run(getInt("warmup", 10), null);
+            var results = new ConcurrentHashMap<String, RouteResults>();
+            var seconds = getInt("duration", 30);
+            run(seconds, results);
+            report("pool " + minThreads + ":" + maxThreads + ", " + clientCount + " clients", seconds, results);
+        } finally {
+            server.stop();
+            ocflHttp.repo.close();
+        }
+    }
+
+    void run(int seconds, Map<String, RouteResults> results) throws Exception {
+        var end = System.nanoTime() + seconds * 1_000_000_000L;
+        var done = new CountDownLatch(clientCount);
+        var failure = new AtomicLong();
+        for (int i = 0; i < clientCount; i++) {
+            var clientNumber = i;
+            var thread = new Thread(() -> {
+                try (var client = createClient()) {
+                    var random = new Random(clientNumber);
+                    var local = new HashMap<String, RouteResults>();
+                    while (System.nanoTime() < end) {
+                        var route = pickRoute(random);
+                        var start = System.nanoTime();
+                        var status = sendRequest(client, route, random, clientNumber);
+                        var latency = System.nanoTime() - start;
+                        local.computeIfAbsent(route, r -> new RouteResults()).add(latency, status >= 400);
+                    }
+                    if (results != null) {
+                        local.forEach((route, routeResults) -> results.merge(route, routeResults, RouteResults::merge));
+                    }
+                } catch (Exception e) {
+                    failure.incrementAndGet();
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + i);
+            thread.start();
+        }
+        done.await();
+        if (failure.get() > 0) {
+            throw new IllegalStateException(failure.get() + " client threads failed");
+        }
+    }
+
+    LoadTestClient createClient() throws Exception {
+        var clientClass = options.get("client");
+        if (clientClass == null) {
+            return new LoadTestClient.JavaHttpClient();
+        }
+        return (LoadTestClient) Class.forName(clientClass).getDeclaredConstructor().newInstance();
+    }
+
+    String pickRoute(Random random) {
+        var total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        var pick = random.nextInt(total);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    int sendRequest(LoadTestClient client, String route, Random random, int clientNumber) throws Exception {
+        var base = "http://localhost:" + port + "/";
+        var objectId = SyntheticRepository.getObjectId(random.nextInt(objectCount));
+        var fileName = SyntheticRepository.getFileName(random.nextInt(filesPerObject));
+        var contentUri = URI.create(base + objectId + "/files/" + fileName + "/content");
+        switch (route) {
+            case "list":
+                return client.send("GET", URI.create(base + objectId + "/files"), Map.of(), null);
+            case "listFields":
+                return client.send("GET", URI.create(base + objectId + "/files?fields=state,size,mimetype,checksum,lastModified"), Map.of(), null);
+            case "content":
+                return client.send("GET", contentUri, Map.of(), null);
+            case "head":
+                return client.send("HEAD", contentUri, Map.of(), null);
+            case "versions":
+                return client.send("GET", URI.create(base + objectId + "/versions"), Map.of(), null);
+            case "update":
+                return client.send("PUT", URI.create(base + objectId + "/files?updateExisting=true&message=load%20test"),
+                        Map.of("Content-Type", "multipart/form-data; boundary=" + Boundary), getUploadBody(fileName, random));
+            case "create":
+                var newObjectId = "load:" + clientNumber + "-" + createdObjects.incrementAndGet();
+                return client.send("POST", URI.create(base + newObjectId + "/files?message=load%20test"),
+                        Map.of("Content-Type", "multipart/form-data; boundary=" + Boundary), getUploadBody(fileName, random));
+            default:
+                throw new IllegalArgumentException("unknown route in --mix: " + route);
+        }
+    }
+
+    byte[] getUploadBody(String fileName, Random random) {
+        var content = new byte[1024];
+        random.nextBytes(content);
+        var head = "--" + Boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n\r\n{}\r\n" +
+                "--" + Boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"" + fileName + "\"\r\n\r\n";
+        var tail = "\r\n--" + Boundary + "--\r\n";
+        var headBytes = head.getBytes(StandardCharsets.UTF_8);
+        var tailBytes = tail.getBytes(StandardCharsets.UTF_8);
+        var body = Arrays.copyOf(headBytes, headBytes.length + content.length + tailBytes.length);
+        System.arraycopy(content, 0, body, headBytes.length, content.length);
+        System.arraycopy(tailBytes, 0, body, headBytes.length + content.length, tailBytes.length);
+        return body;
+    }
+
+    static void report(String title, int seconds, Map<String, RouteResults> results) {
+        System.out.println();
+        System.out.println(title);
+        System.out.printf("%-12s %9s %7s %9s %9s %9s %9s %9s %9s%n", "route", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        var total = new RouteResults();
+        results.keySet().stream().sorted().forEach(route -> {
+            var routeResults = results.get(route);
+            printRow(route, seconds, routeResults);
+            total.merge(routeResults);
+        });
+        printRow("all", seconds, total);
+    }
+
+    static void printRow(String route, int seconds, RouteResults results) {
+        var latencies = results.getSortedLatencies();
+        System.out.printf("%-12s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", route, latencies.length, results.errors,
+                (double) latencies.length / seconds, percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), percentile(latencies, 99.9), percentile(latencies, 100));
+    }
+
+    static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        var index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+    static class RouteResults {
+        final List<Long> latencies = new ArrayList<>();
+        long errors = 0;
+
+        void add(long latency, boolean error) {
+            latencies.add(latency);
+            if (error) {
+                errors++;
+            }
+        }
+
+        RouteResults merge(RouteResults other) {
+            latencies.addAll(other.latencies);
+            errors += other.errors;
+            return this;
+        }
+
+        long[] getSortedLatencies() {
+            return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+    }
+}
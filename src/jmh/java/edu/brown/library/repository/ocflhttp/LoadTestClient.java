@@ -0,0 +1,43 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/*
+How LoadTest sends its requests. The default uses java.net.http.HttpClient - to try a different client, implement
+ this with a no-argument constructor & pass the class name to LoadTest's --client option.
+send() returns the response status, & has to read the whole response body before it returns, so the body is
+ part of the measured latency.
+ */
+interface LoadTestClient extends AutoCloseable {
+
+    int send(String method, URI uri, Map<String, String> headers, byte[] body) throws Exception;
+
+    @Override
+    default void close() throws Exception {
+    }
+
+    class JavaHttpClient implements LoadTestClient {
+
+        private final HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        @Override
+        public int send(String method, URI uri, Map<String, String> headers, byte[] body) throws Exception {
+            var builder = HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(5));
+            headers.forEach(builder::header);
+            if (body == null) {
+                builder.method(method, HttpRequest.BodyPublishers.noBody());
+            } else {
+                builder.method(method, HttpRequest.BodyPublishers.ofByteArray(body));
+            }
+            return client.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        }
+    }
+}
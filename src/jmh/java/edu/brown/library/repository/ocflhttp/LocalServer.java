@@ -0,0 +1,90 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+
+/*
+An OcflHttp handler on a fresh repository, behind jetty's in-memory connector - requests go through jetty's
+ parsing & the whole handler, but there's no socket, so the benchmarks measure the server & not the network.
+ */
+class LocalServer {
+
+    final Path repoRoot;
+    final Path workDir;
+    //delete the directories when we stop
+    final boolean temporary;
+    final OcflHttp ocflHttp;
+    final Server server;
+    final LocalConnector connector;
+
+    LocalServer() throws Exception {
+        this(config -> {});
+    }
+
+    //configure can change the config before the handler is created
+    LocalServer(Consumer<OcflHttpConfig> configure) throws Exception {
+        this(Files.createTempDirectory("ocfl-java-http-bench"), Files.createTempDirectory("ocfl-java-http-bench-work"), true, configure);
+    }
+
+    LocalServer(Path repoRoot, Path workDir, boolean temporary) throws Exception {
+        this(repoRoot, workDir, temporary, config -> {});
+    }
+
+    LocalServer(Path repoRoot, Path workDir, boolean temporary, Consumer<OcflHttpConfig> configure) throws Exception {
+        this.repoRoot = repoRoot;
+        this.workDir = workDir;
+        this.temporary = temporary;
+        var config = OcflHttpConfig.of(repoRoot, workDir, OcflHttpConfig.DEFAULT_FILE_SIZE_THRESHOLD, List.of());
+        configure.accept(config);
+        ocflHttp = new OcflHttp(config);
+        server = new Server();
+        connector = new LocalConnector(server);
+        server.addConnector(connector);
+        server.setHandler(ocflHttp);
+        server.start();
+    }
+
+    static String get(String uri, String... headers) {
+        return request("GET", uri, headers);
+    }
+
+    static String request(String method, String uri, String... headers) {
+        var request = new StringBuilder(method + " " + uri + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n");
+        for (String header : headers) {
+            request.append(header).append("\r\n");
+        }
+        return request.append("\r\n").toString();
+    }
+
+    /*
+    Returns the raw response - status line, headers & body.
+     */
+    ByteBuffer send(String rawRequest) throws Exception {
+        //a HEAD response has a Content-Length, but no body to wait for
+        var head = rawRequest.startsWith("HEAD ");
+        return connector.getResponse(ByteBuffer.wrap(rawRequest.getBytes(StandardCharsets.UTF_8)), head, 30, TimeUnit.SECONDS);
+    }
+
+    int getStatus(String rawRequest) throws Exception {
+        var response = StandardCharsets.ISO_8859_1.decode(send(rawRequest)).toString();
+        //HTTP/1.1 200 OK
+        return Integer.parseInt(response.substring(9, 12));
+    }
+
+    void stop() throws Exception {
+        server.stop();
+        ocflHttp.repo.close();
+        if (temporary) {
+            TestUtils.deleteDirectory(repoRoot);
+            TestUtils.deleteDirectory(workDir);
+        }
+    }
+}
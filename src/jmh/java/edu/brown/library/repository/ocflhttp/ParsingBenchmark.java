@@ -0,0 +1,76 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+The small per-request helpers: Range & query string parsing, & mimetype detection on a file's first bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+
+    LocalServer localServer;
+    byte[] xmlContent = "<?xml version=\"1.0\"?><mods xmlns=\"http://www.loc.gov/mods/v3\"/>".getBytes(StandardCharsets.UTF_8);
+    byte[] textContent = "plain text content\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+    byte[] pdfContent = "%PDF-1.4\n%âãÏÓ\n1 0 obj\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        localServer = new LocalServer();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        localServer.stop();
+    }
+
+    @Benchmark
+    public HashMap<String, Long> parseRangeHeader() {
+        return OcflHttp.parseRangeHeader("bytes=1048576-2097151", 10485760L);
+    }
+
+    @Benchmark
+    public HashMap<String, Long> parseRangeHeaderSuffix() {
+        return OcflHttp.parseRangeHeader("bytes=-500", 10485760L);
+    }
+
+    @Benchmark
+    public HashMap<String, String> parseUrlParams() {
+        return localServer.ocflHttp.parseUrlParams("message=adding%20files&userName=someone&userAddress=someone%40school.edu&updateExisting=true");
+    }
+
+    @Benchmark
+    public String getContentTypeXml() throws Exception {
+        return OcflHttp.getContentType(new ByteArrayInputStream(xmlContent), "MODS.xml");
+    }
+
+    @Benchmark
+    public String getContentTypeText() throws Exception {
+        return OcflHttp.getContentType(new ByteArrayInputStream(textContent), "file.txt");
+    }
+
+    @Benchmark
+    public String getContentTypePdf() throws Exception {
+        return OcflHttp.getContentType(new ByteArrayInputStream(pdfContent), "document");
+    }
+}
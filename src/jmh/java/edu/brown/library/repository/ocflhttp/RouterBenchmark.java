@@ -0,0 +1,81 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+Time to route one request path with the router, compared to the chain of regexes the handler used to try in order.
+The paths are the first & last routes in the old chain, with & without escaped characters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterBenchmark {
+
+    static final String objectIdRegex = "[-:_. %a-zA-Z0-9]+";
+    static final String fileNameRegex = "[-:_. %a-zA-Z0-9]+";
+    static final Pattern ObjectIdVersionsPattern = Pattern.compile("^/(" + objectIdRegex + ")/versions$");
+    static final Pattern ObjectIdFilesPattern = Pattern.compile("^/(" + objectIdRegex + ")/files$");
+    static final Pattern ObjectIdVersionFilesPattern = Pattern.compile("^/(" + objectIdRegex + ")/v([0-9]+)/files$");
+    static final Pattern ObjectIdPathPattern = Pattern.compile("^/(" + objectIdRegex + ")/files/(" + fileNameRegex + ")$");
+    static final Pattern ObjectIdPathContentPattern = Pattern.compile("^/(" + objectIdRegex + ")/files/(" + fileNameRegex + ")/content$");
+    static final Pattern ObjectIdVersionPathContentPattern = Pattern.compile("^/(" + objectIdRegex + ")/v([0-9]+)/files/(" + fileNameRegex + ")/content$");
+
+    @Param({"/testsuite:1/files", "/testsuite:1/versions", "/testsuite:1/files/file.txt/content",
+            "/testsuite%3An%C3%A2ti%C3%B4n/v12/files/n%C3%A2ti%C3%B4n.txt/content"})
+    String path;
+
+    RequestRouter router = new RequestRouter();
+
+    static String decode(String segment) {
+        return Normalizer.normalize(URLDecoder.decode(segment, StandardCharsets.UTF_8), Normalizer.Form.NFC);
+    }
+
+    @Benchmark
+    public RequestRouter.Match router() {
+        return router.match(path);
+    }
+
+    @Benchmark
+    public void regexChain(Blackhole blackhole) {
+        //same order & decoding as the old handleRequest
+        Matcher matcher;
+        if ((matcher = ObjectIdFilesPattern.matcher(path)).matches()) {
+            blackhole.consume(decode(matcher.group(1)));
+        } else if ((matcher = ObjectIdPathContentPattern.matcher(path)).matches()) {
+            blackhole.consume(decode(matcher.group(1)));
+            blackhole.consume(decode(matcher.group(2)));
+        } else if ((matcher = ObjectIdPathPattern.matcher(path)).matches()) {
+            blackhole.consume(decode(matcher.group(1)));
+            blackhole.consume(decode(matcher.group(2)));
+        } else if ((matcher = ObjectIdVersionPathContentPattern.matcher(path)).matches()) {
+            blackhole.consume(decode(matcher.group(1)));
+            blackhole.consume(Integer.parseInt(matcher.group(2)));
+            blackhole.consume(decode(matcher.group(3)));
+        } else if ((matcher = ObjectIdVersionFilesPattern.matcher(path)).matches()) {
+            blackhole.consume(decode(matcher.group(1)));
+            blackhole.consume(Integer.parseInt(matcher.group(2)));
+        } else if ((matcher = ObjectIdVersionsPattern.matcher(path)).matches()) {
+            blackhole.consume(decode(matcher.group(1)));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+
+/*
+How each endpoint's latency & heap grow with the size of an object, for the two cases that are slow in production:
+ - wide objects: N files in v1, then v2 deletes a tenth of them
+ - long histories: N versions, each adding a file & deleting the one added five versions before
+For each object & endpoint, a fresh handler serves one cold request (loading the caches), then --iterations warm
+ requests. "heap" is what's still reachable after the requests, compared to before (so mostly the caches).
+The "growth" column is log(time / previous time) / log(size / previous size) for the warm median: about 1 means
+ the endpoint is linear in the object size, about 2 means quadratic, & about 0 means it doesn't depend on it.
+Options (all optional):
+    --files 1000,10000,100000   object sizes for the wide-object case
+    --versions 10,100,1000      object sizes for the long-history case
+    --iterations 10             warm requests for each endpoint
+    --csv <file>                also write the results as CSV, for plotting
+ */
+public class ScalingSuite {
+
+    static final String ObjectId = "scaling:object";
+
+    final Map<String, String> options = new HashMap<>();
+    final List<String> csvRows = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        new ScalingSuite(args).run();
+    }
+
+    ScalingSuite(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("invalid option: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+    }
+
+    static int[] getSizes(String value) {
+        return Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    void run() throws Exception {
+        csvRows.add("case,size,endpoint,status,cold_ms,warm_median_ms,heap_mb");
+        var iterations = Integer.parseInt(options.getOrDefault("iterations", "10"));
+        runCase("files", getSizes(options.getOrDefault("files", "1000,10000,100000")), iterations);
+        runCase("versions", getSizes(options.getOrDefault("versions", "10,100,1000")), iterations);
+        if (options.containsKey("csv")) {
+            Files.write(Path.of(options.get("csv")), csvRows, StandardCharsets.UTF_8);
+            System.out.println("wrote " + options.get("csv"));
+        }
+    }
+
+    void runCase(String caseName, int[] sizes, int iterations) throws Exception {
+        System.out.println();
+        System.out.println(caseName.equals("files") ? "wide objects (size = # of files)" : "long histories (size = # of versions)");
+        System.out.printf("%-22s %9s %7s %10s %10s %9s %8s%n", "endpoint", "size", "status", "cold ms", "warm ms", "heap MB", "growth");
+        var previous = new HashMap<String, double[]>();
+        for (int size : sizes) {
+            var repoRoot = Files.createTempDirectory("ocfl-java-http-scaling");
+            var workDir = Files.createTempDirectory("ocfl-java-http-scaling-work");
+            try {
+                var start = System.nanoTime();
+                var builder = new LocalServer(repoRoot, workDir, false);
+                try {
+                    if (caseName.equals("files")) {
+                        buildWideObject(builder.ocflHttp, size);
+                    } else {
+                        buildLongHistory(builder.ocflHttp, size);
+                    }
+                } finally {
+                    builder.stop();
+                }
+                //in both cases the first file is deleted & the last one is active
+                var deletedFile = SyntheticRepository.getFileName(0);
+                var activeFile = SyntheticRepository.getFileName(size - 1);
+                System.out.printf("  (built %s=%d in %.1fs)%n", caseName, size, (System.nanoTime() - start) / 1e9);
+                for (Map.Entry<String, String> endpoint : getEndpoints(activeFile, deletedFile).entrySet()) {
+                    var result = measure(repoRoot, workDir, endpoint.getValue(), iterations);
+                    var growth = "";
+                    var previousResult = previous.get(endpoint.getKey());
+                    if (previousResult != null && previousResult[1] > 0) {
+                        growth = String.format("%.2f", Math.log(result[2] / previousResult[1]) / Math.log(size / previousResult[0]));
+                    }
+                    previous.put(endpoint.getKey(), new double[] {size, result[2]});
+                    System.out.printf("%-22s %9d %7d %10.2f %10.2f %9.1f %8s%n", endpoint.getKey(), size, (int) result[0],
+                            result[1], result[2], result[3], growth);
+                    csvRows.add(String.format("%s,%d,%s,%d,%.3f,%.3f,%.2f", caseName, size, endpoint.getKey(), (int) result[0],
+                            result[1], result[2], result[3]));
+                }
+            } finally {
+                TestUtils.deleteDirectory(repoRoot);
+                TestUtils.deleteDirectory(workDir);
+            }
+        }
+    }
+
+    static Map<String, String> getEndpoints(String activeFile, String deletedFile) {
+        var base = "/" + ObjectId;
+        var endpoints = new LinkedHashMap<String, String>();
+        endpoints.put("files", LocalServer.get(base + "/files"));
+        endpoints.put("files includeDeleted", LocalServer.get(base + "/files?includeDeleted=true&fields=state"));
+        endpoints.put("files lastModified", LocalServer.get(base + "/files?fields=lastModified"));
+        endpoints.put("files page", LocalServer.get(base + "/files?limit=100"));
+        endpoints.put("content", LocalServer.get(base + "/files/" + activeFile + "/content"));
+        endpoints.put("content deleted (410)", LocalServer.get(base + "/files/" + deletedFile + "/content"));
+        endpoints.put("versions", LocalServer.get(base + "/versions"));
+        return endpoints;
+    }
+
+    static void buildWideObject(OcflHttp ocflHttp, int fileCount) {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(ObjectId), new VersionInfo().setMessage("v1"), updater -> {
+            for (int i = 0; i < fileCount; i++) {
+                var fileName = SyntheticRepository.getFileName(i);
+                updater.writeFile(new ByteArrayInputStream(fileName.getBytes(StandardCharsets.UTF_8)), fileName);
+            }
+        });
+        ocflHttp.repo.updateObject(ObjectVersionId.head(ObjectId), new VersionInfo().setMessage("v2"), updater -> {
+            for (int i = 0; i < fileCount; i += 10) {
+                updater.removeFile(SyntheticRepository.getFileName(i));
+            }
+        });
+    }
+
+    static void buildLongHistory(OcflHttp ocflHttp, int versionCount) {
+        for (int i = 0; i < versionCount; i++) {
+            var fileIndex = i;
+            ocflHttp.repo.updateObject(ObjectVersionId.head(ObjectId), new VersionInfo().setMessage("v" + (i + 1)), updater -> {
+                var fileName = SyntheticRepository.getFileName(fileIndex);
+                updater.writeFile(new ByteArrayInputStream(fileName.getBytes(StandardCharsets.UTF_8)), fileName);
+                //keep a few files active, so the object isn't deleted
+                if (fileIndex >= 5) {
+                    updater.removeFile(SyntheticRepository.getFileName(fileIndex - 5));
+                }
+            });
+        }
+    }
+
+    /*
+    Returns status, cold ms, warm median ms, heap MB.
+     */
+    static double[] measure(Path repoRoot, Path workDir, String request, int iterations) throws Exception {
+        var heapBefore = getUsedHeap();
+        var localServer = new LocalServer(repoRoot, workDir, false);
+        try {
+            var start = System.nanoTime();
+            var status = localServer.getStatus(request);
+            var cold = (System.nanoTime() - start) / 1e6;
+            var warm = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                start = System.nanoTime();
+                localServer.send(request);
+                warm[i] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(warm);
+            var heap = (getUsedHeap() - heapBefore) / 1048576.0;
+            return new double[] {status, cold, (iterations > 0) ? warm[iterations / 2] : cold, heap};
+        } finally {
+            localServer.stop();
+        }
+    }
+
+    static long getUsedHeap() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,76 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Random;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+
+/*
+Fills a repository with generated objects for the benchmarks, going through the same ingest code as an upload
+ (so the technical metadata gets recorded too).
+Version 1 of each object has filesPerObject files; each later version rewrites a tenth of them (at least one).
+File sizes are spread evenly on a log scale between minFileSize & maxFileSize, so most files are small & a few
+ are big. Every file's content is different, so ocfl-java doesn't dedupe them.
+ */
+class SyntheticRepository {
+
+    int objectCount = 1;
+    int filesPerObject = 10;
+    int versionsPerObject = 1;
+    int minFileSize = 1024;
+    int maxFileSize = 1024;
+    long seed = 1;
+
+    static String getObjectId(int objectIndex) {
+        return "synthetic:" + objectIndex;
+    }
+
+    static String getFileName(int fileIndex) {
+        return String.format("file-%06d.txt", fileIndex);
+    }
+
+    void generate(OcflHttp ocflHttp) throws IOException {
+        var random = new Random(seed);
+        var filler = new byte[maxFileSize];
+        random.nextBytes(filler);
+        for (int objectIndex = 0; objectIndex < objectCount; objectIndex++) {
+            var objectId = getObjectId(objectIndex);
+            for (int versionIndex = 0; versionIndex < versionsPerObject; versionIndex++) {
+                var files = new HashMap<String, InputStream>();
+                var step = (versionIndex == 0) ? 1 : Math.min(10, filesPerObject);
+                var first = (versionIndex == 0) ? 0 : versionIndex % step;
+                for (int fileIndex = first; fileIndex < filesPerObject; fileIndex += step) {
+                    var fileName = getFileName(fileIndex);
+                    files.put(fileName, new ByteArrayInputStream(getContent(random, filler, objectId, fileName, versionIndex)));
+                }
+                var versionInfo = new VersionInfo().setMessage("synthetic version " + (versionIndex + 1));
+                var objectVersionId = (versionIndex == 0) ? ObjectVersionId.version(objectId, 0) : ObjectVersionId.head(objectId);
+                ocflHttp.writeFilesToObject(objectVersionId, files, versionInfo, versionIndex > 0);
+            }
+        }
+    }
+
+    int getFileSize(Random random) {
+        if (maxFileSize <= minFileSize) {
+            return minFileSize;
+        }
+        var logMin = Math.log(Math.max(minFileSize, 1));
+        var logMax = Math.log(maxFileSize);
+        return (int) Math.min(maxFileSize, Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin))));
+    }
+
+    byte[] getContent(Random random, byte[] filler, String objectId, String fileName, int versionIndex) {
+        //a unique header, then the shared random filler - so tiny files are a little bigger than minFileSize
+        var header = (objectId + " " + fileName + " " + versionIndex + "\n").getBytes(StandardCharsets.UTF_8);
+        var size = Math.max(getFileSize(random), header.length);
+        var content = new byte[size];
+        System.arraycopy(header, 0, content, 0, header.length);
+        System.arraycopy(filler, 0, content, header.length, Math.min(size - header.length, filler.length));
+        return content;
+    }
+}
@@ -0,0 +1,76 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+/*
+Writes a file (or a range of it) to the response with servlet async I/O: jetty calls onWritePossible when the
+ connection can take more, we write chunks until the output isn't ready, & then return - so no thread waits on
+ a slow client in between. Completes the AsyncContext (& finished) when the range has been written, or the
+ client has gone away.
+ */
+class AsyncContentWriter implements WriteListener {
+
+    private static final Logger logger = Logger.getLogger(AsyncContentWriter.class.getName());
+    static final int ChunkSize = 32 * 1024;
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream outputStream;
+    private final FileRangeChannel channel;
+    private final byte[] chunk = new byte[ChunkSize];
+    private final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+    //completed once, whether the write succeeded or not - callers use it to record metrics
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+    AsyncContentWriter(AsyncContext asyncContext, ServletOutputStream outputStream, FileRangeChannel channel) {
+        this.asyncContext = asyncContext;
+        this.outputStream = outputStream;
+        this.channel = channel;
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        //each write can make the output not ready - jetty calls us again once it's drained
+        while (outputStream.isReady()) {
+            buffer.clear();
+            var bytesRead = channel.read(buffer);
+            if (bytesRead == -1) {
+                finish();
+                return;
+            }
+            outputStream.write(chunk, 0, bytesRead);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        //usually the client closing the connection
+        logger.log(Level.FINE, "async content write failed", t);
+        finish();
+    }
+
+    private void finish() {
+        if (finished.isDone()) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        //before completing the context, so the request is counted by the time the client has the whole response
+        finished.complete(null);
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            //already completed by jetty, after an error
+        }
+    }
+}
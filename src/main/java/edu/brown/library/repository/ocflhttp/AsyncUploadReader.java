@@ -0,0 +1,119 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+Reads a POST/PUT body with servlet async I/O: jetty calls onDataAvailable when some of the body has arrived, we
+ split what's there into the spooled parts & return - so a client trickling a big upload doesn't hold a thread
+ while we wait for it. Once the whole body is in, onAllDataRead hands the ingest of the spooled parts to the
+ executor, so it doesn't run on a jetty thread, & the executor completes the AsyncContext (& finished).
+ */
+class AsyncUploadReader implements ReadListener {
+
+    interface Ingest {
+        void run(SpooledMultipart parts) throws Exception;
+    }
+
+    private static final Logger logger = Logger.getLogger(AsyncUploadReader.class.getName());
+    static final int ChunkSize = 32 * 1024;
+
+    private final AsyncContext asyncContext;
+    private final ServletInputStream inputStream;
+    private final SpooledMultipart parts;
+    private final Executor executor;
+    private final Ingest ingest;
+    private final RequestMetrics metrics;
+    private final byte[] chunk = new byte[ChunkSize];
+    //completed once, whether the upload succeeded or not - callers use it to record metrics
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private final AtomicBoolean finishing = new AtomicBoolean(false);
+
+    AsyncUploadReader(HttpServletRequest request, AsyncContext asyncContext, Path spoolDir, String boundary,
+                      Executor executor, Ingest ingest, RequestMetrics metrics) throws IOException {
+        this.asyncContext = asyncContext;
+        this.inputStream = request.getInputStream();
+        this.parts = new SpooledMultipart(Files.createTempDirectory(spoolDir, "upload"), boundary);
+        this.executor = executor;
+        this.ingest = ingest;
+        this.metrics = metrics;
+        metrics.uploadStarted();
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        metrics.uploadThreadStarted();
+        try {
+            //read only what's already arrived - jetty calls us again when there's more
+            int bytesRead;
+            while (inputStream.isReady() && (bytesRead = inputStream.read(chunk)) != -1) {
+                parts.write(chunk, 0, bytesRead);
+            }
+        } finally {
+            metrics.uploadThreadFinished();
+        }
+    }
+
+    @Override
+    public void onAllDataRead() throws IOException {
+        parts.finish();
+        try {
+            executor.execute(this::runIngest);
+        } catch (RejectedExecutionException e) {
+            //shutting down
+            logger.log(Level.WARNING, "couldn't start the ingest of an async upload", e);
+            finish();
+        }
+    }
+
+    private void runIngest() {
+        metrics.uploadThreadStarted();
+        try {
+            ingest.run(parts);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, e.getMessage(), e);
+        } finally {
+            metrics.uploadThreadFinished();
+            finish();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        //usually the client closing the connection, or the idle timeout
+        logger.log(Level.FINE, "async upload read failed", t);
+        finish();
+    }
+
+    private void finish() {
+        if (!finishing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            parts.finish();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        parts.delete();
+        metrics.uploadFinished();
+        //before completing the context, so the request is counted by the time the client has the response
+        finished.complete(null);
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            //already completed by jetty, after an error
+        }
+    }
+}
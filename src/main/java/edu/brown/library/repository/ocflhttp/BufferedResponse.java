@@ -0,0 +1,171 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/*
+Keeps the status, content type & body a handler writes in memory, instead of sending them - so the same
+ rendered response can be sent to more than one client. Only for handlers that don't set any other headers.
+A body that grows past maxBytes isn't kept: what's buffered so far is sent, & the rest is streamed.
+ */
+class BufferedResponse extends HttpServletResponseWrapper {
+
+    interface Handler {
+        void handle(HttpServletResponse response) throws IOException;
+    }
+
+    /*
+    A finished response - the body is already encoded, & never changed after it's rendered.
+     */
+    static class Rendered {
+        final int status;
+        final String contentType;
+        final byte[] body;
+
+        Rendered(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        void send(HttpServletResponse response) throws IOException {
+            response.setStatus(status);
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private final int maxBytes;
+    private ByteArrayOutputStream body = new ByteArrayOutputStream();
+    //the body got too big, so it's going straight to the response
+    private boolean streaming = false;
+    private int status = HttpServletResponse.SC_OK;
+    private String contentType;
+    private PrintWriter writer;
+
+    private final ServletOutputStream outputStream = new ServletOutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!streaming && body.size() + len > maxBytes) {
+                startStreaming();
+            }
+            if (streaming) {
+                getResponse().getOutputStream().write(b, off, len);
+            } else {
+                body.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (streaming) {
+                getResponse().getOutputStream().flush();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new IllegalStateException("a buffered response is written synchronously");
+        }
+    };
+
+    BufferedResponse(HttpServletResponse response, int maxBytes) {
+        super(response);
+        this.maxBytes = maxBytes;
+    }
+
+    //runs the handler against a buffer over this response - null if the body was too big, & was streamed instead
+    Rendered render(Handler handler) throws IOException {
+        handler.handle(this);
+        return getRendered();
+    }
+
+    Rendered getRendered() {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (streaming) {
+            return null;
+        }
+        return new Rendered(status, contentType, body.toByteArray());
+    }
+
+    boolean isStreaming() {
+        return streaming;
+    }
+
+    private void startStreaming() throws IOException {
+        streaming = true;
+        super.setStatus(status);
+        if (contentType != null) {
+            super.setContentType(contentType);
+        }
+        body.writeTo(getResponse().getOutputStream());
+        body = null;
+    }
+
+    @Override
+    public void setStatus(int status) {
+        this.status = status;
+        if (streaming) {
+            super.setStatus(status);
+        }
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+        if (streaming) {
+            super.setContentType(contentType);
+        }
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        }
+        return writer;
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return streaming && super.isCommitted();
+    }
+}
@@ -0,0 +1,339 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import edu.wisc.library.ocfl.api.MutableOcflRepository;
+import edu.wisc.library.ocfl.api.OcflConfig;
+import edu.wisc.library.ocfl.api.OcflObjectUpdater;
+import edu.wisc.library.ocfl.api.OcflOption;
+import edu.wisc.library.ocfl.api.model.FileChangeHistory;
+import edu.wisc.library.ocfl.api.model.FileDetails;
+import edu.wisc.library.ocfl.api.model.ObjectDetails;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.OcflObjectVersion;
+import edu.wisc.library.ocfl.api.model.VersionDetails;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import edu.wisc.library.ocfl.api.model.VersionNum;
+
+/*
+MutableOcflRepository wrapper that keeps the ObjectDetails for recently used objects, so the read handlers don't
+ rebuild the whole object description (every version & every file) from the inventory on every call.
+Each entry describes the object at its head version when it was loaded (the mutable HEAD, if it has staged changes). Anything that changes an object
+ goes through this class and invalidates the object's entry after the change, so reads never see an old head.
+Entries are futures, & the thread that misses loads the object outside the cache's locks (a load inside
+ Cache.get() would read the inventory inside ConcurrentHashMap's synchronized compute, which pins the carrier
+ thread of a virtual thread). Other threads that want the same object meanwhile wait on the future, & an
+ invalidation during the load drops the future, so the old details never get cached.
+ */
+class CachingOcflRepository implements MutableOcflRepository {
+
+    /*
+    For other caches of what's in an object - told whenever an object's entry is invalidated here.
+     */
+    interface InvalidationListener {
+        void invalidate(String objectId);
+        void invalidateAll();
+    }
+
+    static class CachedObject {
+        final ObjectDetails details;
+        private volatile FileHistoryIndex fileHistoryIndex;
+        private final ConcurrentHashMap<VersionNum, List<FileDetails>> sortedVersionFiles = new ConcurrentHashMap<>();
+
+        CachedObject(ObjectDetails details) {
+            this.details = details;
+        }
+
+        FileHistoryIndex getFileHistoryIndex() {
+            //built on first use - if two threads race, they both build the same index
+            var index = fileHistoryIndex;
+            if (index == null) {
+                index = FileHistoryIndex.build(details);
+                fileHistoryIndex = index;
+            }
+            return index;
+        }
+
+        List<FileDetails> getSortedFiles(VersionNum versionNum) {
+            //files of the version sorted by path, for paging through the listing
+            return sortedVersionFiles.computeIfAbsent(versionNum, v -> {
+                var files = new ArrayList<>(details.getVersion(v).getFiles());
+                files.sort(Comparator.comparing(FileDetails::getPath));
+                return files;
+            });
+        }
+    }
+
+    private final MutableOcflRepository repo;
+    private final AsyncCache<String, CachedObject> objectCache;
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    CachingOcflRepository(MutableOcflRepository repo, long maxWeight) {
+        this.repo = repo;
+        this.objectCache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String objectId, CachedObject cachedObject) -> weigh(cachedObject.details))
+                .recordStats()
+                .buildAsync();
+    }
+
+    static int weigh(ObjectDetails details) {
+        //roughly the number of entries in the inventory
+        var weight = 1;
+        for (VersionDetails v : details.getVersionMap().values()) {
+            weight += 1 + v.getFiles().size();
+        }
+        return weight;
+    }
+
+    CacheStats getStats() {
+        return objectCache.synchronous().stats();
+    }
+
+    long getWeightedSize() {
+        return objectCache.synchronous().policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    void addInvalidationListener(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    void invalidate(String objectId) {
+        objectCache.synchronous().invalidate(objectId);
+        for (InvalidationListener listener : listeners) {
+            listener.invalidate(objectId);
+        }
+    }
+
+    void invalidateAll() {
+        objectCache.synchronous().invalidateAll();
+        for (InvalidationListener listener : listeners) {
+            listener.invalidateAll();
+        }
+    }
+
+    CachedObject getCachedObject(String objectId) {
+        var future = objectCache.getIfPresent(objectId);
+        if (future == null) {
+            var loading = new CompletableFuture<CachedObject>();
+            future = objectCache.asMap().putIfAbsent(objectId, loading);
+            if (future == null) {
+                try {
+                    loading.complete(new CachedObject(repo.describeObject(objectId)));
+                } catch (RuntimeException e) {
+                    //caffeine drops failed futures, so the next request tries again
+                    loading.completeExceptionally(e);
+                    throw e;
+                }
+                future = loading;
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            //rethrow what describeObject threw (eg. NotFoundException) in the thread that was waiting for it
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    FileHistoryIndex fileHistoryIndex(String objectId) {
+        return getCachedObject(objectId).getFileHistoryIndex();
+    }
+
+    @Override
+    public ObjectDetails describeObject(String objectId) {
+        return getCachedObject(objectId).details;
+    }
+
+    @Override
+    public VersionDetails describeVersion(ObjectVersionId objectVersionId) {
+        var details = describeObject(objectVersionId.getObjectId());
+        if (objectVersionId.isHead()) {
+            return details.getHeadVersion();
+        }
+        var versionDetails = details.getVersion(objectVersionId.getVersionNum());
+        if (versionDetails == null) {
+            //let ocfl-java report the missing version
+            return repo.describeVersion(objectVersionId);
+        }
+        return versionDetails;
+    }
+
+    @Override
+    public boolean containsObject(String objectId) {
+        var future = objectCache.getIfPresent(objectId);
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            return true;
+        }
+        return repo.containsObject(objectId);
+    }
+
+    @Override
+    public FileChangeHistory fileChangeHistory(String objectId, String logicalPath) {
+        return repo.fileChangeHistory(objectId, logicalPath);
+    }
+
+    @Override
+    public OcflObjectVersion getObject(ObjectVersionId objectVersionId) {
+        return repo.getObject(objectVersionId);
+    }
+
+    @Override
+    public void getObject(ObjectVersionId objectVersionId, Path outputPath) {
+        repo.getObject(objectVersionId, outputPath);
+    }
+
+    @Override
+    public Stream<String> listObjectIds() {
+        return repo.listObjectIds();
+    }
+
+    @Override
+    public ObjectVersionId putObject(ObjectVersionId objectVersionId, Path path, VersionInfo versionInfo, OcflOption... options) {
+        try {
+            return repo.putObject(objectVersionId, path, versionInfo, options);
+        } finally {
+            invalidate(objectVersionId.getObjectId());
+        }
+    }
+
+    @Override
+    public ObjectVersionId updateObject(ObjectVersionId objectVersionId, VersionInfo versionInfo, Consumer<OcflObjectUpdater> objectUpdater) {
+        try {
+            return repo.updateObject(objectVersionId, versionInfo, objectUpdater);
+        } finally {
+            invalidate(objectVersionId.getObjectId());
+        }
+    }
+
+    @Override
+    public void purgeObject(String objectId) {
+        try {
+            repo.purgeObject(objectId);
+        } finally {
+            invalidate(objectId);
+        }
+    }
+
+    @Override
+    public ObjectVersionId replicateVersionAsHead(ObjectVersionId objectVersionId, VersionInfo versionInfo) {
+        try {
+            return repo.replicateVersionAsHead(objectVersionId, versionInfo);
+        } finally {
+            invalidate(objectVersionId.getObjectId());
+        }
+    }
+
+    @Override
+    public void rollbackToVersion(ObjectVersionId objectVersionId) {
+        try {
+            repo.rollbackToVersion(objectVersionId);
+        } finally {
+            invalidate(objectVersionId.getObjectId());
+        }
+    }
+
+    @Override
+    public void exportVersion(ObjectVersionId objectVersionId, Path outputPath, OcflOption... options) {
+        repo.exportVersion(objectVersionId, outputPath, options);
+    }
+
+    @Override
+    public void exportObject(String objectId, Path outputPath, OcflOption... options) {
+        repo.exportObject(objectId, outputPath, options);
+    }
+
+    @Override
+    public void importVersion(Path versionPath, OcflOption... options) {
+        try {
+            repo.importVersion(versionPath, options);
+        } finally {
+            //we don't know the object id without reading the imported inventory
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void importObject(Path objectPath, OcflOption... options) {
+        try {
+            repo.importObject(objectPath, options);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public ObjectVersionId stageChanges(ObjectVersionId objectVersionId, VersionInfo versionInfo, Consumer<OcflObjectUpdater> objectUpdater) {
+        try {
+            return repo.stageChanges(objectVersionId, versionInfo, objectUpdater);
+        } finally {
+            invalidate(objectVersionId.getObjectId());
+        }
+    }
+
+    @Override
+    public ObjectVersionId commitStagedChanges(String objectId, VersionInfo versionInfo) {
+        try {
+            return repo.commitStagedChanges(objectId, versionInfo);
+        } finally {
+            invalidate(objectId);
+        }
+    }
+
+    @Override
+    public void purgeStagedChanges(String objectId) {
+        try {
+            repo.purgeStagedChanges(objectId);
+        } finally {
+            invalidate(objectId);
+        }
+    }
+
+    @Override
+    public boolean hasStagedChanges(String objectId) {
+        //the cached head is the mutable HEAD, if there is one
+        var future = objectCache.getIfPresent(objectId);
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            return future.join().details.getHeadVersion().isMutable();
+        }
+        return repo.hasStagedChanges(objectId);
+    }
+
+    @Override
+    public void close() {
+        invalidateAll();
+        repo.close();
+    }
+
+    @Override
+    public OcflConfig config() {
+        return repo.config();
+    }
+
+    @Override
+    public void invalidateCache(String objectId) {
+        invalidate(objectId);
+        repo.invalidateCache(objectId);
+    }
+
+    @Override
+    public void invalidateCache() {
+        invalidateAll();
+        repo.invalidateCache();
+    }
+}
@@ -0,0 +1,106 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import edu.wisc.library.ocfl.api.model.DigestAlgorithm;
+import edu.wisc.library.ocfl.api.model.FileDetails;
+import edu.wisc.library.ocfl.api.model.ObjectDetails;
+import edu.wisc.library.ocfl.api.model.VersionDetails;
+
+/*
+History of every path that has ever been in an object, built in one pass over the object's versions.
+This gives the same answers as repo.fileChangeHistory() for lastModified, but without walking the
+ whole inventory again for each file.
+ */
+class FileHistoryIndex {
+
+    static class FileHistory {
+        final String path;
+        //timestamp (UTC) of the most recent add, update, or remove of this path
+        OffsetDateTime lastModified;
+        //true if the path is in the head version ("A"), false if it's been removed ("D")
+        boolean active;
+        //storage path & fixity of the latest content for this path (ie. not a REMOVE)
+        String storageRelativePath;
+        Map<DigestAlgorithm, String> fixity;
+
+        FileHistory(String path) {
+            this.path = path;
+        }
+
+        String getState() {
+            return active ? "A" : "D";
+        }
+    }
+
+    private final HashMap<String, FileHistory> files = new HashMap<>();
+    private final List<FileHistory> deletedFiles = new ArrayList<>();
+    private volatile List<FileHistory> sortedFiles;
+
+    static FileHistoryIndex build(ObjectDetails details) {
+        var index = new FileHistoryIndex();
+        var digestAlgorithm = details.getDigestAlgorithm();
+        var versions = new ArrayList<>(details.getVersionMap().values());
+        versions.sort((v1, v2) -> v1.getVersionNum().compareTo(v2.getVersionNum()));
+        var previousDigests = new HashMap<String, String>();
+        for (VersionDetails v : versions) {
+            var created = v.getCreated().withOffsetSameInstant(ZoneOffset.UTC);
+            var currentDigests = new HashMap<String, String>();
+            for (FileDetails f : v.getFiles()) {
+                var digest = f.getFixity().get(digestAlgorithm);
+                currentDigests.put(f.getPath(), digest);
+                var history = index.files.computeIfAbsent(f.getPath(), FileHistory::new);
+                if (!previousDigests.containsKey(f.getPath()) || !Objects.equals(previousDigests.get(f.getPath()), digest)) {
+                    history.lastModified = created;
+                }
+                history.storageRelativePath = f.getStorageRelativePath();
+                history.fixity = f.getFixity();
+            }
+            var removedPaths = new HashSet<>(previousDigests.keySet());
+            removedPaths.removeAll(currentDigests.keySet());
+            for (String removedPath : removedPaths) {
+                index.files.get(removedPath).lastModified = created;
+            }
+            previousDigests = currentDigests;
+        }
+        for (FileHistory history : index.files.values()) {
+            history.active = previousDigests.containsKey(history.path);
+            if (!history.active) {
+                index.deletedFiles.add(history);
+            }
+        }
+        return index;
+    }
+
+    FileHistory get(String path) {
+        return files.get(path);
+    }
+
+    boolean everContained(String path) {
+        return files.containsKey(path);
+    }
+
+    Collection<FileHistory> getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    List<FileHistory> getSortedFiles() {
+        //all the paths (active & deleted) sorted by path, for paging through the listing
+        var sorted = sortedFiles;
+        if (sorted == null) {
+            sorted = new ArrayList<>(files.values());
+            sorted.sort(Comparator.comparing((FileHistory h) -> h.path));
+            sortedFiles = sorted;
+        }
+        return sorted;
+    }
+}
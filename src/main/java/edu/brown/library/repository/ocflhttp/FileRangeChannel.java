@@ -0,0 +1,57 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+Exposes bytes start-end (inclusive, like the Range header) of a file as a channel, using positional reads
+ so we never have to skip through the beginning of the file.
+ */
+class FileRangeChannel implements ReadableByteChannel {
+
+    private final FileChannel channel;
+    private final long end;
+    private long position;
+
+    FileRangeChannel(FileChannel channel, long start, long end) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        var remaining = end + 1 - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        var bytesRead = 0;
+        if (dst.remaining() > remaining) {
+            //only hand the channel as much of the buffer as is left in the range
+            var slice = dst.slice();
+            slice.limit((int) remaining); //safe - remaining is less than dst.remaining()
+            bytesRead = channel.read(slice, position);
+            if (bytesRead > 0) {
+                dst.position(dst.position() + bytesRead);
+            }
+        } else {
+            bytesRead = channel.read(dst, position);
+        }
+        if (bytesRead > 0) {
+            position += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,136 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import edu.wisc.library.ocfl.api.exception.FixityCheckException;
+import edu.wisc.library.ocfl.api.exception.OcflJavaException;
+import edu.wisc.library.ocfl.api.model.FileDetails;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import edu.wisc.library.ocfl.core.util.FileUtil;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+PUTs that go through the GroupCommitter: each one's files are staged first (so a fixity failure only fails that
+ PUT), & each batch is checked again & written as one version when it's its turn.
+ */
+class GroupCommitHandler {
+
+    private final OcflHttp http;
+    final GroupCommitter committer;
+
+    GroupCommitHandler(OcflHttp http, long windowMillis) {
+        this.http = http;
+        this.committer = new GroupCommitter(windowMillis, this::commit);
+    }
+
+    static boolean canGroupCommit(HashMap<String, InputStream> files, VersionInfo versionInfo) {
+        //linked location files go into the version without being staged, & 'created' would be lost in the merge
+        if (versionInfo.getCreated() != null) {
+            return false;
+        }
+        for (InputStream inputStream : files.values()) {
+            if (inputStream instanceof TechnicalMetadataInputStream && ((TechnicalMetadataInputStream) inputStream).linkedPath != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //waits for the batch the PUT ends up in
+    void put(HttpServletRequest request, HttpServletResponse response, String objectId,
+             HashMap<String, InputStream> files, VersionInfo versionInfo, IngestTimings timings) throws IOException {
+        if (!http.repo.containsObject(objectId)) {
+            http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " doesn't exist. Use POST to create it.");
+            return;
+        }
+        var updateExisting = "true".equals(request.getParameter("updateExisting"));
+        var metadataStreams = new LinkedHashMap<String, TechnicalMetadataInputStream>();
+        var fileIndexes = new LinkedHashMap<String, Integer>();
+        files.forEach((fileName, inputStream) -> {
+            var fileNameNFC = Normalizer.normalize(fileName, Normalizer.Form.NFC);
+            fileIndexes.put(fileNameNFC, metadataStreams.size());
+            metadataStreams.put(fileNameNFC, OcflHttp.getMetadataStream(inputStream));
+        });
+        var streams = new ArrayList<>(metadataStreams.values());
+        ParallelIngester.StagedFiles staged;
+        var stage = timings.start(IngestTimings.Phase.STAGE);
+        try {
+            staged = (http.ingester != null) ? http.ingester.stage(streams) : ParallelIngester.stageSerially(streams, http.ingestDir);
+        } catch (FixityCheckException e) {
+            http.setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
+            return;
+        }
+        stage.end(OcflHttp.getTotalSize(streams));
+        try {
+            //the window, waiting for the batch's turn, & the batch's updateObject
+            var commit = timings.start(IngestTimings.Phase.COMMIT);
+            var newVersionId = committer.submit(objectId, new GroupCommitter.Write(fileIndexes, staged, versionInfo, updateExisting));
+            commit.end(OcflHttp.getTotalSize(streams));
+            var metadata = timings.start(IngestTimings.Phase.METADATA);
+            http.recordTechnicalMetadata(newVersionId, metadataStreams);
+            metadata.end(0);
+            response.setStatus(HttpServletResponse.SC_CREATED);
+        } catch (UploadRejectedException e) {
+            http.setResponseError(response, e.statusCode, e.getMessage());
+        } finally {
+            FileUtil.safeDeleteDirectory(staged.stagingDir);
+        }
+    }
+
+    //only the writes whose files exist already, or whose paths clash, are failed
+    ObjectVersionId commit(String objectId, List<GroupCommitter.Write> writes) throws IOException {
+        var newVersionId = new ObjectVersionId[1];
+        http.writeQueue.run(objectId, () -> {
+            var headVersion = http.repo.describeVersion(ObjectVersionId.head(objectId));
+            var headPaths = new ArrayList<String>();
+            for (FileDetails file : headVersion.getFiles()) {
+                headPaths.add(file.getPath());
+            }
+            var paths = new GroupCommitter.LogicalPaths(headPaths);
+            var committed = new ArrayList<GroupCommitter.Write>();
+            for (GroupCommitter.Write write : writes) {
+                try {
+                    var writePaths = new GroupCommitter.LogicalPaths(List.of());
+                    for (String fileName : write.fileIndexes.keySet()) {
+                        paths.check(fileName);
+                        writePaths.check(fileName);
+                        writePaths.add(fileName);
+                    }
+                } catch (OcflJavaException e) {
+                    write.result.completeExceptionally(e);
+                    continue;
+                }
+                var existingFiles = new ArrayList<String>();
+                for (String fileName : write.fileIndexes.keySet()) {
+                    if (headVersion.containsFile(fileName)) {
+                        existingFiles.add(fileName);
+                    }
+                }
+                if (!write.updateExisting && !existingFiles.isEmpty()) {
+                    var msg = "files " + existingFiles + " already exist. Add updateExisting=true parameter to the URL to update them.";
+                    write.result.completeExceptionally(new UploadRejectedException(HttpServletResponse.SC_CONFLICT, msg));
+                } else {
+                    write.fileIndexes.keySet().forEach(paths::add);
+                    committed.add(write);
+                }
+            }
+            if (committed.isEmpty()) {
+                return;
+            }
+            newVersionId[0] = http.repo.updateObject(ObjectVersionId.head(objectId), GroupCommitter.getVersionInfo(committed), updater -> {
+                for (GroupCommitter.Write write : committed) {
+                    write.fileIndexes.forEach((fileNameNFC, index) -> write.staged.addFile(updater, index, fileNameNFC, true));
+                }
+            });
+        });
+        return newVersionId[0];
+    }
+}
@@ -0,0 +1,298 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.wisc.library.ocfl.api.exception.OcflInputException;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import edu.wisc.library.ocfl.core.path.constraint.LogicalPathConstraints;
+
+/*
+Group commit for small PUTs: the first write to an object opens a batch, any compatible writes to the same
+ object that arrive within the window join it, & then the whole batch goes into the object as one version (one
+ inventory rewrite, instead of one per PUT). Each write still gets its own result - the version they all went
+ into, or its own failure.
+The window is closed by a timer, & the batch is committed on a thread of its own - the request threads just wait
+ for their write's result.
+Writes are compatible if they're by the same user & don't write the same file. One that isn't compatible with
+ the open batch (or arrives when it's full) opens a new batch, which is committed after the first.
+The files are staged before a write joins a batch, so fixity failures only fail their own write. Paths that
+ clash with the version or another write in the batch are checked before the commit, & if the batch's commit
+ fails anyway, its writes are retried one at a time.
+ */
+class GroupCommitter {
+
+    static final int MaxBatchSize = 100;
+
+    /*
+    One PUT's files, already staged.
+     */
+    static class Write {
+        final Map<String, Integer> fileIndexes;
+        final ParallelIngester.StagedFiles staged;
+        final VersionInfo versionInfo;
+        //the PUT had updateExisting=true
+        final boolean updateExisting;
+        final CompletableFuture<ObjectVersionId> result = new CompletableFuture<>();
+
+        Write(Map<String, Integer> fileIndexes, ParallelIngester.StagedFiles staged, VersionInfo versionInfo, boolean updateExisting) {
+            this.fileIndexes = fileIndexes;
+            this.staged = staged;
+            this.versionInfo = versionInfo;
+            this.updateExisting = updateExisting;
+        }
+    }
+
+    /*
+    Writes a batch into one new version, & returns it. It can fail individual writes first (by completing
+     their result), & leave them out of the version.
+     */
+    interface Commit {
+        ObjectVersionId commit(String objectId, List<Write> writes) throws IOException;
+    }
+
+    /*
+    The logical paths of the version a batch is going into, so a write whose paths ocfl-java would reject can be
+     failed on its own, instead of failing the batch's updateObject.
+     */
+    static class LogicalPaths {
+        private final Set<String> files = new HashSet<>();
+        //each directory, & a file under it
+        private final Map<String, String> directories = new HashMap<>();
+
+        LogicalPaths(Collection<String> paths) {
+            paths.forEach(this::add);
+        }
+
+        void add(String path) {
+            files.add(path);
+            for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                directories.putIfAbsent(path.substring(0, slash), path);
+            }
+        }
+
+        //throws what ocfl-java would throw for the path
+        void check(String path) {
+            LogicalPathConstraints.constraints().apply(path);
+            if (directories.containsKey(path)) {
+                throw conflict(path, directories.get(path));
+            }
+            for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                var parent = path.substring(0, slash);
+                if (files.contains(parent)) {
+                    throw conflict(path, parent);
+                }
+            }
+        }
+
+        private static OcflInputException conflict(String path, String existingPath) {
+            return new OcflInputException(String.format("The logical path %s conflicts with the existing path %s.", path, existingPath));
+        }
+    }
+
+    private static class Batch {
+        final List<Write> writes = new ArrayList<>();
+        final HashSet<String> fileNames = new HashSet<>();
+
+        boolean accepts(Write write) {
+            if (writes.size() >= MaxBatchSize) {
+                return false;
+            }
+            if (!Objects.equals(getUser(writes.get(0).versionInfo), getUser(write.versionInfo))) {
+                return false;
+            }
+            for (String fileName : write.fileIndexes.keySet()) {
+                if (fileNames.contains(fileName)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(Write write) {
+            writes.add(write);
+            fileNames.addAll(write.fileIndexes.keySet());
+        }
+    }
+
+    private final long windowMillis;
+    private final Commit commit;
+    //the batch that's open for each object - only changed inside the map's compute
+    private final ConcurrentHashMap<String, Batch> openBatches = new ConcurrentHashMap<>();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedWrites = new LongAdder();
+    private final LongAdder retriedBatches = new LongAdder();
+    //closes the windows - its thread & the commit threads exit when they're idle, so nothing needs shutting down
+    private final ScheduledThreadPoolExecutor windowTimer;
+    private final ExecutorService commitExecutor;
+
+    GroupCommitter(long windowMillis, Commit commit) {
+        this.windowMillis = windowMillis;
+        this.commit = commit;
+        windowTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            var thread = new Thread(runnable, "ocfl-group-commit-window");
+            thread.setDaemon(true);
+            return thread;
+        });
+        windowTimer.setKeepAliveTime(1, TimeUnit.SECONDS);
+        windowTimer.allowCoreThreadTimeOut(true);
+        var threadCount = new AtomicInteger();
+        commitExecutor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "ocfl-group-commit-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+    Blocks until the write's batch is committed. Throws whatever the write failed with.
+     */
+    ObjectVersionId submit(String objectId, Write write) throws IOException {
+        var opened = new Batch[1];
+        openBatches.compute(objectId, (id, open) -> {
+            if (open != null && open.accepts(write)) {
+                open.add(write);
+                return open;
+            }
+            //replaces an open batch we can't join - its timer still commits it
+            var batch = new Batch();
+            batch.add(write);
+            opened[0] = batch;
+            return batch;
+        });
+        if (opened[0] != null) {
+            var batch = opened[0];
+            windowTimer.schedule(() -> commitExecutor.execute(() -> commitBatch(objectId, batch)), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            return write.result.join();
+        } catch (CompletionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void commitBatch(String objectId, Batch batch) {
+        //no more writes can join once it's out of the map
+        openBatches.remove(objectId, batch);
+        batches.increment();
+        batchedWrites.add(batch.writes.size());
+        try {
+            complete(batch.writes, commit.commit(objectId, batch.writes));
+        } catch (Exception e) {
+            if (batch.writes.size() == 1) {
+                batch.writes.get(0).result.completeExceptionally(e);
+                return;
+            }
+            //something the checks didn't catch - commit the writes one at a time, so it only fails its own write
+            retriedBatches.increment();
+            for (Write write : batch.writes) {
+                if (write.result.isDone()) {
+                    continue;
+                }
+                try {
+                    complete(List.of(write), commit.commit(objectId, List.of(write)));
+                } catch (Exception writeException) {
+                    write.result.completeExceptionally(writeException);
+                }
+            }
+        } finally {
+            //nothing else would wake the request threads, eg. after an Error
+            for (Write write : batch.writes) {
+                write.result.completeExceptionally(new IllegalStateException("group commit of " + objectId + " didn't finish"));
+            }
+        }
+    }
+
+    //writes the commit already failed keep their failure
+    private static void complete(List<Write> writes, ObjectVersionId versionId) {
+        for (Write write : writes) {
+            write.result.complete(versionId);
+        }
+    }
+
+    /*
+    The batch's version info: the user they all share, & each distinct message, one per line.
+     */
+    static VersionInfo getVersionInfo(List<Write> writes) {
+        var versionInfo = new VersionInfo();
+        var user = writes.get(0).versionInfo.getUser();
+        if (user != null && user.getName() != null) {
+            versionInfo.setUser(user.getName(), user.getAddress());
+        }
+        var messages = new LinkedHashSet<String>();
+        for (Write write : writes) {
+            var message = write.versionInfo.getMessage();
+            if (message != null && !message.isEmpty()) {
+                messages.add(message);
+            }
+        }
+        if (!messages.isEmpty()) {
+            versionInfo.setMessage(String.join("\n", messages));
+        }
+        return versionInfo;
+    }
+
+    static String getUser(VersionInfo versionInfo) {
+        var user = versionInfo.getUser();
+        return (user == null || user.getName() == null) ? null : user.getName() + " <" + user.getAddress() + ">";
+    }
+
+    //writes in the object's open batch, waiting for the window to end
+    int getOpenWrites(String objectId) {
+        var open = openBatches.get(objectId);
+        return (open == null) ? 0 : open.writes.size();
+    }
+
+    long getBatches() {
+        return batches.sum();
+    }
+
+    long getBatchedWrites() {
+        return batchedWrites.sum();
+    }
+
+    long getRetriedBatches() {
+        return retriedBatches.sum();
+    }
+
+    void write(StringBuilder output) {
+        output.append("# HELP ocfl_http_group_commit_batches_total Batches of PUTs committed together (each one a version, unless all its PUTs failed).\n");
+        output.append("# TYPE ocfl_http_group_commit_batches_total counter\n");
+        output.append("ocfl_http_group_commit_batches_total ").append(batches.sum()).append('\n');
+        output.append("# HELP ocfl_http_group_commit_writes_total PUTs that went through group commit.\n");
+        output.append("# TYPE ocfl_http_group_commit_writes_total counter\n");
+        output.append("ocfl_http_group_commit_writes_total ").append(batchedWrites.sum()).append('\n');
+        output.append("# HELP ocfl_http_group_commit_retried_batches_total Batches whose commit failed, & were retried one PUT at a time.\n");
+        output.append("# TYPE ocfl_http_group_commit_retried_batches_total counter\n");
+        output.append("ocfl_http_group_commit_retried_batches_total ").append(retriedBatches.sum()).append('\n');
+    }
+}
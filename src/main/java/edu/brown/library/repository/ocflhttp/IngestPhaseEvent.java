@@ -0,0 +1,30 @@
+package edu.brown.library.repository.ocflhttp;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+JFR event for one phase of a POST/PUT, so a flight recording shows ingest phases next to GC & file I/O.
+Only recorded if a recording has it enabled (it is by default) - eg. java -XX:StartFlightRecording=filename=ocfl.jfr ...
+ */
+@Name("edu.brown.library.repository.ocflhttp.IngestPhase")
+@Label("Ingest Phase")
+@Category({"OCFL HTTP"})
+@Description("One phase of adding files to an object")
+@StackTrace(false)
+class IngestPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Object ID")
+    String objectId;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Bytes")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+}
@@ -0,0 +1,105 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.util.Locale;
+
+/*
+How long each phase of one POST/PUT took, & how many bytes went through it:
+ - receive: jetty spooling the multipart body to disk, & opening location files (in streaming mode, just reading
+    the params part - the files are parsed as they're written)
+ - stage: copying & digesting the files in parallel, before the new version is started (only with INGEST_THREADS > 1)
+ - write: adding the files to ocfl-java's staging directory - reading the content, digesting it, & checking any
+    client checksum as it goes through
+ - verify: extra reads just to check a client checksum (a linked location file with a checksumType that isn't
+    the inventory's algorithm) - not counted in write, though it happens inside it
+ - commit: ocfl-java writing the inventory & moving the new version into the object
+ - metadata: recording sizes & mimetypes, & removing moved location files
+Each phase is also a JFR IngestPhaseEvent. Only used by the thread handling the request.
+ */
+class IngestTimings {
+
+    enum Phase {
+        RECEIVE, STAGE, WRITE, VERIFY, COMMIT, METADATA;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    class Span {
+        final Phase phase;
+        final long start = System.nanoTime();
+        final long verifyNanosAtStart = nanos[Phase.VERIFY.ordinal()];
+        final IngestPhaseEvent event = new IngestPhaseEvent();
+
+        Span(Phase phase) {
+            this.phase = phase;
+            event.begin();
+        }
+
+        void end(long phaseBytes) {
+            event.end();
+            var duration = System.nanoTime() - start;
+            if (phase == Phase.WRITE) {
+                duration -= nanos[Phase.VERIFY.ordinal()] - verifyNanosAtStart;
+            }
+            nanos[phase.ordinal()] += duration;
+            bytes[phase.ordinal()] += phaseBytes;
+            ran[phase.ordinal()] = true;
+            if (event.shouldCommit()) {
+                event.objectId = objectId;
+                event.phase = phase.label;
+                event.bytes = phaseBytes;
+                event.commit();
+            }
+        }
+    }
+
+    final String objectId;
+    final long start = System.nanoTime();
+    final long[] nanos = new long[Phase.values().length];
+    final long[] bytes = new long[Phase.values().length];
+    final boolean[] ran = new boolean[Phase.values().length];
+
+    IngestTimings(String objectId) {
+        this.objectId = objectId;
+    }
+
+    Span start(Phase phase) {
+        return new Span(phase);
+    }
+
+    long getTotalNanos() {
+        return System.nanoTime() - start;
+    }
+
+    /*
+    eg. ingest-receive;desc="1048576 bytes";dur=12.301 - durations are in ms.
+     */
+    String getServerTiming() {
+        var header = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (ran[phase.ordinal()]) {
+                if (header.length() > 0) {
+                    header.append(", ");
+                }
+                header.append("ingest-").append(phase.label).append(";desc=\"").append(bytes[phase.ordinal()])
+                        .append(" bytes\";dur=").append(String.format("%.3f", nanos[phase.ordinal()] / 1e6));
+            }
+        }
+        return header.toString();
+    }
+
+    /*
+    eg. 5120ms: receive 1200ms/104857600 bytes, write 3900ms/104857600 bytes, commit 15ms/104857600 bytes, ...
+     */
+    String getSummary() {
+        var summary = new StringBuilder().append(getTotalNanos() / 1_000_000).append("ms:");
+        var separator = " ";
+        for (Phase phase : Phase.values()) {
+            if (ran[phase.ordinal()]) {
+                summary.append(separator).append(phase.label).append(' ').append(nanos[phase.ordinal()] / 1_000_000)
+                        .append("ms/").append(bytes[phase.ordinal()]).append(" bytes");
+                separator = ", ";
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,270 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import edu.wisc.library.ocfl.api.MutableOcflRepository;
+import edu.wisc.library.ocfl.api.OcflConfig;
+import edu.wisc.library.ocfl.api.OcflObjectUpdater;
+import edu.wisc.library.ocfl.api.OcflOption;
+import edu.wisc.library.ocfl.api.model.FileChangeHistory;
+import edu.wisc.library.ocfl.api.model.ObjectDetails;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.OcflObjectVersion;
+import edu.wisc.library.ocfl.api.model.VersionDetails;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+
+/*
+MutableOcflRepository wrapper that counts & times every call into ocfl-java, by method, for /metrics.
+It sits under CachingOcflRepository, so it only sees the calls that actually go to storage - a describeObject
+ that's served from the object cache isn't counted.
+If a request has started a RequestTimings on its thread, the calls are also added to that, for the
+ Server-Timing header.
+ */
+class InstrumentedOcflRepository implements MutableOcflRepository {
+
+    enum Method {
+        putObject, updateObject, getObject, describeObject, describeVersion, fileChangeHistory, containsObject,
+        listObjectIds, purgeObject, replicateVersionAsHead, rollbackToVersion, exportVersion, exportObject,
+        importVersion, importObject, stageChanges, commitStagedChanges, purgeStagedChanges, hasStagedChanges
+    }
+
+    static class MethodMetrics {
+        final LatencyHistogram duration = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    /*
+    The storage calls made by one request - only touched by the thread handling the request.
+     */
+    static class RequestTimings {
+        final long start = System.nanoTime();
+        final int[] calls = new int[Method.values().length];
+        final long[] nanos = new long[Method.values().length];
+
+        int getCalls(Method method) {
+            return calls[method.ordinal()];
+        }
+
+        /*
+        eg. describeObject;desc="1 call";dur=2.301, total;dur=5.120 - durations are in ms, & total is the time
+         since the request started.
+         */
+        String getServerTiming() {
+            var header = new StringBuilder();
+            for (Method method : Method.values()) {
+                var count = calls[method.ordinal()];
+                if (count > 0) {
+                    header.append(method.name()).append(";desc=\"").append(count).append(count == 1 ? " call" : " calls")
+                            .append("\";dur=").append(String.format("%.3f", nanos[method.ordinal()] / 1e6)).append(", ");
+                }
+            }
+            return header.append("total;dur=").append(String.format("%.3f", (System.nanoTime() - start) / 1e6)).toString();
+        }
+    }
+
+    private static final ThreadLocal<RequestTimings> CurrentRequest = new ThreadLocal<>();
+
+    private final MutableOcflRepository repo;
+    private final MethodMetrics[] methods = new MethodMetrics[Method.values().length];
+
+    InstrumentedOcflRepository(MutableOcflRepository repo) {
+        this.repo = repo;
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = new MethodMetrics();
+        }
+    }
+
+    static RequestTimings startRequest() {
+        var timings = new RequestTimings();
+        CurrentRequest.set(timings);
+        return timings;
+    }
+
+    //for a request that carries on in another thread (eg. an async upload, once the body is in)
+    static void resumeRequest(RequestTimings timings) {
+        CurrentRequest.set(timings);
+    }
+
+    static void endRequest() {
+        CurrentRequest.remove();
+    }
+
+    long getCalls(Method method) {
+        return methods[method.ordinal()].duration.getCount();
+    }
+
+    long getErrors(Method method) {
+        return methods[method.ordinal()].errors.sum();
+    }
+
+    private void record(Method method, long nanos, boolean failed) {
+        var methodMetrics = methods[method.ordinal()];
+        methodMetrics.duration.record(nanos);
+        if (failed) {
+            methodMetrics.errors.increment();
+        }
+        var timings = CurrentRequest.get();
+        if (timings != null) {
+            timings.calls[method.ordinal()]++;
+            timings.nanos[method.ordinal()] += nanos;
+        }
+    }
+
+    private <T> T time(Method method, Supplier<T> call) {
+        var start = System.nanoTime();
+        var failed = true;
+        try {
+            var result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            record(method, System.nanoTime() - start, failed);
+        }
+    }
+
+    private void time(Method method, Runnable call) {
+        time(method, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    void writeMetrics(StringBuilder output) {
+        output.append("# HELP ocfl_http_storage_duration_seconds Time spent in ocfl-java calls, by method.\n");
+        output.append("# TYPE ocfl_http_storage_duration_seconds histogram\n");
+        for (Method method : Method.values()) {
+            methods[method.ordinal()].duration.write(output, "ocfl_http_storage_duration_seconds", "method=\"" + method.name() + "\"");
+        }
+        output.append("# HELP ocfl_http_storage_errors_total ocfl-java calls that threw an exception, by method.\n");
+        output.append("# TYPE ocfl_http_storage_errors_total counter\n");
+        for (Method method : Method.values()) {
+            output.append("ocfl_http_storage_errors_total{method=\"").append(method.name()).append("\"} ")
+                    .append(methods[method.ordinal()].errors.sum()).append('\n');
+        }
+    }
+
+    @Override
+    public ObjectVersionId putObject(ObjectVersionId objectVersionId, Path path, VersionInfo versionInfo, OcflOption... options) {
+        return time(Method.putObject, () -> repo.putObject(objectVersionId, path, versionInfo, options));
+    }
+
+    @Override
+    public ObjectVersionId updateObject(ObjectVersionId objectVersionId, VersionInfo versionInfo, Consumer<OcflObjectUpdater> objectUpdater) {
+        return time(Method.updateObject, () -> repo.updateObject(objectVersionId, versionInfo, objectUpdater));
+    }
+
+    @Override
+    public void getObject(ObjectVersionId objectVersionId, Path outputPath) {
+        time(Method.getObject, () -> repo.getObject(objectVersionId, outputPath));
+    }
+
+    @Override
+    public OcflObjectVersion getObject(ObjectVersionId objectVersionId) {
+        return time(Method.getObject, () -> repo.getObject(objectVersionId));
+    }
+
+    @Override
+    public ObjectDetails describeObject(String objectId) {
+        return time(Method.describeObject, () -> repo.describeObject(objectId));
+    }
+
+    @Override
+    public VersionDetails describeVersion(ObjectVersionId objectVersionId) {
+        return time(Method.describeVersion, () -> repo.describeVersion(objectVersionId));
+    }
+
+    @Override
+    public FileChangeHistory fileChangeHistory(String objectId, String logicalPath) {
+        return time(Method.fileChangeHistory, () -> repo.fileChangeHistory(objectId, logicalPath));
+    }
+
+    @Override
+    public boolean containsObject(String objectId) {
+        return time(Method.containsObject, () -> repo.containsObject(objectId));
+    }
+
+    @Override
+    public Stream<String> listObjectIds() {
+        //only times opening the stream, not reading it
+        return time(Method.listObjectIds, () -> repo.listObjectIds());
+    }
+
+    @Override
+    public void purgeObject(String objectId) {
+        time(Method.purgeObject, () -> repo.purgeObject(objectId));
+    }
+
+    @Override
+    public ObjectVersionId replicateVersionAsHead(ObjectVersionId objectVersionId, VersionInfo versionInfo) {
+        return time(Method.replicateVersionAsHead, () -> repo.replicateVersionAsHead(objectVersionId, versionInfo));
+    }
+
+    @Override
+    public void rollbackToVersion(ObjectVersionId objectVersionId) {
+        time(Method.rollbackToVersion, () -> repo.rollbackToVersion(objectVersionId));
+    }
+
+    @Override
+    public void exportVersion(ObjectVersionId objectVersionId, Path outputPath, OcflOption... options) {
+        time(Method.exportVersion, () -> repo.exportVersion(objectVersionId, outputPath, options));
+    }
+
+    @Override
+    public void exportObject(String objectId, Path outputPath, OcflOption... options) {
+        time(Method.exportObject, () -> repo.exportObject(objectId, outputPath, options));
+    }
+
+    @Override
+    public void importVersion(Path versionPath, OcflOption... options) {
+        time(Method.importVersion, () -> repo.importVersion(versionPath, options));
+    }
+
+    @Override
+    public void importObject(Path objectPath, OcflOption... options) {
+        time(Method.importObject, () -> repo.importObject(objectPath, options));
+    }
+
+    @Override
+    public ObjectVersionId stageChanges(ObjectVersionId objectVersionId, VersionInfo versionInfo, Consumer<OcflObjectUpdater> objectUpdater) {
+        return time(Method.stageChanges, () -> repo.stageChanges(objectVersionId, versionInfo, objectUpdater));
+    }
+
+    @Override
+    public ObjectVersionId commitStagedChanges(String objectId, VersionInfo versionInfo) {
+        return time(Method.commitStagedChanges, () -> repo.commitStagedChanges(objectId, versionInfo));
+    }
+
+    @Override
+    public void purgeStagedChanges(String objectId) {
+        time(Method.purgeStagedChanges, () -> repo.purgeStagedChanges(objectId));
+    }
+
+    @Override
+    public boolean hasStagedChanges(String objectId) {
+        return time(Method.hasStagedChanges, () -> repo.hasStagedChanges(objectId));
+    }
+
+    @Override
+    public void close() {
+        repo.close();
+    }
+
+    @Override
+    public OcflConfig config() {
+        return repo.config();
+    }
+
+    @Override
+    public void invalidateCache(String objectId) {
+        repo.invalidateCache(objectId);
+    }
+
+    @Override
+    public void invalidateCache() {
+        repo.invalidateCache();
+    }
+}
@@ -0,0 +1,67 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+A Prometheus histogram of durations, with fixed buckets from 1ms to 60s. Recording is a short scan of the
+ bucket bounds & two LongAdder increments, so it's cheap enough for every request & every storage call.
+ */
+class LatencyHistogram {
+
+    //upper bounds of the buckets, in seconds (there's also a +Inf bucket)
+    static final double[] BucketBounds = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final long[] BucketBoundNanos = new long[BucketBounds.length];
+    static {
+        for (int i = 0; i < BucketBounds.length; i++) {
+            BucketBoundNanos[i] = (long) (BucketBounds[i] * 1_000_000_000L);
+        }
+    }
+
+    //not cumulative - the le buckets are summed up when they're written
+    private final LongAdder[] buckets = new LongAdder[BucketBounds.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        var bucket = 0;
+        while (bucket < BucketBoundNanos.length && nanos > BucketBoundNanos[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    long getCount() {
+        var count = 0L;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /*
+    Writes the _bucket, _sum & _count lines - labels is eg. route="files", or "" for none.
+     */
+    void write(StringBuilder output, String name, String labels) {
+        var bucketLabels = labels.isEmpty() ? "" : labels + ",";
+        var otherLabels = labels.isEmpty() ? "" : "{" + labels + "}";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            var bound = (i < BucketBounds.length) ? Double.toString(BucketBounds[i]) : "+Inf";
+            output.append(name).append("_bucket{").append(bucketLabels).append("le=\"").append(bound).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        output.append(name).append("_sum").append(otherLabels).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        output.append(name).append("_count").append(otherLabels).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,106 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.util.TreeMap;
+
+import edu.wisc.library.ocfl.api.MutableOcflRepository;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+Sends /files & /versions responses from the response cache, or renders them - sharing the render with identical
+ requests in flight, if coalescing is on - & caches the 200s. Only responses up to maxBufferedBytes are built in
+ memory; bigger ones, & all of them with both coalescing & the cache off, are streamed.
+ */
+class ListingResponses {
+
+    private final MutableOcflRepository repo;
+    //null if COALESCE_REQUESTS is off
+    RequestCoalescer coalescer;
+    //null if RESPONSE_CACHE_MAX_BYTES is 0
+    ResponseCache responseCache;
+    int maxBufferedBytes;
+
+    ListingResponses(MutableOcflRepository repo, OcflHttpConfig config) {
+        this.repo = repo;
+        if (config.coalesceRequests) {
+            coalescer = new RequestCoalescer();
+        }
+        if (config.responseCacheMaxBytes > 0) {
+            responseCache = new ResponseCache(config.responseCacheMaxBytes);
+        }
+        maxBufferedBytes = config.responseCacheMaxEntryBytes;
+    }
+
+    void send(HttpServletRequest request, HttpServletResponse response, String route, String objectId, int versionNum,
+              BufferedResponse.Handler handler) throws IOException, ServletException {
+        if (coalescer == null && responseCache == null) {
+            handler.handle(response);
+            return;
+        }
+        var key = getRequestKey(request, route, objectId, versionNum);
+        var rendered = (responseCache != null) ? responseCache.get(key) : null;
+        if (rendered != null) {
+            rendered.send(response);
+            return;
+        }
+        var buffered = new BufferedResponse(response, maxBufferedBytes);
+        RequestCoalescer.Render render = () -> {
+            //taken before reading anything, so a write's invalidation while this renders keeps it out of the cache
+            var generation = (responseCache != null) ? responseCache.getGeneration(objectId) : 0;
+            var result = buffered.render(handler);
+            if (responseCache != null && result != null && result.status == HttpServletResponse.SC_OK) {
+                responseCache.put(objectId, generation, key, result);
+            }
+            return result;
+        };
+        rendered = (coalescer != null) ? coalescer.run(key, render) : render.render();
+        if (rendered != null) {
+            rendered.send(response);
+        } else if (!buffered.isStreaming()) {
+            //the request this one waited on was too big to share
+            handler.handle(response);
+        }
+    }
+
+    //the head version is in the key, so it changes with every write - & the params are sorted, so their order doesn't matter
+    String getRequestKey(HttpServletRequest request, String route, String objectId, int versionNum) {
+        var key = new StringBuilder(route).append('\n').append(objectId).append('\n').append(versionNum).append('\n');
+        if (repo.containsObject(objectId)) {
+            var headVersion = repo.describeVersion(ObjectVersionId.head(objectId));
+            key.append(headVersion.getVersionNum());
+            if (headVersion.isMutable()) {
+                //staged changes keep the same version number, so the created time tells them apart
+                key.append("-staged-").append(headVersion.getCreated());
+            }
+        }
+        key.append('\n');
+        var acceptHeader = request.getHeader("Accept");
+        key.append(acceptHeader != null && acceptHeader.contains(OcflHttp.NdjsonContentType) ? OcflHttp.NdjsonContentType : "application/json");
+        var params = new TreeMap<>(request.getParameterMap());
+        params.forEach((name, values) -> {
+            for (String value : values) {
+                key.append('\n').append(name).append('=').append(value);
+            }
+        });
+        return key.toString();
+    }
+
+    //drops the object's cached responses, eg. when its technical metadata changes what a listing would show
+    void invalidate(String objectId) {
+        if (responseCache != null) {
+            responseCache.invalidate(objectId);
+        }
+    }
+
+    void write(StringBuilder output) {
+        if (coalescer != null) {
+            coalescer.write(output);
+        }
+        if (responseCache != null) {
+            responseCache.write(output);
+        }
+    }
+}
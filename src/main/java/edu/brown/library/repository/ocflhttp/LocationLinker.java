@@ -0,0 +1,65 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/*
+Hard-links location files into the ingest directory, for upload directories configured with the LINK or MOVE
+ ingest mode. ocfl-java then adds the link to the new version with addPath(MOVE_SOURCE), which digests the file
+ (the only time its content is read) & renames it into the version - no bytes are copied, as long as the upload
+ directory, the work directory & the repository are all on the same filesystem.
+The link is only a second name for the file, so if the update fails the link is deleted & the original is untouched.
+ */
+class LocationLinker {
+
+    private static final Logger logger = Logger.getLogger("edu.brown.library.repository.ocflhttp");
+
+    private final Path ingestDir;
+    private final Map<Path, OcflHttpConfig.IngestMode> ingestModes;
+
+    LocationLinker(Path ingestDir, Map<Path, OcflHttpConfig.IngestMode> ingestModes) throws IOException {
+        this.ingestDir = ingestDir;
+        this.ingestModes = ingestModes;
+        if (!ingestModes.isEmpty()) {
+            Files.createDirectories(ingestDir);
+        }
+    }
+
+    OcflHttpConfig.IngestMode getIngestMode(Path location) {
+        //the most specific upload directory wins
+        var absoluteLocation = location.toAbsolutePath();
+        Path matchingDir = null;
+        for (Path dir : ingestModes.keySet()) {
+            if (absoluteLocation.startsWith(dir) && (matchingDir == null || dir.getNameCount() > matchingDir.getNameCount())) {
+                matchingDir = dir;
+            }
+        }
+        if (matchingDir == null) {
+            return OcflHttpConfig.IngestMode.COPY;
+        }
+        return ingestModes.get(matchingDir);
+    }
+
+    /*
+    Returns the new link, or null if the file can't be linked (eg. it's on a different filesystem), in which case
+     the caller should copy it instead.
+     */
+    Path link(Path location) throws IOException {
+        var linkPath = ingestDir.resolve("link-" + UUID.randomUUID());
+        try {
+            Files.createLink(linkPath, location);
+            return linkPath;
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            logger.info("couldn't link " + location + " - copying it instead: " + e.getMessage());
+            return null;
+        }
+    }
+}
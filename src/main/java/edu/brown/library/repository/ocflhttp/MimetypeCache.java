@@ -0,0 +1,147 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import edu.wisc.library.ocfl.api.model.DigestAlgorithm;
+
+/*
+Detected mimetypes, keyed by the content digest and the part of the file name that detection looks at.
+Files with the same content & extension always get the same mimetype, so once a file has been sniffed,
+ other requests for it (or for copies of it in other objects) don't need to open it again.
+If persistDir is set, entries are also written there (one small file per entry), so they survive restarts.
+ */
+class MimetypeCache {
+
+    private static final Logger logger = Logger.getLogger("edu.brown.library.repository.ocflhttp");
+    //keep the file names for the on-disk entries under common filesystem limits
+    private static final int MaxPersistedNameLength = 240;
+
+    private final Cache<String, String> mimetypes;
+    private final Path persistDir;
+
+    MimetypeCache(long maxSize, Path persistDir) throws IOException {
+        this.mimetypes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.persistDir = persistDir;
+        if (persistDir != null) {
+            Files.createDirectories(persistDir);
+        }
+    }
+
+    CacheStats getStats() {
+        return mimetypes.stats();
+    }
+
+    static String getNameKey(String name) {
+        //tika matches the file name against its glob patterns - mostly extensions, but some whole names
+        var fileName = name.substring(name.lastIndexOf('/') + 1);
+        var dot = fileName.lastIndexOf('.');
+        if (dot == -1) {
+            return fileName;
+        }
+        return fileName.substring(dot);
+    }
+
+    static String getDigestKey(Map<DigestAlgorithm, String> fixity) {
+        if (fixity == null) {
+            return null;
+        }
+        for (DigestAlgorithm algorithm : new DigestAlgorithm[]{DigestAlgorithm.sha512, DigestAlgorithm.sha256}) {
+            var digest = fixity.get(algorithm);
+            if (digest != null) {
+                return algorithm.getOcflName() + "-" + digest.toLowerCase();
+            }
+        }
+        return null;
+    }
+
+    String getContentType(Map<DigestAlgorithm, String> fixity, String name, Path filePath) throws IOException {
+        var digestKey = getDigestKey(fixity);
+        if (digestKey == null) {
+            return detect(name, filePath);
+        }
+        var key = digestKey + "/" + getNameKey(name);
+        var mimetype = mimetypes.getIfPresent(key);
+        if (mimetype != null) {
+            return mimetype;
+        }
+        mimetype = readPersisted(digestKey, name);
+        if (mimetype == null) {
+            mimetype = detect(name, filePath);
+            writePersisted(digestKey, name, mimetype);
+        }
+        mimetypes.put(key, mimetype);
+        return mimetype;
+    }
+
+    private String detect(String name, Path filePath) throws IOException {
+        try (var is = Files.newInputStream(filePath)) {
+            return OcflHttp.getContentType(is, name);
+        }
+    }
+
+    private Path getPersistedPath(String digestKey, String name) {
+        if (persistDir == null) {
+            return null;
+        }
+        var encodedName = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(getNameKey(name).getBytes(StandardCharsets.UTF_8));
+        var fileName = digestKey + "_" + encodedName;
+        if (fileName.length() > MaxPersistedNameLength) {
+            return null;
+        }
+        //shard by the start of the digest, so no directory gets too big
+        var digest = digestKey.substring(digestKey.indexOf('-') + 1);
+        return persistDir.resolve(digest.substring(0, 2)).resolve(fileName);
+    }
+
+    private String readPersisted(String digestKey, String name) {
+        var path = getPersistedPath(digestKey, name);
+        if (path == null) {
+            return null;
+        }
+        try {
+            var mimetype = Files.readString(path, StandardCharsets.UTF_8).strip();
+            if (!mimetype.isEmpty()) {
+                return mimetype;
+            }
+        } catch (IOException e) {
+            //not persisted yet
+        }
+        return null;
+    }
+
+    private void writePersisted(String digestKey, String name, String mimetype) {
+        var path = getPersistedPath(digestKey, name);
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(path.getParent());
+            //write to a temp file & move it into place, so readers never see a partial entry
+            var tmpPath = Files.createTempFile(path.getParent(), "mimetype", ".tmp");
+            try {
+                Files.writeString(tmpPath, mimetype, StandardCharsets.UTF_8);
+                Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmpPath);
+            }
+        } catch (IOException e) {
+            //the in-memory entry still works - we'll just have to detect it again after a restart
+            logger.log(Level.WARNING, "couldn't persist mimetype for " + digestKey, e);
+        }
+    }
+}
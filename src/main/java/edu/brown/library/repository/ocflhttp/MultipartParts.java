@@ -0,0 +1,26 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/*
+The parts of a multipart/form-data body, one at a time - either parsed from the request stream as it's read
+ (StreamingMultipartParser), or already split into a file per part (SpooledMultipart).
+ */
+interface MultipartParts {
+
+    //moves to the next part - returns false when there are no more parts
+    boolean next() throws IOException, InvalidRequestException;
+
+    String getName();
+
+    String getFileName();
+
+    InputStream getPartStream() throws IOException;
+
+    //the file holding the current part's body, if it's been spooled - it can be moved into the version
+    default Path getPartFile() {
+        return null;
+    }
+}
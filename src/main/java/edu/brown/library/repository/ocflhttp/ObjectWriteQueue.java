@@ -0,0 +1,82 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Lines up the writes (POST/PUT/DELETE/rename) to each object, so they run one at a time in the order they
+ arrived, instead of racing in updateObject & failing with ObjectOutOfSyncException. Each object being written
+ gets its own fair lock - created when a write arrives & dropped when the last one leaves - so writes to
+ different objects never wait on each other. A write includes its checks of the current version (eg. whether
+ the files already exist), so those see the result of the write before it.
+ */
+class ObjectWriteQueue {
+
+    interface Write {
+        void run() throws IOException;
+    }
+
+    private static class ObjectLock {
+        final ReentrantLock lock = new ReentrantLock(true);
+        //writes that have a reference to this lock - only changed inside the map's compute
+        int writes = 0;
+    }
+
+    private final ConcurrentHashMap<String, ObjectLock> locks = new ConcurrentHashMap<>();
+    private final LongAdder waiting = new LongAdder();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+
+    void run(String objectId, Write write) throws IOException {
+        var objectLock = locks.compute(objectId, (id, existing) -> {
+            var entry = (existing == null) ? new ObjectLock() : existing;
+            entry.writes++;
+            return entry;
+        });
+        try {
+            if (objectLock.lock.isHeldByCurrentThread()) {
+                //eg. a PUT that turns out to be a rename - it's already at the front of the queue
+                objectLock.lock.lock();
+            } else {
+                var start = System.nanoTime();
+                waiting.increment();
+                try {
+                    objectLock.lock.lock();
+                } finally {
+                    waiting.decrement();
+                }
+                waitTime.record(System.nanoTime() - start);
+            }
+            try {
+                write.run();
+            } finally {
+                objectLock.lock.unlock();
+            }
+        } finally {
+            locks.computeIfPresent(objectId, (id, entry) -> (--entry.writes == 0) ? null : entry);
+        }
+    }
+
+    //writes waiting for an earlier write to the same object
+    long getWaiting() {
+        return waiting.sum();
+    }
+
+    //objects with a write running (or waiting)
+    int getObjects() {
+        return locks.size();
+    }
+
+    long getWaitCount() {
+        return waitTime.getCount();
+    }
+
+    void write(StringBuilder output) {
+        RequestMetrics.writeGauge(output, "ocfl_http_write_queue_depth", "Writes waiting for an earlier write to the same object.", getWaiting());
+        RequestMetrics.writeGauge(output, "ocfl_http_write_queue_objects", "Objects with a write running or waiting.", getObjects());
+        output.append("# HELP ocfl_http_write_queue_wait_seconds Time writes waited for earlier writes to the same object.\n");
+        output.append("# TYPE ocfl_http_write_queue_wait_seconds histogram\n");
+        waitTime.write(output, "ocfl_http_write_queue_wait_seconds", "");
+    }
+}
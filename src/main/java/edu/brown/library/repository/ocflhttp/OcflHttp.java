@@ -5,45 +5,65 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.Normalizer;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
-import java.util.regex.Pattern;
 import java.util.logging.Logger;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
 
 import edu.wisc.library.ocfl.api.exception.*;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.MultipartConfigElement;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.Part;
 
-import edu.wisc.library.ocfl.api.io.FixityCheckInputStream;
 import edu.wisc.library.ocfl.api.model.*;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
-import edu.wisc.library.ocfl.api.OcflRepository;
+import edu.wisc.library.ocfl.api.OcflObjectUpdater;
+import edu.wisc.library.ocfl.api.MutableOcflRepository;
 import edu.wisc.library.ocfl.core.OcflRepositoryBuilder;
 import edu.wisc.library.ocfl.core.extension.storage.layout.config.HashedNTupleIdEncapsulationLayoutConfig;
 import edu.wisc.library.ocfl.core.storage.filesystem.FileSystemOcflStorage;
+import edu.wisc.library.ocfl.core.util.FileUtil;
 import org.apache.tika.Tika;
 
+import static edu.wisc.library.ocfl.api.OcflOption.MOVE_SOURCE;
 import static edu.wisc.library.ocfl.api.OcflOption.OVERWRITE;
 
 class InvalidRequestException extends Exception {
@@ -52,29 +72,81 @@ class InvalidRequestException extends Exception {
     }
 }
 
+/*
+Thrown from inside an updateObject() call to abort the new version & send an error response.
+ */
+class UploadRejectedException extends RuntimeException {
+    final int statusCode;
+
+    public UploadRejectedException(int statusCode, String errMessage) {
+        super(errMessage);
+        this.statusCode = statusCode;
+    }
+}
+
 public class OcflHttp extends AbstractHandler {
 
-    final String objectIdRegex = "[-:_. %a-zA-Z0-9]+";
-    final String fileNameRegex = "[-:_. %a-zA-Z0-9]+";
-    final Pattern ObjectIdVersionsPattern = Pattern.compile("^/(" + objectIdRegex + ")/versions$");
-    final Pattern ObjectIdFilesPattern = Pattern.compile("^/(" + objectIdRegex + ")/files$");
-    final Pattern ObjectIdVersionFilesPattern = Pattern.compile("^/(" + objectIdRegex + ")/v([0-9]+)/files$");
-    final Pattern ObjectIdPathPattern = Pattern.compile("^/(" + objectIdRegex + ")/files/(" + fileNameRegex + ")$");
-    final Pattern ObjectIdPathContentPattern = Pattern.compile("^/(" + objectIdRegex + ")/files/(" + fileNameRegex + ")/content$");
-    final Pattern ObjectIdVersionPathContentPattern = Pattern.compile("^/(" + objectIdRegex + ")/v([0-9]+)/files/(" + fileNameRegex + ")/content$");
-    final long ChunkSize = 1000L;
+    private static final RequestRouter Router = new RequestRouter();
     public static String IfNoneMatchHeader = "If-None-Match";
     public static String IfModifiedSinceHeader = "If-Modified-Since";
     public static String IncludeDeletedParameter = "includeDeleted";
     public static String ObjectTimestampsParameter = "objectTimestamps";
     public static String FieldsParameter = "fields";
+    public static String LimitParameter = "limit";
+    public static String CursorParameter = "cursor";
+    public static String NdjsonContentType = "application/x-ndjson";
+    //reserved - object routes always have at least two segments, so this can't be an object's url
+    public static String MetricsPath = "/metrics";
+    //request attribute with a CompletableFuture<Void>, if the response is finished after the handler returns
+    static final String AsyncResponseAttribute = "edu.brown.library.repository.ocflhttp.asyncResponse";
     public static DateTimeFormatter IfModifiedFormatter = DateTimeFormatter.ofPattern("E, dd LLL uuuu kk:mm:ss O");
     private static Logger logger = Logger.getLogger("edu.brown.library.repository.ocflhttp");
     private static MultipartConfigElement MULTI_PART_CONFIG;
+    static final JsonGeneratorFactory JsonGenerators = Json.createGeneratorFactory(null);
+    //Tika's detection is thread-safe, & loading its mimetype definitions is expensive, so share one instance
+    private static final Tika SharedTika = new Tika();
 
     private Path repoRoot;
     private List<Path> allowedUploadDirs;
-    OcflRepository repo;
+    CachingOcflRepository objectCache;
+    //mutable, so changes can be staged in an object's mutable HEAD & committed later as one version
+    MutableOcflRepository repo;
+    MimetypeCache mimetypeCache;
+    TechnicalMetadataStore technicalMetadata;
+    //parse multipart uploads as they come in, instead of letting jetty spool the parts to disk first
+    boolean streamingUploads;
+    //null if uploads are ingested one file at a time - closed when the handler stops
+    ParallelIngester ingester;
+    int ingestThreads;
+    //where ingest files are staged - the same filesystem as the ocfl-java work dir
+    Path ingestDir;
+    //batches small PUTs to the same object into one version - only set if GROUP_COMMIT_WINDOW_MS is on
+    GroupCommitHandler groupCommits;
+    //the /staged routes
+    final StagedChangesHandler stagedChanges = new StagedChangesHandler(this);
+    //sends /files & /versions responses through the response cache & coalescer
+    ListingResponses listings;
+    LocationLinker locationLinker;
+    final RequestMetrics metrics = new RequestMetrics();
+    //every write to an object goes through this, so concurrent writes to one object take turns
+    final ObjectWriteQueue writeQueue = new ObjectWriteQueue();
+    //the ocfl-java repository, under the object cache - every call to it is counted & timed
+    InstrumentedOcflRepository storage;
+    //add a Server-Timing header with the storage calls to each response
+    boolean serverTiming;
+    //log the ingest phases of POST/PUT requests that take at least this long - 0 to turn it off
+    long slowIngestThresholdMillis;
+    //handle each request on its own virtual thread, instead of on jetty's thread
+    boolean virtualThreads;
+    //write large content responses with servlet async I/O, instead of blocking a thread on the client
+    boolean asyncDownloads;
+    //read multipart POST/PUT bodies with servlet async I/O, into part files under uploadSpoolDir
+    boolean asyncUploads;
+    Path uploadSpoolDir;
+    //only set while the handler is started, & only if virtualThreads is on
+    ExecutorService requestExecutor;
+    //runs async uploads' ingests, off jetty's threads - only set while the handler is started
+    ExecutorService uploadExecutor;
 
     public OcflHttp(Path root, Path workDir) throws Exception {
         this(root, workDir, OcflHttpConfig.DEFAULT_FILE_SIZE_THRESHOLD);
@@ -85,32 +157,365 @@ public class OcflHttp extends AbstractHandler {
     }
 
     public OcflHttp(Path root, Path workDir, int fileSizeThreshold, List<Path> uploadDirs) throws Exception {
-        repoRoot = root;
-        allowedUploadDirs = uploadDirs;
+        this(OcflHttpConfig.of(root, workDir, fileSizeThreshold, uploadDirs));
+    }
+
+    public OcflHttp(OcflHttpConfig config) throws Exception {
+        repoRoot = config.repoRootDir;
+        allowedUploadDirs = config.allowedUploadDirs;
         var repoBuilder = new OcflRepositoryBuilder();
         repoBuilder.defaultLayoutConfig(new HashedNTupleIdEncapsulationLayoutConfig());
-        var ocflJavaWorkDir = workDir.resolve("ocfl-java");
+        var ocflJavaWorkDir = config.workDir.resolve("ocfl-java");
         Files.createDirectories(ocflJavaWorkDir);
-        repo = repoBuilder.storage(FileSystemOcflStorage.builder().repositoryRoot(repoRoot).build())
+        var ocflRepository = repoBuilder.storage(FileSystemOcflStorage.builder().repositoryRoot(repoRoot).build())
                 .workDir(ocflJavaWorkDir)
-                .build();
-        var jettyWorkDir = workDir.resolve("jetty");
-        MULTI_PART_CONFIG = new MultipartConfigElement(jettyWorkDir.toString(), -1L, -1L, fileSizeThreshold);
+                .buildMutable();
+        storage = new InstrumentedOcflRepository(ocflRepository);
+        serverTiming = config.serverTiming;
+        slowIngestThresholdMillis = config.slowIngestThresholdMillis;
+        virtualThreads = config.virtualThreads;
+        asyncDownloads = config.asyncDownloads;
+        asyncUploads = config.asyncUploads;
+        uploadSpoolDir = config.workDir.resolve("uploads");
+        //all reads & writes go through the cache, so writes always invalidate it
+        objectCache = new CachingOcflRepository(storage, config.objectCacheMaxWeight);
+        repo = objectCache;
+        Path mimetypeCacheDir = null;
+        if (config.persistMimetypeCache) {
+            mimetypeCacheDir = config.workDir.resolve("mimetype-cache");
+        }
+        mimetypeCache = new MimetypeCache(config.mimetypeCacheMaxSize, mimetypeCacheDir);
+        technicalMetadata = new TechnicalMetadataStore(config.workDir.resolve("technical-metadata"), config.objectCacheMaxWeight);
+        streamingUploads = config.streamingUploads;
+        ingestDir = config.workDir.resolve("ingest");
+        listings = new ListingResponses(repo, config);
+        if (listings.responseCache != null) {
+            //every write invalidates the object in the object cache, so this drops its responses too
+            objectCache.addInvalidationListener(listings.responseCache);
+        }
+        if (config.groupCommitWindowMillis > 0) {
+            groupCommits = new GroupCommitHandler(this, config.groupCommitWindowMillis);
+        }
+        ingestThreads = config.ingestThreads;
+        if (ingestThreads > 1) {
+            //same filesystem as the ocfl-java work dir, so staged files can be moved into the new version
+            ingester = new ParallelIngester(ingestThreads, ingestDir);
+        }
+        locationLinker = new LocationLinker(config.workDir.resolve("ingest"), config.uploadDirIngestModes);
+        var jettyWorkDir = config.workDir.resolve("jetty");
+        MULTI_PART_CONFIG = new MultipartConfigElement(jettyWorkDir.toString(), -1L, -1L, config.fileSizeThreshold);
     }
 
-    void writeFilesToObject(ObjectVersionId objectVersionId, HashMap<String, InputStream> files, VersionInfo versionInfo, boolean overwrite) {
-        repo.updateObject(objectVersionId, versionInfo, updater -> {
-            files.forEach((fileName, inputStream) -> {
-                var fileNameNFC = Normalizer.normalize(fileName, Normalizer.Form.NFC);
-                if (overwrite) {
-                    updater.writeFile(inputStream, fileNameNFC, OVERWRITE);
-                } else {
-                    updater.writeFile(inputStream, fileNameNFC);
-                }
+    @Override
+    protected void doStart() throws Exception {
+        if (virtualThreads) {
+            requestExecutor = newRequestExecutor();
+            uploadExecutor = requestExecutor;
+        } else {
+            //one thread per upload being ingested, like the jetty thread it would otherwise take
+            var threadCount = new AtomicInteger();
+            uploadExecutor = Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "ocfl-upload-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (ingester == null && ingestThreads > 1) {
+            //restarted after a stop closed it
+            ingester = new ParallelIngester(ingestThreads, ingestDir);
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        if (uploadExecutor != null && uploadExecutor != requestExecutor) {
+            uploadExecutor.shutdown();
+        }
+        uploadExecutor = null;
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+            requestExecutor = null;
+        }
+        if (ingester != null) {
+            ingester.close();
+            ingester = null;
+        }
+    }
+
+    ExecutorService newRequestExecutor() {
+        //this still builds for Java 11, so look up the Java 21 method at runtime
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("VIRTUAL_THREADS needs Java 21 or later - this is Java " + Runtime.version().feature());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("couldn't create the virtual thread executor", e);
+        }
+    }
+
+    void writeFilesToObject(ObjectVersionId objectVersionId, HashMap<String, InputStream> files, VersionInfo versionInfo, boolean overwrite) throws IOException {
+        writeFilesToObject(objectVersionId, files, versionInfo, overwrite, new IngestTimings(objectVersionId.getObjectId()));
+    }
+
+    void writeFilesToObject(ObjectVersionId objectVersionId, HashMap<String, InputStream> files, VersionInfo versionInfo, boolean overwrite,
+                            IngestTimings timings) throws IOException {
+        var metadataStreams = new LinkedHashMap<String, TechnicalMetadataInputStream>();
+        files.forEach((fileName, inputStream) -> {
+            var fileNameNFC = Normalizer.normalize(fileName, Normalizer.Form.NFC);
+            metadataStreams.put(fileNameNFC, getMetadataStream(inputStream));
+        });
+        //linked location files are added to the version without copying them, so there's nothing to stage
+        var stagedIndexes = new HashMap<String, Integer>();
+        var streamsToStage = new ArrayList<TechnicalMetadataInputStream>();
+        metadataStreams.forEach((fileNameNFC, metadataStream) -> {
+            if (metadataStream.linkedPath == null) {
+                stagedIndexes.put(fileNameNFC, streamsToStage.size());
+                streamsToStage.add(metadataStream);
+            }
+        });
+        ObjectVersionId newVersionId;
+        if (ingester != null && streamsToStage.size() > 1) {
+            //stage the files in parallel before we start the new version, then link them in one at a time
+            var stage = timings.start(IngestTimings.Phase.STAGE);
+            var staged = ingester.stage(streamsToStage);
+            stage.end(getTotalSize(streamsToStage));
+            try {
+                newVersionId = ingestVersion(objectVersionId, versionInfo, timings, metadataStreams.values(), updater -> {
+                    metadataStreams.forEach((fileNameNFC, metadataStream) -> {
+                        var index = stagedIndexes.get(fileNameNFC);
+                        if (index == null) {
+                            writeFile(updater, fileNameNFC, metadataStream, overwrite, timings);
+                            return;
+                        }
+                        staged.addFile(updater, index, fileNameNFC, overwrite);
+                    });
+                });
+            } finally {
+                FileUtil.safeDeleteDirectory(staged.stagingDir);
+            }
+        } else {
+            newVersionId = writeFilesSerially(objectVersionId, metadataStreams, versionInfo, overwrite, timings);
+        }
+        var metadata = timings.start(IngestTimings.Phase.METADATA);
+        removeMovedSources(metadataStreams.values());
+        recordTechnicalMetadata(newVersionId, metadataStreams);
+        metadata.end(0);
+    }
+
+    ObjectVersionId writeFilesSerially(ObjectVersionId objectVersionId, Map<String, TechnicalMetadataInputStream> metadataStreams, VersionInfo versionInfo, boolean overwrite,
+                                       IngestTimings timings) {
+        return ingestVersion(objectVersionId, versionInfo, timings, metadataStreams.values(), updater -> {
+            metadataStreams.forEach((fileNameNFC, metadataStream) -> {
+                writeFile(updater, fileNameNFC, metadataStream, overwrite, timings);
             });
         });
     }
 
+    //times addFiles as the write phase, & the rest of updateObject as the commit phase
+    ObjectVersionId ingestVersion(ObjectVersionId objectVersionId, VersionInfo versionInfo, IngestTimings timings,
+                                  Collection<TechnicalMetadataInputStream> metadataStreams, Consumer<OcflObjectUpdater> addFiles) {
+        var commit = new IngestTimings.Span[1];
+        var newVersionId = repo.updateObject(objectVersionId, versionInfo, updater -> {
+            var write = timings.start(IngestTimings.Phase.WRITE);
+            addFiles.accept(updater);
+            write.end(getTotalSize(metadataStreams));
+            commit[0] = timings.start(IngestTimings.Phase.COMMIT);
+        });
+        commit[0].end(getTotalSize(metadataStreams));
+        return newVersionId;
+    }
+
+    static long getTotalSize(Collection<TechnicalMetadataInputStream> metadataStreams) {
+        var size = 0L;
+        for (TechnicalMetadataInputStream metadataStream : metadataStreams) {
+            size += metadataStream.getSize();
+        }
+        return size;
+    }
+
+    IngestTimings startIngest(HttpServletResponse response, String objectId) {
+        var timings = new IngestTimings(objectId);
+        if (response instanceof ServerTimingResponse) {
+            ((ServerTimingResponse) response).ingest = timings;
+        }
+        return timings;
+    }
+
+    void finishIngest(HttpServletRequest request, IngestTimings timings) {
+        metrics.recordIngest(timings);
+        if (slowIngestThresholdMillis > 0 && timings.getTotalNanos() >= slowIngestThresholdMillis * 1_000_000) {
+            logger.warning("slow " + request.getMethod() + " for " + timings.objectId + ": " + timings.getSummary());
+        }
+    }
+
+    static long getBytesReceived(HttpServletRequest request) {
+        return Request.getBaseRequest(request).getHttpInput().getContentReceived();
+    }
+
+    void writeFile(OcflObjectUpdater updater, String fileNameNFC, TechnicalMetadataInputStream metadataStream, boolean overwrite,
+                   IngestTimings timings) {
+        if (metadataStream.linkedPath != null) {
+            addLinkedFile(updater, fileNameNFC, metadataStream, overwrite, timings);
+            return;
+        }
+        //ocfl-java checks the fixity itself, & only digests again if the client's algorithm isn't the inventory's
+        if (overwrite) {
+            updater.writeFile(metadataStream.getUploadStream(), fileNameNFC, OVERWRITE);
+        } else {
+            updater.writeFile(metadataStream.getUploadStream(), fileNameNFC);
+        }
+    }
+
+    void addLinkedFile(OcflObjectUpdater updater, String fileNameNFC, TechnicalMetadataInputStream metadataStream, boolean overwrite,
+                       IngestTimings timings) {
+        //ocfl-java's digest of the link is the only read of the content, unless the client's checksum algorithm differs
+        var contentAlgorithm = repo.config().getDefaultDigestAlgorithm();
+        String expectedDigest = null;
+        try {
+            var fixityStream = metadataStream.getFixityStream();
+            if (fixityStream != null) {
+                if (fixityStream.getMessageDigest().getAlgorithm().equalsIgnoreCase(contentAlgorithm.getJavaStandardName())) {
+                    expectedDigest = fixityStream.getExpectedDigestValue();
+                } else {
+                    var verify = timings.start(IngestTimings.Phase.VERIFY);
+                    fixityStream.transferTo(OutputStream.nullOutputStream());
+                    verify.end(metadataStream.getSize());
+                    fixityStream.checkFixity();
+                }
+            }
+            //count the size without reading - the mimetype gets detected from the stored file
+            metadataStream.skip(Files.size(metadataStream.linkedPath) - metadataStream.getSize());
+            metadataStream.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (overwrite) {
+            updater.addPath(metadataStream.linkedPath, fileNameNFC, MOVE_SOURCE, OVERWRITE);
+        } else {
+            updater.addPath(metadataStream.linkedPath, fileNameNFC, MOVE_SOURCE);
+        }
+        if (expectedDigest != null) {
+            //compares against the digest ocfl-java just computed
+            updater.addFileFixity(fileNameNFC, contentAlgorithm, expectedDigest);
+        }
+    }
+
+    static void deleteLinks(Collection<? extends InputStream> inputStreams) {
+        //ocfl-java moves each link into the version, so anything left is from an update that failed or never started
+        for (InputStream inputStream : inputStreams) {
+            if (inputStream instanceof TechnicalMetadataInputStream) {
+                var linkedPath = ((TechnicalMetadataInputStream) inputStream).linkedPath;
+                if (linkedPath != null) {
+                    try {
+                        Files.deleteIfExists(linkedPath);
+                    } catch (IOException e) {
+                        logger.warning("couldn't delete " + linkedPath + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    static void removeMovedSources(Collection<TechnicalMetadataInputStream> metadataStreams) {
+        //only called once the version is committed
+        for (TechnicalMetadataInputStream metadataStream : metadataStreams) {
+            if (metadataStream.movedSource != null) {
+                try {
+                    Files.deleteIfExists(metadataStream.movedSource);
+                } catch (IOException e) {
+                    logger.warning("couldn't remove " + metadataStream.movedSource + " after ingesting it: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    TechnicalMetadataInputStream openLocation(Path location, JsonObject fileInfo) throws IOException {
+        var ingestMode = locationLinker.getIngestMode(location);
+        Path linkedPath = null;
+        if (ingestMode != OcflHttpConfig.IngestMode.COPY) {
+            linkedPath = locationLinker.link(location);
+        }
+        InputStream inputStream = null;
+        try {
+            inputStream = Files.newInputStream((linkedPath != null) ? linkedPath : location);
+            var metadataStream = wrapUploadStream(inputStream, fileInfo);
+            metadataStream.linkedPath = linkedPath;
+            if (ingestMode == OcflHttpConfig.IngestMode.MOVE) {
+                metadataStream.movedSource = location;
+            }
+            return metadataStream;
+        } catch (IOException | RuntimeException e) {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+            if (linkedPath != null) {
+                Files.deleteIfExists(linkedPath);
+            }
+            throw e;
+        }
+    }
+
+    static TechnicalMetadataInputStream getMetadataStream(InputStream inputStream) {
+        if (inputStream instanceof TechnicalMetadataInputStream) {
+            return (TechnicalMetadataInputStream) inputStream;
+        }
+        return new TechnicalMetadataInputStream(inputStream, null);
+    }
+
+    void recordTechnicalMetadata(ObjectVersionId versionId, Map<String, TechnicalMetadataInputStream> metadataStreams) {
+        //the version is already committed, so if this fails we just fall back to reading the content files later
+        try {
+            var version = repo.describeVersion(versionId);
+            var newFiles = new HashMap<String, TechnicalMetadataStore.FileMetadata>();
+            for (Map.Entry<String, TechnicalMetadataInputStream> entry : metadataStreams.entrySet()) {
+                var path = entry.getKey();
+                var metadataStream = entry.getValue();
+                var file = version.getFile(path);
+                if (file == null) {
+                    continue;
+                }
+                var digestKey = MimetypeCache.getDigestKey(file.getFixity());
+                if (digestKey == null) {
+                    continue;
+                }
+                var mimetype = metadataStream.getClientMimetype();
+                if (mimetype == null) {
+                    if (metadataStream.hasWholeContent()) {
+                        mimetype = getContentType(metadataStream.getContent(), path);
+                    } else {
+                        mimetype = mimetypeCache.getContentType(file.getFixity(), path, repoRoot.resolve(file.getStorageRelativePath()));
+                    }
+                }
+                var metadata = newFiles.computeIfAbsent(digestKey, k -> new TechnicalMetadataStore.FileMetadata(metadataStream.getSize(), new HashMap<>()));
+                metadata.mimetypes.put(path, mimetype);
+            }
+            technicalMetadata.record(versionId.getObjectId(), newFiles);
+            //a listing rendered since the version was committed could have detected a different mimetype
+            listings.invalidate(versionId.getObjectId());
+        } catch (Exception e) {
+            logger.warning("couldn't record technical metadata for " + versionId + ": " + e.getMessage());
+        }
+    }
+
+    long getFileSize(String objectId, Map<DigestAlgorithm, String> fixity, Path filePath) throws IOException {
+        var metadata = technicalMetadata.get(objectId, MimetypeCache.getDigestKey(fixity));
+        if (metadata != null) {
+            return metadata.size;
+        }
+        return Files.size(filePath);
+    }
+
+    String getFileMimetype(String objectId, String path, Map<DigestAlgorithm, String> fixity, Path filePath) throws IOException {
+        var metadata = technicalMetadata.get(objectId, MimetypeCache.getDigestKey(fixity));
+        if (metadata != null && metadata.mimetypes.containsKey(path)) {
+            return metadata.mimetypes.get(path);
+        }
+        //only opens the file if we haven't seen this content before
+        return mimetypeCache.getContentType(fixity, path, filePath);
+    }
+
     void setResponseError(HttpServletResponse response, int statusCode, String msg) throws IOException {
         response.setStatus(statusCode);
         response.getOutputStream().write(msg.getBytes(StandardCharsets.UTF_8.toString()));
@@ -137,47 +542,81 @@ public class OcflHttp extends AbstractHandler {
         writer.writeObject(output);
     }
 
-    void handleObjectVersions(HttpServletRequest request, HttpServletResponse response, String objectId) throws IOException {
+    void handleMetrics(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        var method = request.getMethod();
+        if (!method.equals("GET")) {
+            response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        var threadPool = (getServer() == null) ? null : getServer().getThreadPool();
+        var builder = new StringBuilder(32768);
+        metrics.write(builder, threadPool);
+        storage.writeMetrics(builder);
+        writeQueue.write(builder);
+        if (groupCommits != null) {
+            groupCommits.committer.write(builder);
+        }
+        listings.write(builder);
+        var output = builder.toString().getBytes(StandardCharsets.UTF_8);
+        response.setContentType(RequestMetrics.ContentType);
+        response.setContentLength(output.length);
+        response.getOutputStream().write(output);
+    }
+
+    void handleObjectVersions(HttpServletRequest request, HttpServletResponse response, String objectId)
+            throws IOException, ServletException {
         var method = request.getMethod();
         if (method.equals("GET")) {
-            if (repo.containsObject(objectId)) {
-                var versions = repo.describeObject(objectId).getVersionMap();
-                var output = Json.createObjectBuilder();
-                versions.forEach((versionNum, versionDetails) -> {
-                    var versionOutput = Json.createObjectBuilder();
-                    var created = versionDetails.getCreated().withOffsetSameInstant(ZoneOffset.UTC);
-                    var message = versionDetails.getVersionInfo().getMessage();
-                    var user = versionDetails.getVersionInfo().getUser();
-                    String userInfo = "";
-                    if (message == null) {
-                        message = "";
-                    }
-                    if (user != null) {
-                        String userName = user.getName();
-                        if (userName != null) {
-                            userInfo = userName;
-                        }
-                        String userAddress = user.getAddress();
-                        if (userAddress != null) {
-                            userInfo = userInfo + " <" + userAddress + ">";
-                        }
-                    }
-                    versionOutput.add("created", created.format(DateTimeFormatter.ISO_DATE_TIME));
-                    versionOutput.add("user", userInfo);
-                    versionOutput.add("message", message);
-                    output.add(versionNum.toString(), versionOutput.build());
-                });
-                response.setContentType("application/json");
-                var writer = Json.createWriter(response.getWriter());
-                writer.writeObject(output.build());
-            } else {
-                setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
-            }
+            listings.send(request, response, "versions", objectId, -1, listingResponse -> writeObjectVersions(listingResponse, objectId));
         } else {
             setResponseError(response, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "");
         }
     }
 
+    void writeObjectVersions(HttpServletResponse response, String objectId) throws IOException {
+        if (repo.containsObject(objectId)) {
+            var versions = repo.describeObject(objectId).getVersionMap();
+            response.setContentType("application/json");
+            try (var generator = JsonGenerators.createGenerator(response.getOutputStream())) {
+                generator.writeStartObject();
+                for (var entry : versions.entrySet()) {
+                    writeVersion(generator, entry.getKey(), entry.getValue());
+                }
+                generator.writeEnd();
+            }
+        } else {
+            setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
+        }
+    }
+
+    void writeVersion(JsonGenerator generator, VersionNum versionNum, VersionDetails versionDetails) {
+        var created = versionDetails.getCreated().withOffsetSameInstant(ZoneOffset.UTC);
+        var message = versionDetails.getVersionInfo().getMessage();
+        var user = versionDetails.getVersionInfo().getUser();
+        String userInfo = "";
+        if (message == null) {
+            message = "";
+        }
+        if (user != null) {
+            String userName = user.getName();
+            if (userName != null) {
+                userInfo = userName;
+            }
+            String userAddress = user.getAddress();
+            if (userAddress != null) {
+                userInfo = userInfo + " <" + userAddress + ">";
+            }
+        }
+        generator.writeStartObject(versionNum.toString());
+        generator.write("created", created.format(DateTimeFormatter.ISO_DATE_TIME));
+        generator.write("user", userInfo);
+        generator.write("message", message);
+        if (versionDetails.isMutable()) {
+            generator.write("staged", true);
+        }
+        generator.writeEnd();
+    }
+
     HashMap<String, String> parseUrlParams(String queryString) {
         HashMap<String, String> params = new HashMap<>();
         var paramParts = queryString.split("&");
@@ -230,6 +669,7 @@ public class OcflHttp extends AbstractHandler {
                 logger.severe(e.getMessage());
             }
         });
+        deleteLinks(files.values());
     }
 
     HashMap<String, String> getRenameInfo(HttpServletRequest request) throws IOException, ServletException {
@@ -267,42 +707,16 @@ public class OcflHttp extends AbstractHandler {
                 var fileName = entry.getKey();
                 var fileInfo = entry.getValue().asJsonObject();
                 if (fileInfo != null) {
-                    if (fileInfo.containsKey("location")) {
-                        var fileURI = fileInfo.getString("location");
-                        if (fileURI != null && !fileURI.isEmpty()) {
-                            try {
-                                var path = Path.of(new URI(fileURI));
-                                if (uploadDirectoryAllowed(path, allowedUploadDirs)) {
-                                    var inputStream = Files.newInputStream(path);
-                                    files.put(fileName, inputStream);
-                                } else {
-                                    throw new InvalidRequestException("invalid location - upload directory not allowed: " + fileURI);
-                                }
-                            } catch (URISyntaxException e) {
-                                logger.warning("URISyntaxException: " + e.getMessage());
-                                throw new InvalidRequestException("invalid location: " + fileURI);
-                            } catch (IllegalArgumentException e) {
-                                logger.warning("IllegalArgumentException: " + e.getMessage());
-                                throw new InvalidRequestException("invalid location: " + fileURI);
-                            } catch (NoSuchFileException e) {
-                                logger.warning(e.getMessage());
-                                throw new InvalidRequestException("invalid location - no such file: " + fileURI);
-                            }
-                        }
-                    }
-                    if (fileInfo.containsKey("checksum")) {
-                        var checksum = fileInfo.getString("checksum");
-                        if (checksum != null && !checksum.isEmpty()) {
-                            var checksumType = "MD5";
-                            if (fileInfo.containsKey("checksumType")) {
-                                checksumType = fileInfo.getString("checksumType");
-                                if (checksumType == null || checksumType.isEmpty()) {
-                                    checksumType = "MD5";
-                                }
-                            }
-                            var inputStream = files.get(fileName);
-                            files.put(fileName, new FixityCheckInputStream(inputStream, checksumType, checksum));
+                    var path = getUploadLocation(fileInfo);
+                    if (path != null) {
+                        try {
+                            files.put(fileName, openLocation(path, fileInfo));
+                        } catch (NoSuchFileException e) {
+                            logger.warning(e.getMessage());
+                            throw new InvalidRequestException("invalid location - no such file: " + fileInfo.getString("location"));
                         }
+                    } else {
+                        files.put(fileName, wrapUploadStream(files.get(fileName), fileInfo));
                     }
                 }
             }
@@ -313,92 +727,323 @@ public class OcflHttp extends AbstractHandler {
         return files;
     }
 
+    Path getUploadLocation(JsonObject fileInfo) throws InvalidRequestException {
+        if (fileInfo.containsKey("location")) {
+            var fileURI = fileInfo.getString("location");
+            if (fileURI != null && !fileURI.isEmpty()) {
+                try {
+                    var path = Path.of(new URI(fileURI));
+                    if (uploadDirectoryAllowed(path, allowedUploadDirs)) {
+                        return path;
+                    } else {
+                        throw new InvalidRequestException("invalid location - upload directory not allowed: " + fileURI);
+                    }
+                } catch (URISyntaxException e) {
+                    logger.warning("URISyntaxException: " + e.getMessage());
+                    throw new InvalidRequestException("invalid location: " + fileURI);
+                } catch (IllegalArgumentException e) {
+                    logger.warning("IllegalArgumentException: " + e.getMessage());
+                    throw new InvalidRequestException("invalid location: " + fileURI);
+                }
+            }
+        }
+        return null;
+    }
+
+    TechnicalMetadataInputStream wrapUploadStream(InputStream inputStream, JsonObject fileInfo) {
+        String mimetype = null;
+        if (fileInfo.containsKey("mimetype")) {
+            mimetype = fileInfo.getString("mimetype");
+            if (mimetype != null && mimetype.isEmpty()) {
+                mimetype = null;
+            }
+        }
+        var metadataStream = new TechnicalMetadataInputStream(inputStream, mimetype);
+        if (fileInfo.containsKey("checksum")) {
+            var checksum = fileInfo.getString("checksum");
+            if (checksum != null && !checksum.isEmpty()) {
+                var checksumType = "MD5";
+                if (fileInfo.containsKey("checksumType")) {
+                    checksumType = fileInfo.getString("checksumType");
+                    if (checksumType == null || checksumType.isEmpty()) {
+                        checksumType = "MD5";
+                    }
+                }
+                metadataStream.expectFixity(checksumType, checksum);
+            }
+        }
+        return metadataStream;
+    }
+
     void handleObjectFilesPost(HttpServletRequest request,
                                HttpServletResponse response,
                                String objectId)
             throws IOException, ServletException {
         try {
             var versionInfo = getVersionInfo(request);
+            var timings = startIngest(response, objectId);
+            var receive = timings.start(IngestTimings.Phase.RECEIVE);
             var files = getFiles(request);
+            receive.end(getBytesReceived(request));
             try {
+                writeQueue.run(objectId, () -> {
+                    try {
+                        //version 0 is the way to tell ocfl-java you want to write version 1 of a new object
+                        writeFilesToObject(ObjectVersionId.version(objectId, 0), files, versionInfo, false, timings);
+                        response.setStatus(HttpServletResponse.SC_CREATED);
+                    } catch (ObjectOutOfSyncException e) {
+                        setResponseError(response, HttpServletResponse.SC_CONFLICT, "object " + objectId + " already exists. Use PUT to update it.");
+                    } catch (FixityCheckException e) {
+                        setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
+                    }
+                });
+            } finally {
+                closeFilesInputStreams(files);
+                finishIngest(request, timings);
+            }
+        } catch (InvalidRequestException e) {
+            logger.warning(e.getMessage());
+            setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    void handleObjectFilesStreamingUpload(HttpServletRequest request,
+                                          HttpServletResponse response,
+                                          String objectId)
+            throws IOException {
+        var timings = startIngest(response, objectId);
+        handleObjectFilesStreamingUpload(request, response, objectId, timings, timings.start(IngestTimings.Phase.RECEIVE));
+    }
+
+    void handleObjectFilesStreamingUpload(HttpServletRequest request,
+                                          HttpServletResponse response,
+                                          String objectId,
+                                          IngestTimings timings,
+                                          IngestTimings.Span receive)
+            throws IOException {
+        try {
+            var boundary = StreamingMultipartParser.getBoundary(request.getContentType());
+            handleObjectFilesStreamingUpload(request, response, objectId, new StreamingMultipartParser(request.getInputStream(), boundary), timings, receive);
+        } catch (InvalidRequestException e) {
+            logger.warning(e.getMessage());
+            setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    //receive has already been started - for an async upload, it covers spooling the body too
+    void handleObjectFilesStreamingUpload(HttpServletRequest request,
+                                          HttpServletResponse response,
+                                          String objectId,
+                                          MultipartParts parser,
+                                          IngestTimings timings,
+                                          IngestTimings.Span receive)
+            throws IOException {
+        //parts are read from the request as they arrive, so the params (& rename) part has to come before the files
+        var isPost = request.getMethod().equals("POST");
+        try {
+            var versionInfo = getVersionInfo(request);
+            var hasPart = parser.next();
+            if (!isPost && hasPart && "rename".equals(parser.getName())) {
+                var renameJson = Json.createReader(parser.getPartStream()).readObject();
+                receive.end(getBytesReceived(request));
                 try {
+                    renameFile(response, objectId, versionInfo, renameJson.getString("old"), renameJson.getString("new"), timings);
+                } finally {
+                    finishIngest(request, timings);
+                }
+                return;
+            }
+            JsonObject params = JsonValue.EMPTY_JSON_OBJECT;
+            if (hasPart && "params".equals(parser.getName())) {
+                params = Json.createReader(parser.getPartStream()).readObject();
+                hasPart = parser.next();
+            }
+            var locations = new LinkedHashMap<String, Path>();
+            for (Map.Entry<String, JsonValue> entry : params.entrySet()) {
+                var path = getUploadLocation(entry.getValue().asJsonObject());
+                if (path != null) {
+                    if (!Files.exists(path)) {
+                        throw new InvalidRequestException("invalid location - no such file: " + entry.getValue().asJsonObject().getString("location"));
+                    }
+                    locations.put(entry.getKey(), path);
+                }
+            }
+            receive.end(getBytesReceived(request));
+            var fileParams = params;
+            var firstPart = hasPart;
+            writeQueue.run(objectId, () -> {
+                ObjectVersionId objectVersionId;
+                VersionDetails headVersion = null;
+                var updateExisting = false;
+                if (isPost) {
                     //version 0 is the way to tell ocfl-java you want to write version 1 of a new object
-                    writeFilesToObject(ObjectVersionId.version(objectId, 0), files, versionInfo, false);
+                    objectVersionId = ObjectVersionId.version(objectId, 0);
+                } else {
+                    if (!repo.containsObject(objectId)) {
+                        setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " doesn't exist. Use POST to create it.");
+                        return;
+                    }
+                    objectVersionId = ObjectVersionId.head(objectId);
+                    headVersion = repo.describeVersion(objectVersionId);
+                    var queryString = request.getQueryString();
+                    updateExisting = (queryString != null && "true".equals(parseUrlParams(queryString).get("updateExisting")));
+                }
+                var existingVersion = headVersion;
+                var checkExisting = !isPost && !updateExisting;
+                var metadataStreams = new LinkedHashMap<String, TechnicalMetadataInputStream>();
+                try {
+                    var newVersionId = ingestVersion(objectVersionId, versionInfo, timings, metadataStreams.values(), updater -> {
+                        var existingFiles = new ArrayList<String>();
+                        try {
+                            var morePart = firstPart;
+                            while (morePart) {
+                                var fileName = parser.getFileName();
+                                if (fileName != null && !locations.containsKey(fileName)) {
+                                    var fileNameNFC = Normalizer.normalize(fileName, Normalizer.Form.NFC);
+                                    if (checkExisting && existingVersion.containsFile(fileName)) {
+                                        existingFiles.add(fileName);
+                                    } else if (existingFiles.isEmpty()) {
+                                        InputStream inputStream = parser.getPartStream();
+                                        if (fileParams.containsKey(fileName)) {
+                                            inputStream = wrapUploadStream(inputStream, fileParams.getJsonObject(fileName));
+                                        }
+                                        var metadataStream = getMetadataStream(inputStream);
+                                        //a spooled part is moved into the version, like a linked location file
+                                        metadataStream.linkedPath = parser.getPartFile();
+                                        metadataStreams.put(fileNameNFC, metadataStream);
+                                        writeFile(updater, fileNameNFC, metadataStream, !isPost, timings);
+                                    }
+                                }
+                                morePart = parser.next();
+                            }
+                            for (Map.Entry<String, Path> location : locations.entrySet()) {
+                                var fileName = location.getKey();
+                                if (checkExisting && existingVersion.containsFile(fileName)) {
+                                    existingFiles.add(fileName);
+                                } else if (existingFiles.isEmpty()) {
+                                    try (var metadataStream = openLocation(location.getValue(), fileParams.getJsonObject(fileName))) {
+                                        var fileNameNFC = Normalizer.normalize(fileName, Normalizer.Form.NFC);
+                                        metadataStreams.put(fileNameNFC, metadataStream);
+                                        writeFile(updater, fileNameNFC, metadataStream, !isPost, timings);
+                                    }
+                                }
+                            }
+                        } catch (InvalidRequestException e) {
+                            throw new UploadRejectedException(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        if (!existingFiles.isEmpty()) {
+                            var msg = "files " + existingFiles + " already exist. Add updateExisting=true parameter to the URL to update them.";
+                            throw new UploadRejectedException(HttpServletResponse.SC_CONFLICT, msg);
+                        }
+                    });
+                    var metadata = timings.start(IngestTimings.Phase.METADATA);
+                    removeMovedSources(metadataStreams.values());
+                    recordTechnicalMetadata(newVersionId, metadataStreams);
+                    metadata.end(0);
                     response.setStatus(HttpServletResponse.SC_CREATED);
                 } catch (ObjectOutOfSyncException e) {
                     setResponseError(response, HttpServletResponse.SC_CONFLICT, "object " + objectId + " already exists. Use PUT to update it.");
                 } catch (FixityCheckException e) {
                     setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
+                } catch (UploadRejectedException e) {
+                    if (e.statusCode == HttpServletResponse.SC_BAD_REQUEST) {
+                        logger.warning(e.getMessage());
+                    }
+                    setResponseError(response, e.statusCode, e.getMessage());
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    deleteLinks(metadataStreams.values());
+                    finishIngest(request, timings);
                 }
-            } finally {
-                closeFilesInputStreams(files);
-            }
+            });
         } catch (InvalidRequestException e) {
             logger.warning(e.getMessage());
             setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
         }
     }
 
+    void renameFile(HttpServletResponse response, String objectId, VersionInfo versionInfo, String oldPath, String newPath,
+                    IngestTimings timings)
+            throws IOException {
+        writeQueue.run(objectId, () -> {
+            if (repo.containsObject(objectId)) {
+                var headVersion = repo.describeVersion(ObjectVersionId.head(objectId));
+                if (headVersion.containsFile(oldPath)) {
+                    var commit = timings.start(IngestTimings.Phase.COMMIT);
+                    try {
+                        repo.updateObject(ObjectVersionId.head(objectId), versionInfo, updater -> {
+                            updater.renameFile(oldPath, newPath);
+                        });
+                        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+                    } catch (OverwriteException e) {
+                        setResponseError(response, HttpServletResponse.SC_CONFLICT, newPath + " already exists");
+                    } finally {
+                        commit.end(0);
+                    }
+                } else {
+                    setResponseError(response, HttpServletResponse.SC_NOT_FOUND, oldPath + " doesn't exist");
+                }
+            } else {
+                setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " doesn't exist");
+            }
+        });
+    }
+
     void handleObjectFilesPut(HttpServletRequest request,
                               HttpServletResponse response,
                               String objectId)
             throws IOException, ServletException {
         try {
             var versionInfo = getVersionInfo(request);
+            var timings = startIngest(response, objectId);
+            var receive = timings.start(IngestTimings.Phase.RECEIVE);
             var renameInfo = getRenameInfo(request);
-            if (renameInfo != null) {
-                var oldPath = renameInfo.get("old");
-                var newPath = renameInfo.get("new");
-                if (repo.containsObject(objectId)) {
-                    var object = repo.getObject(ObjectVersionId.head(objectId));
-                    if (object.containsFile(oldPath)) {
-                        try {
-                            repo.updateObject(ObjectVersionId.head(objectId), versionInfo, updater -> {
-                                updater.renameFile(oldPath, newPath);
-                            });
-                            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
-                        } catch (OverwriteException e) {
-                            setResponseError(response, HttpServletResponse.SC_CONFLICT, newPath + " already exists");
-                        }
-                    } else {
-                        setResponseError(response, HttpServletResponse.SC_NOT_FOUND, oldPath + " doesn't exist");
-                    }
-                } else {
-                    setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " doesn't exist");
-                }
-                return;
-            }
-            var files = getFiles(request);
+            var files = (renameInfo == null) ? getFiles(request) : new HashMap<String, InputStream>();
+            receive.end(getBytesReceived(request));
             try {
-                if (repo.containsObject(objectId)) {
-                    var object = repo.getObject(ObjectVersionId.head(objectId));
-                    //check that all files exist
-                    var existingFiles = new ArrayList<String>();
-                    files.forEach((fileName, inputStream) -> {
-                        if (object.containsFile(fileName)) {
-                            existingFiles.add(fileName);
+                if (renameInfo != null) {
+                    renameFile(response, objectId, versionInfo, renameInfo.get("old"), renameInfo.get("new"), timings);
+                    return;
+                }
+                if (groupCommits != null && GroupCommitHandler.canGroupCommit(files, versionInfo)) {
+                    groupCommits.put(request, response, objectId, files, versionInfo, timings);
+                    return;
+                }
+                writeQueue.run(objectId, () -> {
+                    if (repo.containsObject(objectId)) {
+                        var headVersion = repo.describeVersion(ObjectVersionId.head(objectId));
+                        //check that all files exist
+                        var existingFiles = new ArrayList<String>();
+                        files.forEach((fileName, inputStream) -> {
+                            if (headVersion.containsFile(fileName)) {
+                                existingFiles.add(fileName);
+                            }
+                        });
+                        if (!existingFiles.isEmpty()) {
+                            var updateExisting = request.getParameter("updateExisting");
+                            if (updateExisting == null || !updateExisting.equals("true")) {
+                                var msg = "files " + existingFiles + " already exist. Add updateExisting=true parameter to the URL to update them.";
+                                setResponseError(response, HttpServletResponse.SC_CONFLICT, msg);
+                                return;
+                            }
                         }
-                    });
-                    if (!existingFiles.isEmpty()) {
-                        var updateExisting = request.getParameter("updateExisting");
-                        if (updateExisting == null || !updateExisting.equals("true")) {
-                            var msg = "files " + existingFiles + " already exist. Add updateExisting=true parameter to the URL to update them.";
-                            setResponseError(response, HttpServletResponse.SC_CONFLICT, msg);
-                            return;
+                        try {
+                            writeFilesToObject(ObjectVersionId.head(objectId), files, versionInfo, true, timings);
+                            response.setStatus(HttpServletResponse.SC_CREATED);
+                        } catch (FixityCheckException e) {
+                            setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
                         }
+                    } else {
+                        var msg = objectId + " doesn't exist. Use POST to create it.";
+                        setResponseError(response, HttpServletResponse.SC_NOT_FOUND, msg);
                     }
-                    try {
-                        writeFilesToObject(ObjectVersionId.head(objectId), files, versionInfo, true);
-                        response.setStatus(HttpServletResponse.SC_CREATED);
-                    } catch (FixityCheckException e) {
-                        setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
-                    }
-                } else {
-                    var msg = objectId + " doesn't exist. Use POST to create it.";
-                    setResponseError(response, HttpServletResponse.SC_NOT_FOUND, msg);
-                }
+                });
             } finally {
                 closeFilesInputStreams(files);
+                finishIngest(request, timings);
             }
         } catch (InvalidRequestException e) {
             logger.warning(e.getMessage());
@@ -407,37 +1052,78 @@ public class OcflHttp extends AbstractHandler {
     }
 
     OffsetDateTime getFileLastModifiedUTC(String objectId, String path) {
-        var fileChangeHistory = repo.fileChangeHistory(objectId, path);
-        //make sure lastModified is converted to UTC
-        return fileChangeHistory.getMostRecent().getTimestamp().withOffsetSameInstant(ZoneOffset.UTC);
+        //the history index has lastModified already converted to UTC
+        return objectCache.fileHistoryIndex(objectId).get(path).lastModified;
+    }
+
+    void sendFileContent(HttpServletRequest request, HttpServletResponse response, Path filePath, long start, long end) throws IOException {
+        //a range that fits in the response buffer never waits on the client, so it's not worth going async
+        if (asyncDownloads && end + 1 - start > response.getBufferSize()) {
+            sendFileContentAsync(request, response, filePath, start, end);
+            return;
+        }
+        //end value is included in the range
+        try (var channel = new FileRangeChannel(FileChannel.open(filePath, StandardOpenOption.READ), start, end)) {
+            var outputStream = response.getOutputStream();
+            if (outputStream instanceof HttpOutput) {
+                //let jetty read the file channel into its own pooled buffers
+                ((HttpOutput) outputStream).sendContent(channel);
+            } else {
+                try (outputStream) {
+                    Channels.newInputStream(channel).transferTo(outputStream);
+                }
+            }
+        }
+    }
+
+    static AsyncContext startAsync(HttpServletRequest request) {
+        //with VIRTUAL_THREADS, the request is already async
+        var asyncContext = request.isAsyncStarted() ? request.getAsyncContext() : request.startAsync();
+        //no timeout - a slow client can take as long as it needs (jetty's idle timeout still applies)
+        asyncContext.setTimeout(0);
+        return asyncContext;
+    }
+
+    void sendFileContentAsync(HttpServletRequest request, HttpServletResponse response, Path filePath, long start, long end) throws IOException {
+        var channel = new FileRangeChannel(FileChannel.open(filePath, StandardOpenOption.READ), start, end);
+        try {
+            var outputStream = response.getOutputStream();
+            var writer = new AsyncContentWriter(startAsync(request), outputStream, channel);
+            //set before the listener, since jetty can call it (& finish the write) right away on another thread
+            request.setAttribute(AsyncResponseAttribute, writer.finished);
+            metrics.asyncDownloadStarted();
+            writer.finished.thenRun(metrics::asyncDownloadFinished);
+            outputStream.setWriteListener(writer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
     }
 
     void handleObjectPathGetHead(HttpServletRequest request,
                                  HttpServletResponse response,
                                  String objectId,
-                                 OcflObjectVersion object,
+                                 VersionDetails version,
                                  String path)
             throws IOException {
-        handleObjectPathGetHead(request, response, objectId, object, path, -1);
+        handleObjectPathGetHead(request, response, objectId, version, path, -1);
     }
 
     void handleObjectPathGetHead(HttpServletRequest request,
                                  HttpServletResponse response,
                                  String objectId,
-                                 OcflObjectVersion object,
+                                 VersionDetails version,
                                  String path,
                                  int versionNum)
             throws IOException {
-        if (object.containsFile(path)) {
+        if (version.containsFile(path)) {
             response.setStatus(HttpServletResponse.SC_OK);
             response.addHeader("Accept-Ranges", "bytes");
-            var file = object.getFile(path);
-            try (var stream = file.getStream().enableFixityCheck(false)) {
-                var contentType = OcflHttp.getContentType(stream, path);
-                response.addHeader("Content-Type", contentType);
-            }
+            var file = version.getFile(path);
             var filePath = repoRoot.resolve(file.getStorageRelativePath());
-            var fileSize = Files.size(filePath);
+            var contentType = getFileMimetype(objectId, path, file.getFixity(), filePath);
+            response.addHeader("Content-Type", contentType);
+            var fileSize = getFileSize(objectId, file.getFixity(), filePath);
             if (request.getMethod().equals("GET")) {
                 var fileLastModifiedUTC = getFileLastModifiedUTC(objectId, path);
                 var digestAlgorithm = repo.describeObject(objectId).getDigestAlgorithm();
@@ -468,6 +1154,7 @@ public class OcflHttp extends AbstractHandler {
                         response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
                         var contentRange = "bytes " + start + "-" + end + "/" + fileSize;
                         response.addHeader("Content-Range", contentRange);
+                        response.addHeader("Content-Length", String.valueOf(end + 1 - start));
                     } else {
                         response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
                         var contentRange = "bytes */" + fileSize;
@@ -481,26 +1168,7 @@ public class OcflHttp extends AbstractHandler {
                     response.addHeader("Content-Disposition", "attachment; filename*=UTF-8''" + URLEncoder.encode(path, StandardCharsets.UTF_8));
                     response.addHeader("Content-Length", String.valueOf(fileSize));
                 }
-                try (var stream = file.getStream().enableFixityCheck(false)) {
-                    try (var outputStream = response.getOutputStream()) {
-                        byte[] bytesRead;
-                        stream.skip(start);
-                        var currentPosition = start;
-                        while (true) {
-                            if (currentPosition + ChunkSize > end) {
-                                bytesRead = stream.readNBytes((int) (end + 1 - currentPosition)); //safe - this is less than ChunkSize
-                            } else {
-                                bytesRead = stream.readNBytes((int) ChunkSize); //safe - ChunkSize isn't huge
-                            }
-                            if (bytesRead.length > 0) {
-                                outputStream.write(bytesRead);
-                                currentPosition += bytesRead.length;
-                            } else {
-                                break;
-                            }
-                        }
-                    }
-                }
+                sendFileContent(request, response, filePath, start, end);
             } else {
                 response.addHeader("Content-Length", String.valueOf(fileSize));
             }
@@ -512,16 +1180,9 @@ public class OcflHttp extends AbstractHandler {
                 return;
             }
             //check for deleted file
-            var allObjectVersions = repo.describeObject(objectId).getVersionMap().values();
-            for (VersionDetails v : allObjectVersions) {
-                if (versionNum == -1) {
-                    for (FileDetails f : v.getFiles()) {
-                        if (f.getPath().equals(path)) {
-                            setResponseError(response, HttpServletResponse.SC_GONE, "file " + path + " deleted");
-                            return;
-                        }
-                    }
-                }
+            if (versionNum == -1 && objectCache.fileHistoryIndex(objectId).everContained(path)) {
+                setResponseError(response, HttpServletResponse.SC_GONE, "file " + path + " deleted");
+                return;
             }
             var msg = objectId + "/" + path + " not found";
             setResponseError(response, HttpServletResponse.SC_NOT_FOUND, msg);
@@ -536,8 +1197,8 @@ public class OcflHttp extends AbstractHandler {
         var method = request.getMethod();
         if (method.equals("GET") || method.equals("HEAD")) {
             try {
-                var object = repo.getObject(ObjectVersionId.head(objectId));
-                handleObjectPathGetHead(request, response, objectId, object, path);
+                var headVersion = repo.describeVersion(ObjectVersionId.head(objectId));
+                handleObjectPathGetHead(request, response, objectId, headVersion, path);
             } catch (NotFoundException e) {
                 var msg = objectId + " not found";
                 setResponseError(response, HttpServletResponse.SC_NOT_FOUND, msg);
@@ -557,8 +1218,8 @@ public class OcflHttp extends AbstractHandler {
         if (method.equals("GET") || method.equals("HEAD")) {
             if (repo.containsObject(objectId)) {
                 try {
-                    var object = repo.getObject(ObjectVersionId.version(objectId, versionNum));
-                    handleObjectPathGetHead(request, response, objectId, object, path, versionNum);
+                    var version = repo.describeVersion(ObjectVersionId.version(objectId, versionNum));
+                    handleObjectPathGetHead(request, response, objectId, version, path, versionNum);
                 } catch (NotFoundException e) {
                     var msg = "version v" + versionNum + " not found";
                     setResponseError(response, HttpServletResponse.SC_NOT_FOUND, msg);
@@ -579,40 +1240,199 @@ public class OcflHttp extends AbstractHandler {
             throws IOException {
         var method = request.getMethod();
         if (method.equals("DELETE")) {
-            if (repo.containsObject(objectId)) {
-                try {
-                    var versionInfo = getVersionInfo(request);
-                    var object = repo.getObject(ObjectVersionId.head(objectId));
-                    if (object.containsFile(path)) {
-                        repo.updateObject(ObjectVersionId.head(objectId), versionInfo, updater -> {
-                            updater.removeFile(path);
-                        });
-                        response.setStatus(204);
-                    } else {
-                        //see if the file was ever in the object
-                        var allObjectVersions = repo.describeObject(objectId).getVersionMap().values();
-                        for (VersionDetails v : allObjectVersions) {
-                            for (FileDetails f : v.getFiles()) {
-                                if (f.getPath().equals(path)) {
-                                    response.setStatus(204);
-                                    return;
-                                }
+            writeQueue.run(objectId, () -> {
+                if (repo.containsObject(objectId)) {
+                    try {
+                        var versionInfo = getVersionInfo(request);
+                        var headVersion = repo.describeVersion(ObjectVersionId.head(objectId));
+                        if (headVersion.containsFile(path)) {
+                            repo.updateObject(ObjectVersionId.head(objectId), versionInfo, updater -> {
+                                updater.removeFile(path);
+                            });
+                            response.setStatus(204);
+                        } else {
+                            //see if the file was ever in the object
+                            if (objectCache.fileHistoryIndex(objectId).everContained(path)) {
+                                response.setStatus(204);
+                                return;
                             }
+                            //file never existed, so return 404
+                            setResponseError(response, HttpServletResponse.SC_NOT_FOUND, path + " not found");
                         }
-                        //file never existed, so return 404
-                        setResponseError(response, HttpServletResponse.SC_NOT_FOUND, path + " not found");
+                    } catch (InvalidRequestException e) {
+                        setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.toString());
                     }
-                } catch (InvalidRequestException e) {
-                    setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.toString());
+                } else {
+                    setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
                 }
-            } else {
-                setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
-            }
+            });
         } else {
             setResponseError(response, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "");
         }
     }
 
+    static class FilesListing {
+        String objectId;
+        String version;
+        Collection<String> fields;
+        Collection<FileDetails> activeFiles;
+        //deleted files, or every file for a page that includes deleted files
+        Collection<FileHistoryIndex.FileHistory> fileHistories;
+        boolean includeObjectTimestamps;
+        String nextCursor;
+        //the version is the mutable HEAD - changes that haven't been committed yet
+        boolean staged;
+    }
+
+    static String encodeCursor(String path) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decodeCursor(String cursor) throws InvalidRequestException {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("invalid cursor");
+        }
+    }
+
+    static <T> List<T> getPage(List<T> sortedFiles, Function<T, String> getPath, String afterPath, int limit) {
+        //binary search for the first path after the cursor, so a page doesn't cost more for bigger objects
+        var start = 0;
+        if (afterPath != null) {
+            var low = 0;
+            var high = sortedFiles.size();
+            while (low < high) {
+                var middle = (low + high) >>> 1;
+                if (getPath.apply(sortedFiles.get(middle)).compareTo(afterPath) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            start = low;
+        }
+        var end = sortedFiles.size();
+        if (limit > 0) {
+            end = (int) Math.min((long) start + limit, sortedFiles.size());
+        }
+        return sortedFiles.subList(start, end);
+    }
+
+    void writeFileInfo(JsonGenerator generator,
+                       FilesListing listing,
+                       String path,
+                       String state,
+                       String storageRelativePath,
+                       Map<DigestAlgorithm, String> fixity)
+            throws IOException {
+        for (String field : listing.fields) {
+            switch (field) {
+                case "state":
+                    generator.write("state", state);
+                    break;
+                case "size":
+                    var fileSize = getFileSize(listing.objectId, fixity, repoRoot.resolve(storageRelativePath));
+                    generator.write("size", fileSize);
+                    break;
+                case "mimetype":
+                    var mimetype = getFileMimetype(listing.objectId, path, fixity, repoRoot.resolve(storageRelativePath));
+                    generator.write("mimetype", mimetype);
+                    break;
+                case "checksum":
+                    generator.write("checksum", fixity.get(DigestAlgorithm.sha512));
+                    generator.write("checksumType", "SHA-512");
+                    break;
+                case "lastModified":
+                    var lastModifiedUTC = getFileLastModifiedUTC(listing.objectId, path);
+                    generator.write("lastModified", lastModifiedUTC.format(DateTimeFormatter.ISO_DATE_TIME));
+                    break;
+            }
+        }
+    }
+
+    void writeObjectTimestamps(JsonGenerator generator, String objectId) {
+        generator.writeStartObject("object");
+        generator.write("created", repo.describeVersion(ObjectVersionId.version(objectId, VersionNum.V1)).getCreated().withOffsetSameInstant(ZoneOffset.UTC).format(DateTimeFormatter.ISO_DATE_TIME));
+        generator.write("lastModified", repo.describeVersion(ObjectVersionId.head(objectId)).getCreated().withOffsetSameInstant(ZoneOffset.UTC).format(DateTimeFormatter.ISO_DATE_TIME));
+        generator.writeEnd();
+    }
+
+    void writeFilesListingJson(OutputStream outputStream, FilesListing listing) throws IOException {
+        //each file is written out as we get to it, instead of building the whole listing in memory first
+        try (var generator = JsonGenerators.createGenerator(outputStream)) {
+            generator.writeStartObject();
+            generator.write("version", listing.version);
+            if (listing.staged) {
+                generator.write("staged", true);
+            }
+            if (listing.nextCursor != null) {
+                generator.write("nextCursor", listing.nextCursor);
+            }
+            generator.writeStartObject("files");
+            for (FileDetails f : listing.activeFiles) {
+                generator.writeStartObject(f.getPath());
+                writeFileInfo(generator, listing, f.getPath(), "A", f.getStorageRelativePath(), f.getFixity());
+                generator.writeEnd();
+            }
+            for (FileHistoryIndex.FileHistory h : listing.fileHistories) {
+                generator.writeStartObject(h.path);
+                writeFileInfo(generator, listing, h.path, h.getState(), h.storageRelativePath, h.fixity);
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+            if (listing.includeObjectTimestamps) {
+                writeObjectTimestamps(generator, listing.objectId);
+            }
+            generator.writeEnd();
+        }
+    }
+
+    void writeFilesListingNdjson(OutputStream outputStream, FilesListing listing) throws IOException {
+        //first line has the version (& object timestamps), then there's one line for each file
+        try (var writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            var lineWriter = new FilterWriter(writer) {
+                @Override
+                public void close() {
+                    //each line's generator closes this writer, but the response isn't done yet
+                }
+            };
+            try (var generator = JsonGenerators.createGenerator(lineWriter)) {
+                generator.writeStartObject();
+                generator.write("version", listing.version);
+                if (listing.staged) {
+                    generator.write("staged", true);
+                }
+                if (listing.nextCursor != null) {
+                    generator.write("nextCursor", listing.nextCursor);
+                }
+                if (listing.includeObjectTimestamps) {
+                    writeObjectTimestamps(generator, listing.objectId);
+                }
+                generator.writeEnd();
+            }
+            writer.write('\n');
+            for (FileDetails f : listing.activeFiles) {
+                try (var generator = JsonGenerators.createGenerator(lineWriter)) {
+                    generator.writeStartObject();
+                    generator.write("path", f.getPath());
+                    writeFileInfo(generator, listing, f.getPath(), "A", f.getStorageRelativePath(), f.getFixity());
+                    generator.writeEnd();
+                }
+                writer.write('\n');
+            }
+            for (FileHistoryIndex.FileHistory h : listing.fileHistories) {
+                try (var generator = JsonGenerators.createGenerator(lineWriter)) {
+                    generator.writeStartObject();
+                    generator.write("path", h.path);
+                    writeFileInfo(generator, listing, h.path, h.getState(), h.storageRelativePath, h.fixity);
+                    generator.writeEnd();
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
     void handleObjectFiles(HttpServletRequest request,
                            HttpServletResponse response,
                            String objeectId)
@@ -627,259 +1447,275 @@ public class OcflHttp extends AbstractHandler {
             throws IOException, ServletException {
         var method = request.getMethod();
         if (method.equals("GET")) {
-            if (repo.containsObject(objectId)) {
-                var fieldsParam = request.getParameter(FieldsParameter);
-                if (fieldsParam == null) {
-                    fieldsParam = "";
-                }
-                var fields = fieldsParam.split(",");
-                var filesInfoMap = new HashMap<String, JsonObject>();
-                //add all active files
-                Collection<FileDetails> activeFiles = null;
-                if (versionNum == -1) {
-                    activeFiles = repo.describeVersion(ObjectVersionId.head(objectId)).getFiles();
-                } else {
-                    try {
-                        activeFiles = repo.describeVersion(ObjectVersionId.version(objectId, versionNum)).getFiles();
-                    } catch (NotFoundException e) {
-                        setResponseError(response, HttpServletResponse.SC_NOT_FOUND, "");
-                        return;
-                    }
-                }
-                if (activeFiles.isEmpty()) {
-                    setResponseError(response, HttpServletResponse.SC_GONE, "object " + objectId + " deleted");
-                    return;
-                }
-                for (FileDetails f : activeFiles) {
-                    var info = Json.createObjectBuilder();
-                    for (String field : fields) {
-                        switch (field) {
-                            case "state":
-                                info.add("state", "A");
-                                break;
-                            case "size":
-                                var filePath = repoRoot.resolve(f.getStorageRelativePath());
-                                var fileSize = Files.size(filePath);
-                                info.add("size", fileSize);
-                                break;
-                            case "mimetype":
-                                try (InputStream is = repo.getObject(ObjectVersionId.head(objectId)).getFile(f.getPath()).getStream()) {
-                                    var mimetype = getContentType(is, f.getPath());
-                                    info.add("mimetype", mimetype);
-                                }
-                                break;
-                            case "checksum":
-                                info.add("checksum", f.getFixity().get(DigestAlgorithm.sha512));
-                                info.add("checksumType", "SHA-512");
-                                break;
-                            case "lastModified":
-                                var lastModifiedUTC = getFileLastModifiedUTC(objectId, f.getPath());
-                                info.add("lastModified", lastModifiedUTC.format(DateTimeFormatter.ISO_DATE_TIME));
-                                break;
-                        }
-                    }
-                    filesInfoMap.put(f.getPath(), info.build());
-                }
-                if (versionNum == -1) {
-                    //now fill in deleted files if needed
-                    var includeDeletedParam = request.getParameter(IncludeDeletedParameter);
-                    if (includeDeletedParam != null && includeDeletedParam.equals("true")) {
-                        var allObjectVersions = repo.describeObject(objectId).getVersionMap().values();
-                        for (VersionDetails v : allObjectVersions) {
-                            //for each version, add information for any file we don't have info for
-                            // When we're adding the file, we look at the whole file change history as needed, so
-                            // we don't have to worry about the order of the versions in allObjectVersions.
-                            for (FileDetails f : v.getFiles()) {
-                                if (!filesInfoMap.containsKey(f.getPath())) {
-                                    var info = Json.createObjectBuilder();
-                                    for (String field : fields) {
-                                        switch (field) {
-                                            case "state":
-                                                info.add("state", "D"); //at this stage we're only adding deleted files
-                                                break;
-                                            case "size":
-                                                var fileChanges = repo.fileChangeHistory(objectId, f.getPath());
-                                                var it = fileChanges.getReverseChangeIterator();
-                                                while (it.hasNext()) {
-                                                    var change = it.next();
-                                                    if (!change.getChangeType().equals(FileChangeType.REMOVE)) {
-                                                        var filePath = repoRoot.resolve(change.getStorageRelativePath());
-                                                        var fileSize = Files.size(filePath);
-                                                        info.add("size", fileSize);
-                                                        break;
-                                                    }
-                                                }
-                                                break;
-                                            case "mimetype":
-                                                try (InputStream is = Files.newInputStream(repoRoot.resolve(f.getStorageRelativePath()))) {
-                                                    var mimetype = getContentType(is, f.getPath());
-                                                    info.add("mimetype", mimetype);
-                                                }
-                                                break;
-                                            case "checksum":
-                                                fileChanges = repo.fileChangeHistory(objectId, f.getPath());
-                                                it = fileChanges.getReverseChangeIterator();
-                                                while (it.hasNext()) {
-                                                    var change = it.next();
-                                                    if (!change.getChangeType().equals(FileChangeType.REMOVE)) {
-                                                        info.add("checksum", change.getFixity().get(DigestAlgorithm.sha512));
-                                                        info.add("checksumType", "SHA-512");
-                                                        break;
-                                                    }
-                                                }
-                                                break;
-                                            case "lastModified":
-                                                var lastModifiedUTC = getFileLastModifiedUTC(objectId, f.getPath());
-                                                info.add("lastModified", lastModifiedUTC.format(DateTimeFormatter.ISO_DATE_TIME));
-                                                break;
-                                        }
-                                    }
-                                    filesInfoMap.put(f.getPath(), info.build());
-                                }
-                            }
-                        }
-                    }
-                }
-                var filesOutput = Json.createObjectBuilder();
-                filesInfoMap.forEach((fileName, jsonInfo) -> {
-                    filesOutput.add(fileName, jsonInfo);
-                });
-                var outputBuilder = Json.createObjectBuilder();
-                if (versionNum == -1) {
-                    outputBuilder.add("version", repo.describeObject(objectId).getHeadVersionNum().toString());
-                } else {
-                    outputBuilder.add("version", "v" + versionNum);
-                }
-                outputBuilder.add("files", filesOutput);
-                var objectTimestampsParam = request.getParameter(ObjectTimestampsParameter);
-                if (objectTimestampsParam != null && objectTimestampsParam.equals("true")) {
-                    var objectOutput = Json.createObjectBuilder();
-                    objectOutput.add("created", repo.getObject(ObjectVersionId.version(objectId, VersionNum.V1)).getCreated().withOffsetSameInstant(ZoneOffset.UTC).format(DateTimeFormatter.ISO_DATE_TIME));
-                    objectOutput.add("lastModified", repo.getObject(ObjectVersionId.head(objectId)).getCreated().withOffsetSameInstant(ZoneOffset.UTC).format(DateTimeFormatter.ISO_DATE_TIME));
-                    outputBuilder.add("object", objectOutput);
-                }
-                var output = outputBuilder.build();
-                response.setStatus(HttpServletResponse.SC_OK);
-                response.setContentType("application/json");
-                var writer = Json.createWriter(response.getWriter());
-                writer.writeObject(output);
-            } else {
-                setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
-            }
+            listings.send(request, response, "files", objectId, versionNum, listingResponse -> writeObjectFiles(request, listingResponse, objectId, versionNum));
         } else {
             if (method.equals("DELETE")) {
                 try {
-                    if (repo.containsObject(objectId)) {
-                        var versionInfo = getVersionInfo(request);
-                        repo.updateObject(ObjectVersionId.head(objectId), versionInfo, updater -> {
-                            repo.getObject(ObjectVersionId.head(objectId)).getFiles().forEach((fileDetails) -> {
-                                updater.removeFile(fileDetails.getPath());
+                    var versionInfo = getVersionInfo(request);
+                    writeQueue.run(objectId, () -> {
+                        if (repo.containsObject(objectId)) {
+                            repo.updateObject(ObjectVersionId.head(objectId), versionInfo, updater -> {
+                                repo.describeVersion(ObjectVersionId.head(objectId)).getFiles().forEach((fileDetails) -> {
+                                    updater.removeFile(fileDetails.getPath());
+                                });
                             });
-                        });
-                        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
-                    } else {
-                        setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
-                    }
+                            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+                        } else {
+                            setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
+                        }
+                    });
                 }  catch (InvalidRequestException e) {
                     setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.toString());
                 }
+            } else if (asyncUploads && isMultipart(request)) {
+                startAsyncUpload(request, response, objectId);
             } else {
+                //the whole upload holds this thread, including waiting on the client
+                metrics.uploadStarted();
+                metrics.uploadThreadStarted();
                 try {
-                    if (method.equals("POST")) {
+                    if (streamingUploads && isMultipart(request)) {
+                        handleObjectFilesStreamingUpload(request, response, objectId);
+                    } else if (method.equals("POST")) {
                         handleObjectFilesPost(request, response, objectId);
                     } else {
                         if (method.equals("PUT")) {
                             handleObjectFilesPut(request, response, objectId);
                         }
                     }
-                } catch (IllegalStateException e) {
-                    var exceptionMsg = e.toString();
-                    if (exceptionMsg.contains("Illegal character")) {
-                        logger.warning(exceptionMsg);
-                        setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, "invalid character in filename");
-                    } else {
-                        throw e;
+                } catch (IllegalStateException | OcflJavaException e) {
+                    handleUploadException(response, e);
+                } finally {
+                    metrics.uploadThreadFinished();
+                    metrics.uploadFinished();
+                }
+            }
+        }
+    }
+
+    void writeObjectFiles(HttpServletRequest request,
+                          HttpServletResponse response,
+                          String objectId,
+                          int versionNum)
+            throws IOException {
+        if (repo.containsObject(objectId)) {
+            var fieldsParam = request.getParameter(FieldsParameter);
+            if (fieldsParam == null) {
+                fieldsParam = "";
+            }
+            var fields = new LinkedHashSet<>(Arrays.asList(fieldsParam.split(",")));
+            VersionDetails version = null;
+            if (versionNum == -1) {
+                version = repo.describeVersion(ObjectVersionId.head(objectId));
+            } else {
+                try {
+                    version = repo.describeVersion(ObjectVersionId.version(objectId, versionNum));
+                } catch (NotFoundException e) {
+                    setResponseError(response, HttpServletResponse.SC_NOT_FOUND, "");
+                    return;
+                }
+            }
+            var activeFiles = version.getFiles();
+            if (activeFiles.isEmpty()) {
+                setResponseError(response, HttpServletResponse.SC_GONE, "object " + objectId + " deleted");
+                return;
+            }
+            var includeDeleted = false;
+            if (versionNum == -1) {
+                var includeDeletedParam = request.getParameter(IncludeDeletedParameter);
+                includeDeleted = (includeDeletedParam != null && includeDeletedParam.equals("true"));
+            }
+            var listing = new FilesListing();
+            listing.objectId = objectId;
+            if (versionNum == -1) {
+                listing.version = version.getVersionNum().toString();
+            } else {
+                listing.version = "v" + versionNum;
+            }
+            listing.fields = fields;
+            listing.staged = version.isMutable();
+            var limitParam = request.getParameter(LimitParameter);
+            var cursorParam = request.getParameter(CursorParameter);
+            if (limitParam == null && cursorParam == null) {
+                listing.activeFiles = activeFiles;
+                listing.fileHistories = List.of();
+                if (includeDeleted) {
+                    listing.fileHistories = objectCache.fileHistoryIndex(objectId).getDeletedFiles();
+                }
+            } else {
+                //pages are sorted by path, & the cursor is the last path of the previous page
+                var limit = 0;
+                String afterPath = null;
+                try {
+                    if (limitParam != null) {
+                        limit = Integer.parseInt(limitParam);
+                        if (limit < 1) {
+                            throw new InvalidRequestException("invalid limit");
+                        }
                     }
-                } catch (OcflJavaException e) {
-                    var exceptionMsg = e.toString();
-                    if (exceptionMsg.contains("MessageDigest not available")) {
-                        setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, exceptionMsg.split(": ")[1]);
-                    } else {
-                        throw e;
+                    if (cursorParam != null) {
+                        afterPath = decodeCursor(cursorParam);
+                    }
+                } catch (NumberFormatException e) {
+                    setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, "invalid limit");
+                    return;
+                } catch (InvalidRequestException e) {
+                    setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                    return;
+                }
+                String lastPath = null;
+                var hasMore = false;
+                var cachedObject = objectCache.getCachedObject(objectId);
+                if (includeDeleted) {
+                    var sortedFiles = cachedObject.getFileHistoryIndex().getSortedFiles();
+                    var page = getPage(sortedFiles, h -> h.path, afterPath, limit);
+                    listing.activeFiles = List.of();
+                    listing.fileHistories = page;
+                    if (!page.isEmpty()) {
+                        lastPath = page.get(page.size() - 1).path;
+                        hasMore = !sortedFiles.get(sortedFiles.size() - 1).path.equals(lastPath);
+                    }
+                } else {
+                    var sortedFiles = cachedObject.getSortedFiles(version.getVersionNum());
+                    var page = getPage(sortedFiles, FileDetails::getPath, afterPath, limit);
+                    listing.activeFiles = page;
+                    listing.fileHistories = List.of();
+                    if (!page.isEmpty()) {
+                        lastPath = page.get(page.size() - 1).getPath();
+                        hasMore = !sortedFiles.get(sortedFiles.size() - 1).getPath().equals(lastPath);
                     }
                 }
+                if (hasMore) {
+                    listing.nextCursor = encodeCursor(lastPath);
+                }
+            }
+            var objectTimestampsParam = request.getParameter(ObjectTimestampsParameter);
+            listing.includeObjectTimestamps = objectTimestampsParam != null && objectTimestampsParam.equals("true");
+            response.setStatus(HttpServletResponse.SC_OK);
+            var acceptHeader = request.getHeader("Accept");
+            if (acceptHeader != null && acceptHeader.contains(NdjsonContentType)) {
+                response.setContentType(NdjsonContentType);
+                writeFilesListingNdjson(response.getOutputStream(), listing);
+            } else {
+                response.setContentType("application/json");
+                writeFilesListingJson(response.getOutputStream(), listing);
             }
+        } else {
+            setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
         }
     }
 
-    private void handleRequest(String target,
-                                Request baseRequest,
+    void handleUploadException(HttpServletResponse response, RuntimeException e) throws IOException {
+        var exceptionMsg = e.toString();
+        if (e instanceof IllegalStateException && exceptionMsg.contains("Illegal character")) {
+            logger.warning(exceptionMsg);
+            setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, "invalid character in filename");
+        } else if (e instanceof OcflJavaException && exceptionMsg.contains("MessageDigest not available")) {
+            setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, exceptionMsg.split(": ")[1]);
+        } else if (e instanceof OcflStateException) {
+            //eg. a new version of an object that has staged changes
+            setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
+        } else if (e instanceof PathConstraintException || e instanceof OcflInputException) {
+            //eg. a path with an empty segment, or a file where there's already a directory
+            logger.warning(exceptionMsg);
+            setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } else {
+            throw e;
+        }
+    }
+
+    void startAsyncUpload(HttpServletRequest request, HttpServletResponse response, String objectId) throws IOException {
+        //the receive phase starts now, & covers waiting for the whole body to arrive
+        var timings = startIngest(response, objectId);
+        var receive = timings.start(IngestTimings.Phase.RECEIVE);
+        Files.createDirectories(uploadSpoolDir);
+        String boundary;
+        try {
+            boundary = StreamingMultipartParser.getBoundary(request.getContentType());
+        } catch (InvalidRequestException e) {
+            setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        var reader = new AsyncUploadReader(request, startAsync(request), uploadSpoolDir, boundary, uploadExecutor, parts -> {
+            InstrumentedOcflRepository.RequestTimings storageTimings = null;
+            if (response instanceof ServerTimingResponse) {
+                storageTimings = ((ServerTimingResponse) response).timings;
+                InstrumentedOcflRepository.resumeRequest(storageTimings);
+            }
+            try {
+                handleObjectFilesStreamingUpload(request, response, objectId, parts, timings, receive);
+            } catch (IllegalStateException | OcflJavaException e) {
+                handleUploadException(response, e);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+                setResponseError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "internal server error");
+            } finally {
+                if (storageTimings != null) {
+                    ((ServerTimingResponse) response).addServerTiming();
+                    InstrumentedOcflRepository.endRequest();
+                }
+            }
+        }, metrics);
+        //set before the listener, since jetty can call it (& finish the upload) right away on another thread
+        request.setAttribute(AsyncResponseAttribute, reader.finished);
+        request.getInputStream().setReadListener(reader);
+    }
+
+    static boolean isMultipart(HttpServletRequest request) {
+        return request.getContentType() != null && request.getContentType().startsWith("multipart/form-data");
+    }
+
+    private void handleRequest(String requestURI,
+                                RequestRouter.Match match,
                                 HttpServletRequest request,
                                 HttpServletResponse response)
             throws IOException, ServletException
     {
-        if (request.getContentType() != null && request.getContentType().startsWith("multipart/form-data")) {
+        //staged uploads are always buffered
+        var stagedUpload = match != null && match.route == RequestRouter.Route.OBJECT_STAGED_FILES;
+        if (isMultipart(request) && ((!streamingUploads && !asyncUploads) || stagedUpload)) {
             request.setAttribute("org.eclipse.jetty.multipartConfig", MULTI_PART_CONFIG); //should be Request.__MULTIPART_CONFIG_ELEMENT, but that didn't compile
         }
-        var requestURI = request.getRequestURI();
-        var updatedRequestURI = requestURI.replace("+", "%20");
-        if (updatedRequestURI.equals("/")) {
+        if (requestURI.equals("/")) {
             handleRoot(response);
         }
+        else if (requestURI.equals(MetricsPath)) {
+            handleMetrics(request, response);
+        }
+        else if (match == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
         else {
-            var matcher = ObjectIdFilesPattern.matcher(updatedRequestURI);
-            if (matcher.matches()) {
-                var objectId = URLDecoder.decode(matcher.group(1), StandardCharsets.UTF_8.toString());
-                objectId = Normalizer.normalize(objectId, Normalizer.Form.NFC);
-                handleObjectFiles(request, response, objectId);
-            } else {
-                var matcher2 = ObjectIdPathContentPattern.matcher(updatedRequestURI);
-                if (matcher2.matches()) {
-                    var objectId = URLDecoder.decode(matcher2.group(1), StandardCharsets.UTF_8.toString());
-                    objectId = Normalizer.normalize(objectId, Normalizer.Form.NFC);
-                    var path = URLDecoder.decode(matcher2.group(2), StandardCharsets.UTF_8.toString());
-                    path = Normalizer.normalize(path, Normalizer.Form.NFC);
-                    handleObjectPathContent(request, response, objectId, path);
-                } else {
-                    var matcher3 = ObjectIdPathPattern.matcher(updatedRequestURI);
-                    if(matcher3.matches()) {
-                        var objectId = URLDecoder.decode(matcher3.group(1), StandardCharsets.UTF_8.toString());
-                        objectId = Normalizer.normalize(objectId, Normalizer.Form.NFC);
-                        var path = URLDecoder.decode(matcher3.group(2), StandardCharsets.UTF_8.toString());
-                        path = Normalizer.normalize(path, Normalizer.Form.NFC);
-                        handleObjectPath(request, response, objectId, path);
-                    } else {
-                        var matcher4 = ObjectIdVersionPathContentPattern.matcher(updatedRequestURI);
-                        if(matcher4.matches()) {
-                            var objectId = URLDecoder.decode(matcher4.group(1), StandardCharsets.UTF_8.toString());
-                            objectId = Normalizer.normalize(objectId, Normalizer.Form.NFC);
-                            var versionNum = Integer.parseInt(matcher4.group(2));
-                            var path = URLDecoder.decode(matcher4.group(3), StandardCharsets.UTF_8.toString());
-                            path = Normalizer.normalize(path, Normalizer.Form.NFC);
-                            handleObjectVersionPathContent(request, response, objectId, path, versionNum);
-                        } else {
-                            var matcher5 = ObjectIdVersionFilesPattern.matcher(updatedRequestURI);
-                            if(matcher5.matches()) {
-                                var objectId = URLDecoder.decode(matcher5.group(1), StandardCharsets.UTF_8.toString());
-                                objectId = Normalizer.normalize(objectId, Normalizer.Form.NFC);
-                                var versionNum = Integer.parseInt(matcher5.group(2));
-                                handleObjectFiles(request, response, objectId, versionNum);
-                            } else {
-                                var versionsMatcher = ObjectIdVersionsPattern.matcher(updatedRequestURI);
-                                if(versionsMatcher.matches()) {
-                                    var objectId = URLDecoder.decode(versionsMatcher.group(1), StandardCharsets.UTF_8.toString());
-                                    objectId = Normalizer.normalize(objectId, Normalizer.Form.NFC);
-                                    handleObjectVersions(request, response, objectId);
-                                } else {
-                                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                                }
-                            }
-                        }
-                    }
-                }
+            switch (match.route) {
+                case OBJECT_FILES:
+                    handleObjectFiles(request, response, match.objectId);
+                    break;
+                case OBJECT_PATH_CONTENT:
+                    handleObjectPathContent(request, response, match.objectId, match.path);
+                    break;
+                case OBJECT_PATH:
+                    handleObjectPath(request, response, match.objectId, match.path);
+                    break;
+                case OBJECT_VERSION_PATH_CONTENT:
+                    handleObjectVersionPathContent(request, response, match.objectId, match.path, match.versionNum);
+                    break;
+                case OBJECT_VERSION_FILES:
+                    handleObjectFiles(request, response, match.objectId, match.versionNum);
+                    break;
+                case OBJECT_VERSIONS:
+                    handleObjectVersions(request, response, match.objectId);
+                    break;
+                case OBJECT_STAGED:
+                    stagedChanges.handleStaged(request, response, match.objectId);
+                    break;
+                case OBJECT_STAGED_FILES:
+                    stagedChanges.handleStagedFiles(request, response, match.objectId);
+                    break;
+                case OBJECT_STAGED_PATH:
+                    stagedChanges.handleStagedPath(request, response, match.objectId, match.path);
+                    break;
             }
         }
-        baseRequest.setHandled(true);
     }
 
     public void handle(String target,
@@ -888,12 +1724,76 @@ public class OcflHttp extends AbstractHandler {
                        HttpServletResponse response)
             throws IOException, ServletException
     {
+        if (requestExecutor == null) {
+            handleOnThisThread(baseRequest, request, response);
+            return;
+        }
+        //hand the request to a virtual thread, & give jetty's thread back
+        baseRequest.setHandled(true);
+        var asyncContext = request.startAsync();
+        //no timeout - a download takes as long as the client needs
+        asyncContext.setTimeout(0);
+        requestExecutor.execute(() -> {
+            try {
+                handleOnThisThread(baseRequest, request, response);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, e.getMessage(), e);
+            } finally {
+                //an async download or upload completes the context itself, when it's done
+                if (request.getAttribute(AsyncResponseAttribute) == null) {
+                    asyncContext.complete();
+                }
+            }
+        });
+    }
+
+    void handleOnThisThread(Request baseRequest,
+                            HttpServletRequest request,
+                            HttpServletResponse response)
+            throws IOException
+    {
+        var start = System.nanoTime();
+        metrics.requestStarted();
+        var requestURI = request.getRequestURI().replace("+", "%20");
+        RequestRouter.Match match = null;
+        ServerTimingResponse timingResponse = null;
+        if (serverTiming) {
+            timingResponse = new ServerTimingResponse(response, InstrumentedOcflRepository.startRequest());
+            response = timingResponse;
+        }
         try {
-            handleRequest(target, baseRequest, request, response);
+            if (!requestURI.equals("/") && !requestURI.equals(MetricsPath)) {
+                match = Router.match(requestURI);
+            }
+            handleRequest(requestURI, match, request, response);
+        } catch (OcflStateException e) {
+            //eg. a new version of an object that has staged changes
+            setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
         } catch(Exception e) {
             logger.log(Level.SEVERE, e.getMessage(), e);
             setResponseError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "internal server error");
+        } finally {
+            @SuppressWarnings("unchecked")
+            var asyncResponse = (CompletableFuture<Void>) request.getAttribute(AsyncResponseAttribute);
+            if (timingResponse != null) {
+                //for responses without a body - an async upload adds it when it's done
+                if (asyncResponse == null) {
+                    timingResponse.addServerTiming();
+                }
+                InstrumentedOcflRepository.endRequest();
+            }
             baseRequest.setHandled(true);
+            var route = RequestMetrics.getRoute(requestURI, request.getMethod(), match);
+            var finalResponse = response;
+            //getWritten() includes output that's still buffered, which the channel's bytes written wouldn't yet
+            Runnable recordMetrics = () -> metrics.requestFinished(route, finalResponse.getStatus(), System.nanoTime() - start,
+                    baseRequest.getHttpInput().getContentReceived(), baseRequest.getResponse().getHttpOutput().getWritten());
+            if (asyncResponse != null) {
+                //the body is still going out (or coming in) - count the request when it's done
+                asyncResponse.thenRun(recordMetrics);
+            } else {
+                recordMetrics.run();
+            }
         }
     }
 
@@ -920,7 +1820,8 @@ public class OcflHttp extends AbstractHandler {
                 (eg. in a mimetypes.json file for each object, with the filename coming from a config file setting)
                 We might want to generalize the file to include more technical metadata.
                 Or, could mimetypes be added (through an extension) to inventory.json?
-        2. The detection might not be as fast as we want: we could use some kind of caching (with pre-warming).
+        2. The detection might not be as fast as we want: MimetypeCache caches the results by content digest,
+            so the handlers should go through that instead of calling this directly.
          */
         if(!is.markSupported()) {
             is = new BufferedInputStream(is);
@@ -932,8 +1833,7 @@ public class OcflHttp extends AbstractHandler {
             return "application/xml";
         }
         is.reset();
-        var tika = new Tika();
-        var tikaMimetype = tika.detect(is, name);
+        var tikaMimetype = SharedTika.detect(is, name);
         if(tikaMimetype.equals("image/x-raw-adobe")) {
             return "image/x-adobe-dng";
         }
@@ -990,7 +1890,7 @@ public class OcflHttp extends AbstractHandler {
     public static void main(String[] args) throws Exception {
         var config = new OcflHttpConfig(args);
         var server = getServer(config.port, config.minThreads, config.maxThreads);
-        var ocflHttp = new OcflHttp(config.repoRootDir, config.workDir, config.fileSizeThreshold, config.allowedUploadDirs);
+        var ocflHttp = new OcflHttp(config);
         server.setHandler(ocflHttp);
         server.start();
         server.join();
@@ -1,17 +1,35 @@
 package edu.brown.library.repository.ocflhttp;
 
 import javax.json.Json;
+import javax.json.JsonValue;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class OcflHttpConfig {
 
     public static int DEFAULT_FILE_SIZE_THRESHOLD = 2500000;
     public static int DEFAULT_PORT = 8000;
+    public static long DEFAULT_OBJECT_CACHE_MAX_WEIGHT = 1000000L;
+    public static long DEFAULT_MIMETYPE_CACHE_MAX_SIZE = 100000L;
+    public static long DEFAULT_RESPONSE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    public static int DEFAULT_RESPONSE_CACHE_MAX_ENTRY_BYTES = 256 * 1024;
+
+    /*
+    How location files from an upload directory get into the repository: COPY reads the file & writes a copy;
+     LINK hard-links it into the new version, so the stored content is the producer's inode, & anything that
+     writes to the original in place afterwards silently changes (& corrupts) the repository's copy;
+     MOVE does the same as LINK, then removes the original once the version is committed.
+    LINK & MOVE fall back to copying if the file isn't on the same filesystem as the work directory.
+    Because of that risk, a LINK upload dir has to set ALLOW_SHARED_INODE in the config file - MOVE is the safe
+     zero-copy mode.
+     */
+    public enum IngestMode { COPY, LINK, MOVE }
 
     public int port;
     public int minThreads;
@@ -20,6 +38,31 @@ public class OcflHttpConfig {
     public Path workDir;
     public int fileSizeThreshold;
     public List<Path> allowedUploadDirs;
+    //upload directories that aren't in here use IngestMode.COPY
+    public Map<Path, IngestMode> uploadDirIngestModes;
+    public long objectCacheMaxWeight;
+    public long mimetypeCacheMaxSize;
+    public boolean persistMimetypeCache;
+    public int ingestThreads;
+    public boolean streamingUploads;
+    //add a Server-Timing response header with the ocfl-java calls each request made
+    public boolean serverTiming;
+    //log a breakdown of POST/PUT requests that take at least this long - 0 turns it off
+    public long slowIngestThresholdMillis;
+    //handle requests on virtual threads (needs Java 21) - jetty's pool then only runs the connectors
+    public boolean virtualThreads;
+    //write content responses bigger than the response buffer with servlet async I/O (off by default)
+    public boolean asyncDownloads;
+    //read multipart POST/PUT bodies with servlet async I/O, & only ingest them once they've all arrived
+    public boolean asyncUploads;
+    //batch PUTs to the same object that arrive within this many ms into one version - 0 turns it off
+    public long groupCommitWindowMillis;
+    //identical /files & /versions GETs that arrive while one is being rendered share its response
+    public boolean coalesceRequests;
+    //memory cap for the rendered /files & /versions responses - 0 turns the cache off
+    public long responseCacheMaxBytes;
+    //bigger /files & /versions responses aren't cached or coalesced, but streamed
+    public int responseCacheMaxEntryBytes;
 
     public OcflHttpConfig() throws IOException {
         setDefaults();
@@ -41,12 +84,49 @@ public class OcflHttpConfig {
                     workDir = Path.of(workDirParam);
                 }
                 fileSizeThreshold = object.getInt("FILE_SIZE_THRESHOLD", DEFAULT_FILE_SIZE_THRESHOLD);
+                if (object.containsKey("OBJECT_CACHE_MAX_WEIGHT")) {
+                    objectCacheMaxWeight = object.getJsonNumber("OBJECT_CACHE_MAX_WEIGHT").longValue();
+                }
+                if (object.containsKey("MIMETYPE_CACHE_MAX_SIZE")) {
+                    mimetypeCacheMaxSize = object.getJsonNumber("MIMETYPE_CACHE_MAX_SIZE").longValue();
+                }
+                persistMimetypeCache = object.getBoolean("PERSIST_MIMETYPE_CACHE", false);
+                ingestThreads = object.getInt("INGEST_THREADS", 1);
+                streamingUploads = object.getBoolean("STREAMING_UPLOADS", false);
+                serverTiming = object.getBoolean("SERVER_TIMING", false);
+                virtualThreads = object.getBoolean("VIRTUAL_THREADS", false);
+                asyncDownloads = object.getBoolean("ASYNC_DOWNLOADS", false);
+                asyncUploads = object.getBoolean("ASYNC_UPLOADS", false);
+                coalesceRequests = object.getBoolean("COALESCE_REQUESTS", false);
+                if (object.containsKey("RESPONSE_CACHE_MAX_BYTES")) {
+                    responseCacheMaxBytes = object.getJsonNumber("RESPONSE_CACHE_MAX_BYTES").longValue();
+                }
+                responseCacheMaxEntryBytes = object.getInt("RESPONSE_CACHE_MAX_ENTRY_BYTES", DEFAULT_RESPONSE_CACHE_MAX_ENTRY_BYTES);
+                if (object.containsKey("GROUP_COMMIT_WINDOW_MS")) {
+                    groupCommitWindowMillis = object.getJsonNumber("GROUP_COMMIT_WINDOW_MS").longValue();
+                }
+                if (object.containsKey("SLOW_INGEST_THRESHOLD_MS")) {
+                    slowIngestThresholdMillis = object.getJsonNumber("SLOW_INGEST_THRESHOLD_MS").longValue();
+                }
                 var allowedUploadDirsInfo = object.getJsonArray("ALLOWED-UPLOAD-DIRS");
                 if (allowedUploadDirsInfo != null) {
                     int index = 0;
                     while (index < allowedUploadDirsInfo.size()) {
-                        final var path = allowedUploadDirsInfo.getString(index);
-                        allowedUploadDirs.add(Path.of(path));
+                        //either a path, or {"PATH": <path>, "INGEST_MODE": "copy"/"link"/"move", "ALLOW_SHARED_INODE": true/false}
+                        var dirInfo = allowedUploadDirsInfo.get(index);
+                        if (dirInfo.getValueType() == JsonValue.ValueType.OBJECT) {
+                            var path = Path.of(dirInfo.asJsonObject().getString("PATH"));
+                            allowedUploadDirs.add(path);
+                            var ingestMode = IngestMode.valueOf(dirInfo.asJsonObject().getString("INGEST_MODE", "copy").toUpperCase());
+                            if (ingestMode == IngestMode.LINK && !dirInfo.asJsonObject().getBoolean("ALLOW_SHARED_INODE", false)) {
+                                throw new IllegalArgumentException("INGEST_MODE link for " + path + " shares the file with the producer, " +
+                                        "so a later write to it changes the repository's copy - use move, or set ALLOW_SHARED_INODE to true");
+                            }
+                            uploadDirIngestModes.put(path, ingestMode);
+                        } else {
+                            final var path = allowedUploadDirsInfo.getString(index);
+                            allowedUploadDirs.add(Path.of(path));
+                        }
                         index++;
                     }
                 }
@@ -54,6 +134,15 @@ public class OcflHttpConfig {
         }
     }
 
+    public static OcflHttpConfig of(Path repoRootDir, Path workDir, int fileSizeThreshold, List<Path> allowedUploadDirs) throws IOException {
+        var config = new OcflHttpConfig();
+        config.repoRootDir = repoRootDir;
+        config.workDir = workDir;
+        config.fileSizeThreshold = fileSizeThreshold;
+        config.allowedUploadDirs = allowedUploadDirs;
+        return config;
+    }
+
     void setDefaults() {
         port = DEFAULT_PORT;
         minThreads = -1;
@@ -63,5 +152,20 @@ public class OcflHttpConfig {
         workDir = Path.of(tmp);
         fileSizeThreshold = DEFAULT_FILE_SIZE_THRESHOLD;
         allowedUploadDirs = new ArrayList<>();
+        uploadDirIngestModes = new HashMap<>();
+        objectCacheMaxWeight = DEFAULT_OBJECT_CACHE_MAX_WEIGHT;
+        mimetypeCacheMaxSize = DEFAULT_MIMETYPE_CACHE_MAX_SIZE;
+        persistMimetypeCache = false;
+        ingestThreads = 1;
+        streamingUploads = false;
+        serverTiming = false;
+        slowIngestThresholdMillis = 0;
+        virtualThreads = false;
+        asyncDownloads = false;
+        asyncUploads = false;
+        groupCommitWindowMillis = 0;
+        coalesceRequests = false;
+        responseCacheMaxBytes = DEFAULT_RESPONSE_CACHE_MAX_BYTES;
+        responseCacheMaxEntryBytes = DEFAULT_RESPONSE_CACHE_MAX_ENTRY_BYTES;
     }
 }
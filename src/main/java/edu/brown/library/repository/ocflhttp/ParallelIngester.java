@@ -0,0 +1,167 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.wisc.library.ocfl.api.OcflObjectUpdater;
+import edu.wisc.library.ocfl.core.util.FileUtil;
+
+import static edu.wisc.library.ocfl.api.OcflOption.MOVE_SOURCE;
+import static edu.wisc.library.ocfl.api.OcflOption.OVERWRITE;
+
+/*
+Stages the files of one update on a pool of worker threads: each file is streamed into its own file under the
+ ingest directory, checking its fixity & recording its technical metadata on the way.
+ocfl-java's object updater isn't thread-safe, so the request thread still adds the staged files to the new
+ version one at a time - with addPath(MOVE_SOURCE) on a hard link to each one, like a linked location file, so
+ the serial part only reads each file to digest it, & the content is only written once.
+ */
+class ParallelIngester {
+
+    private final ExecutorService executor;
+    private final Path ingestDir;
+
+    ParallelIngester(int threads, Path ingestDir) throws IOException {
+        this.ingestDir = ingestDir;
+        Files.createDirectories(ingestDir);
+        var threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "ocfl-ingest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static class StagedFiles {
+        final Path stagingDir;
+        final List<Path> paths = new ArrayList<>();
+
+        StagedFiles(Path stagingDir) {
+            this.stagingDir = stagingDir;
+        }
+
+        //ocfl-java renames a new link into the version, so the staged file is still there if the update fails & gets retried
+        void addFile(OcflObjectUpdater updater, int index, String fileNameNFC, boolean overwrite) {
+            var linkPath = stagingDir.resolve(index + "-" + UUID.randomUUID());
+            try {
+                try {
+                    Files.createLink(linkPath, paths.get(index));
+                } catch (FileSystemException | UnsupportedOperationException e) {
+                    Files.copy(paths.get(index), linkPath);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (overwrite) {
+                updater.addPath(linkPath, fileNameNFC, MOVE_SOURCE, OVERWRITE);
+            } else {
+                updater.addPath(linkPath, fileNameNFC, MOVE_SOURCE);
+            }
+        }
+    }
+
+    /*
+    The caller deletes the staging directory when it's done with the staged files.
+    If any file fails (eg. a FixityCheckException), files that haven't started yet are skipped, the staging
+     directory is deleted, and the first failure is thrown, so no version gets written.
+     */
+    StagedFiles stage(List<TechnicalMetadataInputStream> streams) throws IOException {
+        var staged = new StagedFiles(Files.createTempDirectory(ingestDir, "upload"));
+        var aborted = new AtomicBoolean(false);
+        var futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < streams.size(); i++) {
+            var stream = streams.get(i);
+            var stagedPath = staged.stagingDir.resolve(String.valueOf(i));
+            staged.paths.add(stagedPath);
+            Callable<Void> task = () -> {
+                if (aborted.get()) {
+                    return null;
+                }
+                try {
+                    stageFile(stream, stagedPath);
+                } catch (Exception e) {
+                    aborted.set(true);
+                    throw e;
+                }
+                return null;
+            };
+            futures.add(executor.submit(task));
+        }
+        Throwable failure = null;
+        //wait for every task, even after a failure, so nothing is still writing when we delete the directory
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                aborted.set(true);
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            FileUtil.safeDeleteDirectory(staged.stagingDir);
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            throw new IOException(failure);
+        }
+        return staged;
+    }
+
+    /*
+    Stages the files one at a time on the calling thread, for when there's no pool (eg. group commits with
+     INGEST_THREADS = 1). Same cleanup as stage() if a file fails.
+     */
+    static StagedFiles stageSerially(List<TechnicalMetadataInputStream> streams, Path ingestDir) throws IOException {
+        Files.createDirectories(ingestDir);
+        var staged = new StagedFiles(Files.createTempDirectory(ingestDir, "upload"));
+        try {
+            for (int i = 0; i < streams.size(); i++) {
+                var stagedPath = staged.stagingDir.resolve(String.valueOf(i));
+                staged.paths.add(stagedPath);
+                stageFile(streams.get(i), stagedPath);
+            }
+        } catch (IOException | RuntimeException e) {
+            FileUtil.safeDeleteDirectory(staged.stagingDir);
+            throw e;
+        }
+        return staged;
+    }
+
+    static void stageFile(TechnicalMetadataInputStream stream, Path stagedPath) throws IOException {
+        Files.copy(stream.getUploadStream(), stagedPath);
+        if (stream.getFixityStream() != null) {
+            stream.getFixityStream().checkFixity();
+        }
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    boolean isClosed() {
+        return executor.isShutdown();
+    }
+}
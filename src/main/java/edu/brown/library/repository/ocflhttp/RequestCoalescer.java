@@ -0,0 +1,85 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.servlet.ServletException;
+
+/*
+Single-flight for read requests: the first request for a key renders the response, & identical requests that
+ arrive while it's rendering wait for it & send the same bytes, instead of each walking the inventory & reading
+ the files again. The key has the object's head version in it, so a request that arrives after a write never
+ gets a response from before it.
+Only in-flight requests are shared - once the response is rendered, the next request renders it again.
+A response too big to buffer comes back as null, & the requests that waited for it render their own.
+ */
+class RequestCoalescer {
+
+    interface Render {
+        BufferedResponse.Rendered render() throws IOException, ServletException;
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedResponse.Rendered>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    BufferedResponse.Rendered run(String key, Render render) throws IOException, ServletException {
+        var rendering = new CompletableFuture<BufferedResponse.Rendered>();
+        var existing = inFlight.putIfAbsent(key, rendering);
+        if (existing != null) {
+            collapsed.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                //rethrow what the rendering request got, in this request's thread
+                var cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof ServletException) {
+                    throw (ServletException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw e;
+            }
+        }
+        rendered.increment();
+        try {
+            var response = render.render();
+            rendering.complete(response);
+            return response;
+        } catch (IOException | ServletException | RuntimeException e) {
+            rendering.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, rendering);
+        }
+    }
+
+    //keys being rendered right now
+    int getInFlight() {
+        return inFlight.size();
+    }
+
+    long getRendered() {
+        return rendered.sum();
+    }
+
+    long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    void write(StringBuilder output) {
+        output.append("# HELP ocfl_http_coalesced_requests_total Read requests that shared the response of an identical request already in flight.\n");
+        output.append("# TYPE ocfl_http_coalesced_requests_total counter\n");
+        output.append("ocfl_http_coalesced_requests_total ").append(collapsed.sum()).append('\n');
+        output.append("# HELP ocfl_http_coalesced_renders_total Read responses rendered for coalescing, each shared by zero or more other requests.\n");
+        output.append("# TYPE ocfl_http_coalesced_renders_total counter\n");
+        output.append("ocfl_http_coalesced_renders_total ").append(rendered.sum()).append('\n');
+    }
+}
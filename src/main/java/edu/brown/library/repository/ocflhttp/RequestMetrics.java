@@ -0,0 +1,231 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/*
+Request counts, status codes, latency histograms, & bytes in & out for each route, & the time spent in each
+ phase of ingesting files, for the /metrics endpoint.
+Everything is recorded into LongAdders, which spread updates across cells when threads contend, so recording
+ a request never takes a lock, & requests on different threads don't all hit the same counter.
+The output is the Prometheus text format - https://prometheus.io/docs/instrumenting/exposition_formats/
+ */
+class RequestMetrics {
+
+    static final String ContentType = "text/plain; version=0.0.4; charset=utf-8";
+
+    enum Route {
+        ROOT, FILES, FILE, CONTENT, VERSIONS, POST, PUT, DELETE, METRICS, NOT_FOUND, OTHER;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    static class RouteMetrics {
+        //indexed by status code - only created when a status is first seen
+        final AtomicReferenceArray<LongAdder> statusCounts = new AtomicReferenceArray<>(600);
+        final LatencyHistogram duration = new LatencyHistogram();
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+
+        LongAdder getStatusCount(int status) {
+            var count = statusCounts.get(status);
+            if (count == null) {
+                statusCounts.compareAndSet(status, null, new LongAdder());
+                count = statusCounts.get(status);
+            }
+            return count;
+        }
+    }
+
+    private final RouteMetrics[] routes = new RouteMetrics[Route.values().length];
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder asyncDownloads = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadThreads = new LongAdder();
+    private final LatencyHistogram[] ingestPhases = new LatencyHistogram[IngestTimings.Phase.values().length];
+    private final LongAdder[] ingestPhaseBytes = new LongAdder[IngestTimings.Phase.values().length];
+
+    RequestMetrics() {
+        for (int i = 0; i < routes.length; i++) {
+            routes[i] = new RouteMetrics();
+        }
+        for (int i = 0; i < ingestPhases.length; i++) {
+            ingestPhases[i] = new LatencyHistogram();
+            ingestPhaseBytes[i] = new LongAdder();
+        }
+    }
+
+    static Route getRoute(String requestURI, String method, RequestRouter.Match match) {
+        if (requestURI.equals("/")) {
+            return Route.ROOT;
+        }
+        if (requestURI.equals(OcflHttp.MetricsPath)) {
+            return Route.METRICS;
+        }
+        if (match == null) {
+            return Route.NOT_FOUND;
+        }
+        switch (method) {
+            case "POST":
+                return Route.POST;
+            case "PUT":
+                return Route.PUT;
+            case "DELETE":
+                return Route.DELETE;
+            case "GET":
+            case "HEAD":
+                switch (match.route) {
+                    case OBJECT_FILES:
+                    case OBJECT_VERSION_FILES:
+                        return Route.FILES;
+                    case OBJECT_PATH_CONTENT:
+                    case OBJECT_VERSION_PATH_CONTENT:
+                        return Route.CONTENT;
+                    case OBJECT_PATH:
+                        return Route.FILE;
+                    case OBJECT_VERSIONS:
+                        return Route.VERSIONS;
+                }
+        }
+        return Route.OTHER;
+    }
+
+    void requestStarted() {
+        inFlight.increment();
+    }
+
+    void requestFinished(Route route, int status, long durationNanos, long bytesIn, long bytesOut) {
+        inFlight.decrement();
+        var routeMetrics = routes[route.ordinal()];
+        if (status > 0 && status < 600) {
+            routeMetrics.getStatusCount(status).increment();
+        }
+        routeMetrics.duration.record(durationNanos);
+        routeMetrics.bytesIn.add(bytesIn);
+        routeMetrics.bytesOut.add(bytesOut);
+    }
+
+    void asyncDownloadStarted() {
+        asyncDownloads.increment();
+    }
+
+    void asyncDownloadFinished() {
+        asyncDownloads.decrement();
+    }
+
+    long getAsyncDownloads() {
+        return asyncDownloads.sum();
+    }
+
+    void uploadStarted() {
+        uploads.increment();
+    }
+
+    void uploadFinished() {
+        uploads.decrement();
+    }
+
+    //around anything an upload does on a thread - a blocking upload holds one the whole time
+    void uploadThreadStarted() {
+        uploadThreads.increment();
+    }
+
+    void uploadThreadFinished() {
+        uploadThreads.decrement();
+    }
+
+    long getUploads() {
+        return uploads.sum();
+    }
+
+    long getUploadThreads() {
+        return uploadThreads.sum();
+    }
+
+    void recordIngest(IngestTimings timings) {
+        for (IngestTimings.Phase phase : IngestTimings.Phase.values()) {
+            if (timings.ran[phase.ordinal()]) {
+                ingestPhases[phase.ordinal()].record(timings.nanos[phase.ordinal()]);
+                ingestPhaseBytes[phase.ordinal()].add(timings.bytes[phase.ordinal()]);
+            }
+        }
+    }
+
+    long getIngestCount(IngestTimings.Phase phase) {
+        return ingestPhases[phase.ordinal()].getCount();
+    }
+
+    long getRequestCount(Route route, int status) {
+        var count = routes[route.ordinal()].statusCounts.get(status);
+        return (count == null) ? 0 : count.sum();
+    }
+
+    void write(StringBuilder output, ThreadPool threadPool) {
+        output.append("# HELP ocfl_http_requests_total Requests handled, by route & response status.\n");
+        output.append("# TYPE ocfl_http_requests_total counter\n");
+        for (Route route : Route.values()) {
+            var statusCounts = routes[route.ordinal()].statusCounts;
+            for (int status = 0; status < statusCounts.length(); status++) {
+                var count = statusCounts.get(status);
+                if (count != null) {
+                    output.append("ocfl_http_requests_total{route=\"").append(route.label).append("\",status=\"")
+                            .append(status).append("\"} ").append(count.sum()).append('\n');
+                }
+            }
+        }
+        output.append("# HELP ocfl_http_request_duration_seconds Time from the handler getting a request to the response being written.\n");
+        output.append("# TYPE ocfl_http_request_duration_seconds histogram\n");
+        for (Route route : Route.values()) {
+            routes[route.ordinal()].duration.write(output, "ocfl_http_request_duration_seconds", "route=\"" + route.label + "\"");
+        }
+        writeRouteCounter(output, "ocfl_http_request_bytes_total", "Request body bytes received.", false);
+        writeRouteCounter(output, "ocfl_http_response_bytes_total", "Response body bytes sent.", true);
+        output.append("# HELP ocfl_http_ingest_phase_duration_seconds Time POST/PUT requests spent in each phase of adding files.\n");
+        output.append("# TYPE ocfl_http_ingest_phase_duration_seconds histogram\n");
+        for (IngestTimings.Phase phase : IngestTimings.Phase.values()) {
+            ingestPhases[phase.ordinal()].write(output, "ocfl_http_ingest_phase_duration_seconds", "phase=\"" + phase.label + "\"");
+        }
+        output.append("# HELP ocfl_http_ingest_phase_bytes_total Bytes that went through each phase of adding files.\n");
+        output.append("# TYPE ocfl_http_ingest_phase_bytes_total counter\n");
+        for (IngestTimings.Phase phase : IngestTimings.Phase.values()) {
+            output.append("ocfl_http_ingest_phase_bytes_total{phase=\"").append(phase.label).append("\"} ")
+                    .append(ingestPhaseBytes[phase.ordinal()].sum()).append('\n');
+        }
+        writeGauge(output, "ocfl_http_requests_in_flight", "Requests being handled right now.", inFlight.sum());
+        writeGauge(output, "ocfl_http_uploads_in_flight", "POST/PUT uploads being received or ingested right now.", uploads.sum());
+        writeGauge(output, "ocfl_http_upload_threads", "Threads busy with uploads right now.", uploadThreads.sum());
+        writeGauge(output, "ocfl_http_async_downloads_in_flight", "Content responses being written with async I/O, without a thread.", asyncDownloads.sum());
+        if (threadPool instanceof QueuedThreadPool) {
+            var pool = (QueuedThreadPool) threadPool;
+            writeGauge(output, "ocfl_http_threads", "Threads in the server's pool.", pool.getThreads());
+            writeGauge(output, "ocfl_http_threads_busy", "Pool threads running a job.", pool.getBusyThreads());
+            writeGauge(output, "ocfl_http_threads_idle", "Pool threads waiting for a job.", pool.getIdleThreads());
+            writeGauge(output, "ocfl_http_threads_max", "The pool's maxThreads.", pool.getMaxThreads());
+            writeGauge(output, "ocfl_http_thread_pool_queue_size", "Jobs waiting for a pool thread.", pool.getQueueSize());
+            output.append("# HELP ocfl_http_thread_pool_utilization Busy threads / maxThreads.\n");
+            output.append("# TYPE ocfl_http_thread_pool_utilization gauge\n");
+            output.append("ocfl_http_thread_pool_utilization ")
+                    .append((double) pool.getBusyThreads() / pool.getMaxThreads()).append('\n');
+        }
+    }
+
+    private void writeRouteCounter(StringBuilder output, String name, String help, boolean out) {
+        output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        output.append("# TYPE ").append(name).append(" counter\n");
+        for (Route route : Route.values()) {
+            var routeMetrics = routes[route.ordinal()];
+            var bytes = out ? routeMetrics.bytesOut.sum() : routeMetrics.bytesIn.sum();
+            output.append(name).append("{route=\"").append(route.label).append("\"} ").append(bytes).append('\n');
+        }
+    }
+
+    static void writeGauge(StringBuilder output, String name, String help, long value) {
+        output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        output.append("# TYPE ").append(name).append(" gauge\n");
+        output.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,173 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Maps a request path to one of the API routes in a single pass: the path is split into segments once, then we walk
+ a trie of the routes - literal segments ("files", "content", "versions", "staged") are looked up directly, & the other
+ segments are captured as the object id, a version (vN), or a file name. Only the captured segments get decoded
+ & NFC-normalized, once each, after the whole path has matched.
+The object id & file name segments have to match [-:_. %a-zA-Z0-9]+ (so they can't contain a "/" unless it's
+ percent-encoded).
+ */
+class RequestRouter {
+
+    enum Route {
+        OBJECT_FILES,
+        OBJECT_PATH,
+        OBJECT_PATH_CONTENT,
+        OBJECT_VERSION_FILES,
+        OBJECT_VERSION_PATH_CONTENT,
+        OBJECT_VERSIONS,
+        OBJECT_STAGED,
+        OBJECT_STAGED_FILES,
+        OBJECT_STAGED_PATH
+    }
+
+    static class Match {
+        final Route route;
+        final String objectId;
+        final String path;
+        final int versionNum;
+
+        Match(Route route, String objectId, String path, int versionNum) {
+            this.route = route;
+            this.objectId = objectId;
+            this.path = path;
+            this.versionNum = versionNum;
+        }
+    }
+
+    private enum Capture { OBJECT_ID, VERSION, FILE_NAME }
+
+    private static class Node {
+        final Map<String, Node> literals = new HashMap<>();
+        final List<Capture> captureTypes = new ArrayList<>();
+        final List<Node> captures = new ArrayList<>();
+        Route route;
+
+        Node child(String segment) {
+            if (segment.startsWith("{")) {
+                var type = Capture.valueOf(segment.substring(1, segment.length() - 1));
+                var index = captureTypes.indexOf(type);
+                if (index == -1) {
+                    captureTypes.add(type);
+                    captures.add(new Node());
+                    index = captures.size() - 1;
+                }
+                return captures.get(index);
+            }
+            return literals.computeIfAbsent(segment, s -> new Node());
+        }
+    }
+
+    private final Node root = new Node();
+
+    RequestRouter() {
+        add("/{OBJECT_ID}/files", Route.OBJECT_FILES);
+        add("/{OBJECT_ID}/files/{FILE_NAME}", Route.OBJECT_PATH);
+        add("/{OBJECT_ID}/files/{FILE_NAME}/content", Route.OBJECT_PATH_CONTENT);
+        add("/{OBJECT_ID}/{VERSION}/files", Route.OBJECT_VERSION_FILES);
+        add("/{OBJECT_ID}/{VERSION}/files/{FILE_NAME}/content", Route.OBJECT_VERSION_PATH_CONTENT);
+        add("/{OBJECT_ID}/versions", Route.OBJECT_VERSIONS);
+        add("/{OBJECT_ID}/staged", Route.OBJECT_STAGED);
+        add("/{OBJECT_ID}/staged/files", Route.OBJECT_STAGED_FILES);
+        add("/{OBJECT_ID}/staged/files/{FILE_NAME}", Route.OBJECT_STAGED_PATH);
+    }
+
+    private void add(String template, Route route) {
+        var node = root;
+        for (String segment : template.substring(1).split("/")) {
+            node = node.child(segment);
+        }
+        node.route = route;
+    }
+
+    /*
+    Returns null if the path doesn't match any route.
+     */
+    Match match(String requestPath) {
+        if (!requestPath.startsWith("/")) {
+            return null;
+        }
+        var segments = requestPath.substring(1).split("/", -1);
+        //raw object id, version, file name
+        var captured = new String[3];
+        var node = find(root, segments, 0, captured);
+        if (node == null) {
+            return null;
+        }
+        var versionNum = (captured[1] == null) ? -1 : Integer.parseInt(captured[1].substring(1));
+        return new Match(node.route, decode(captured[0]), decode(captured[2]), versionNum);
+    }
+
+    private static Node find(Node node, String[] segments, int index, String[] captured) {
+        if (index == segments.length) {
+            return (node.route != null) ? node : null;
+        }
+        var segment = segments[index];
+        var literal = node.literals.get(segment);
+        if (literal != null) {
+            var found = find(literal, segments, index + 1, captured);
+            if (found != null) {
+                return found;
+            }
+        }
+        for (int i = 0; i < node.captures.size(); i++) {
+            var type = node.captureTypes.get(i);
+            if (type == Capture.VERSION ? isVersion(segment) : isIdentifier(segment)) {
+                var found = find(node.captures.get(i), segments, index + 1, captured);
+                if (found != null) {
+                    captured[type.ordinal()] = segment;
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    static boolean isIdentifier(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            var c = segment.charAt(i);
+            var allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                    c == '-' || c == ':' || c == '_' || c == '.' || c == ' ' || c == '%';
+            if (!allowed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isVersion(String segment) {
+        if (segment.length() < 2 || segment.charAt(0) != 'v') {
+            return false;
+        }
+        for (int i = 1; i < segment.length(); i++) {
+            var c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String decode(String segment) {
+        if (segment == null) {
+            return null;
+        }
+        //without any escapes, it's all ASCII, so it's already decoded & normalized
+        if (segment.indexOf('%') == -1) {
+            return segment;
+        }
+        return Normalizer.normalize(URLDecoder.decode(segment, StandardCharsets.UTF_8), Normalizer.Form.NFC);
+    }
+}
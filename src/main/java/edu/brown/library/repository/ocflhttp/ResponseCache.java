@@ -0,0 +1,124 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/*
+Rendered /files & /versions responses, already encoded, keyed like RequestCoalescer (so by the object's head
+ version too) - a hit is sent as-is, without reading the inventory or building any JSON.
+The key alone keeps a hit from ever being older than the head version, but a write to an object also drops
+ all of its entries (through the object cache's invalidation), so old versions' responses don't use up the
+ memory cap until they're evicted.
+A render that started before a write's invalidation isn't cached, even under the new head version's key
+ (eg. one that sniffed a mimetype just before the technical metadata was recorded): put() checks the object's
+ generation, which invalidate() bumps.
+Bounded by the total size of the bodies (& keys) - & the largest body is capped by the caller.
+ */
+class ResponseCache implements CachingOcflRepository.InvalidationListener {
+
+    private final Cache<String, BufferedResponse.Rendered> responses;
+    //each object's keys, so they can all be dropped when it's written
+    private final ConcurrentHashMap<String, Set<String>> keysByObject = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> objectByKey = new ConcurrentHashMap<>();
+    //objects share these, so a write can also keep another object's render out of the cache - that only costs a miss
+    private final AtomicLongArray generations = new AtomicLongArray(1024);
+
+    ResponseCache(long maxBytes) {
+        this.responses = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, BufferedResponse.Rendered rendered) -> weigh(key, rendered))
+                .removalListener((String key, BufferedResponse.Rendered rendered, RemovalCause cause) -> {
+                    //a replaced entry's key is still in the cache
+                    if (cause != RemovalCause.REPLACED) {
+                        forget(key);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    static int weigh(String key, BufferedResponse.Rendered rendered) {
+        return rendered.body.length + key.length();
+    }
+
+    BufferedResponse.Rendered get(String key) {
+        return responses.getIfPresent(key);
+    }
+
+    private int getStripe(String objectId) {
+        return Math.floorMod(objectId.hashCode(), generations.length());
+    }
+
+    //take this before rendering, & pass it to put()
+    long getGeneration(String objectId) {
+        return generations.get(getStripe(objectId));
+    }
+
+    void put(String objectId, long generation, String key, BufferedResponse.Rendered rendered) {
+        objectByKey.put(key, objectId);
+        keysByObject.computeIfAbsent(objectId, id -> ConcurrentHashMap.newKeySet()).add(key);
+        responses.put(key, rendered);
+        //checked after the put, so an invalidate() either sees this key or bumped the generation first
+        if (getGeneration(objectId) != generation) {
+            responses.asMap().remove(key, rendered);
+        }
+    }
+
+    private void forget(String key) {
+        var objectId = objectByKey.remove(key);
+        if (objectId != null) {
+            keysByObject.computeIfPresent(objectId, (id, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    @Override
+    public void invalidate(String objectId) {
+        generations.incrementAndGet(getStripe(objectId));
+        var keys = keysByObject.get(objectId);
+        if (keys != null) {
+            responses.invalidateAll(Set.copyOf(keys));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (int i = 0; i < generations.length(); i++) {
+            generations.incrementAndGet(i);
+        }
+        responses.invalidateAll();
+    }
+
+    CacheStats getStats() {
+        return responses.stats();
+    }
+
+    long getWeightedSize() {
+        return responses.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    long getEntries() {
+        return responses.estimatedSize();
+    }
+
+    void write(StringBuilder output) {
+        var stats = getStats();
+        output.append("# HELP ocfl_http_response_cache_requests_total Cacheable /files & /versions requests, by whether the response was cached.\n");
+        output.append("# TYPE ocfl_http_response_cache_requests_total counter\n");
+        output.append("ocfl_http_response_cache_requests_total{result=\"hit\"} ").append(stats.hitCount()).append('\n');
+        output.append("ocfl_http_response_cache_requests_total{result=\"miss\"} ").append(stats.missCount()).append('\n');
+        output.append("# HELP ocfl_http_response_cache_evictions_total Cached responses evicted to stay under the memory cap.\n");
+        output.append("# TYPE ocfl_http_response_cache_evictions_total counter\n");
+        output.append("ocfl_http_response_cache_evictions_total ").append(stats.evictionCount()).append('\n');
+        RequestMetrics.writeGauge(output, "ocfl_http_response_cache_bytes", "Size of the cached responses.", getWeightedSize());
+        RequestMetrics.writeGauge(output, "ocfl_http_response_cache_entries", "Cached responses.", getEntries());
+    }
+}
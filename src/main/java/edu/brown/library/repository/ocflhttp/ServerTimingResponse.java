@@ -0,0 +1,60 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/*
+Adds a Server-Timing header with the request's storage calls, & the ingest phases for a POST/PUT. Headers have to go out before the body, so the
+ header is added when the handler starts writing the body (or at the end, if there's no body) - it covers
+ the storage calls made up to then, which for the read handlers is all of them.
+ */
+class ServerTimingResponse extends HttpServletResponseWrapper {
+
+    static final String ServerTimingHeader = "Server-Timing";
+
+    final InstrumentedOcflRepository.RequestTimings timings;
+    //set by the POST/PUT handlers
+    IngestTimings ingest;
+    private boolean headerAdded = false;
+
+    ServerTimingResponse(HttpServletResponse response, InstrumentedOcflRepository.RequestTimings timings) {
+        super(response);
+        this.timings = timings;
+    }
+
+    void addServerTiming() {
+        if (!headerAdded && !isCommitted()) {
+            headerAdded = true;
+            var header = timings.getServerTiming();
+            if (ingest != null) {
+                var ingestTiming = ingest.getServerTiming();
+                if (!ingestTiming.isEmpty()) {
+                    header = ingestTiming + ", " + header;
+                }
+            }
+            setHeader(ServerTimingHeader, header);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        addServerTiming();
+        return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        addServerTiming();
+        return super.getWriter();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        addServerTiming();
+        super.flushBuffer();
+    }
+}
@@ -0,0 +1,245 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wisc.library.ocfl.core.util.FileUtil;
+
+/*
+Splits a multipart/form-data body into a file per part as the body arrives, for async uploads: write() takes
+ whatever chunk has come in & never waits for more, so it can run in a ReadListener callback. Once the body is
+ finished, the parts are read back in order, & a file part's spool file can be moved into the new version
+ instead of copied - so the upload's bytes are only written once.
+A malformed body stops the spooling, & the error is thrown by next() after the parts that were complete, the
+ same place StreamingMultipartParser would throw it.
+ */
+class SpooledMultipart implements MultipartParts {
+
+    private static final int MaxHeaderSize = 16384;
+
+    private enum State { BODY, DELIMITER, HEADERS, END }
+
+    private static class Part {
+        String name;
+        String fileName;
+        Path file;
+    }
+
+    private final Path spoolDir;
+    private final byte[] delimiter;
+    private byte[] buffer;
+    private int limit = 0;
+    private State state = State.BODY;
+    //the preamble before the first delimiter is thrown away
+    private OutputStream body = OutputStream.nullOutputStream();
+    private Part part;
+    private final ByteArrayOutputStream headers = new ByteArrayOutputStream();
+    private final List<Part> parts = new ArrayList<>();
+    private InvalidRequestException failure;
+    private int index = -1;
+
+    SpooledMultipart(Path spoolDir, String boundary) {
+        this.spoolDir = spoolDir;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(AsyncUploadReader.ChunkSize, delimiter.length) * 2];
+        //the first boundary doesn't need the CRLF in front of it - adding one lets us treat all the boundaries the same
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    Path getSpoolDir() {
+        return spoolDir;
+    }
+
+    void write(byte[] chunk, int off, int len) throws IOException {
+        if (failure != null || state == State.END) {
+            return;
+        }
+        if (limit + len > buffer.length) {
+            var newBuffer = new byte[Math.max(buffer.length, limit + len)];
+            System.arraycopy(buffer, 0, newBuffer, 0, limit);
+            buffer = newBuffer;
+        }
+        System.arraycopy(chunk, off, buffer, limit, len);
+        limit += len;
+        try {
+            process();
+        } catch (InvalidRequestException e) {
+            failure = e;
+            closeBody(false);
+        }
+    }
+
+    //called once the whole body has been written
+    void finish() throws IOException {
+        //a part that was cut off isn't one of the parts
+        closeBody(false);
+        if (failure == null && state != State.END) {
+            failure = new InvalidRequestException("invalid multipart request: unexpected end of body");
+        }
+    }
+
+    private void process() throws IOException, InvalidRequestException {
+        var position = 0;
+        while (true) {
+            if (state == State.BODY) {
+                var delimiterIndex = findDelimiter(position);
+                if (delimiterIndex == -1) {
+                    //anything after this could be the start of the delimiter
+                    var end = Math.max(position, limit - (delimiter.length - 1));
+                    body.write(buffer, position, end - position);
+                    position = end;
+                    break;
+                }
+                body.write(buffer, position, delimiterIndex - position);
+                closeBody(true);
+                position = delimiterIndex + delimiter.length;
+                state = State.DELIMITER;
+            } else if (state == State.DELIMITER) {
+                if (limit - position < 2) {
+                    break;
+                }
+                if (buffer[position] == '-' && buffer[position + 1] == '-') {
+                    state = State.END;
+                    position = limit;
+                    break;
+                }
+                state = State.HEADERS;
+                headers.reset();
+            } else if (state == State.HEADERS) {
+                var lineEnd = -1;
+                for (int i = position; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        lineEnd = i;
+                        break;
+                    }
+                }
+                if (lineEnd == -1) {
+                    headers.write(buffer, position, limit - position);
+                    position = limit;
+                    if (headers.size() > MaxHeaderSize) {
+                        throw new InvalidRequestException("invalid multipart request: headers too large");
+                    }
+                    break;
+                }
+                headers.write(buffer, position, lineEnd + 1 - position);
+                position = lineEnd + 1;
+                if (headers.size() > MaxHeaderSize) {
+                    throw new InvalidRequestException("invalid multipart request: headers too large");
+                }
+                if (endsWithBlankLine(headers.toByteArray())) {
+                    startPart(headers.toString(StandardCharsets.UTF_8));
+                    state = State.BODY;
+                }
+            } else {
+                position = limit;
+                break;
+            }
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+    }
+
+    private static boolean endsWithBlankLine(byte[] headerBytes) {
+        //the rest of the boundary line (normally just the CRLF) comes first, so a blank line is a second line ending in a row
+        var length = headerBytes.length;
+        if (length >= 2 && headerBytes[length - 1] == '\n' && headerBytes[length - 2] == '\n') {
+            return true;
+        }
+        return length >= 3 && headerBytes[length - 1] == '\n' && headerBytes[length - 2] == '\r' && headerBytes[length - 3] == '\n';
+    }
+
+    private void startPart(String headerBlock) throws IOException, InvalidRequestException {
+        part = new Part();
+        var lines = headerBlock.split("\r?\n");
+        //skip the rest of the boundary line
+        for (int i = 1; i < lines.length; i++) {
+            var line = lines[i];
+            var colon = line.indexOf(':');
+            if (colon != -1 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Disposition")) {
+                var params = StreamingMultipartParser.parseParams(line.substring(colon + 1));
+                part.name = params.get("name");
+                part.fileName = params.get("filename");
+            }
+        }
+        if (part.fileName != null) {
+            for (int i = 0; i < part.fileName.length(); i++) {
+                if (Character.isISOControl(part.fileName.charAt(i))) {
+                    throw new InvalidRequestException("invalid character in filename");
+                }
+            }
+        }
+        part.file = spoolDir.resolve("part-" + parts.size());
+        body = Files.newOutputStream(part.file);
+    }
+
+    private void closeBody(boolean complete) throws IOException {
+        body.close();
+        body = OutputStream.nullOutputStream();
+        if (part != null && complete) {
+            parts.add(part);
+        }
+        part = null;
+    }
+
+    private int findDelimiter(int position) {
+        var last = limit - delimiter.length;
+        outer:
+        for (int i = position; i <= last; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean next() throws InvalidRequestException {
+        if (index < parts.size()) {
+            index++;
+        }
+        if (index < parts.size()) {
+            return true;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return parts.get(index).name;
+    }
+
+    @Override
+    public String getFileName() {
+        return parts.get(index).fileName;
+    }
+
+    @Override
+    public InputStream getPartStream() throws IOException {
+        return Files.newInputStream(parts.get(index).file);
+    }
+
+    @Override
+    public Path getPartFile() {
+        return parts.get(index).file;
+    }
+
+    //removes whatever parts weren't moved into the version
+    void delete() {
+        FileUtil.safeDeleteDirectory(spoolDir);
+    }
+}
@@ -0,0 +1,195 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.logging.Logger;
+
+import edu.wisc.library.ocfl.api.exception.FixityCheckException;
+import edu.wisc.library.ocfl.api.exception.OcflJavaException;
+import edu.wisc.library.ocfl.api.exception.OverwriteException;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+The /staged routes: changes are staged in the object's mutable HEAD, & committed later as one version (or
+ discarded). Staged writes go through the write queue, like regular writes.
+ */
+class StagedChangesHandler {
+
+    private static final Logger logger = Logger.getLogger("edu.brown.library.repository.ocflhttp");
+
+    private final OcflHttp http;
+
+    StagedChangesHandler(OcflHttp http) {
+        this.http = http;
+    }
+
+    //GET shows whether the object has staged changes, POST commits them, & DELETE discards them
+    void handleStaged(HttpServletRequest request,
+                      HttpServletResponse response,
+                      String objectId)
+            throws IOException {
+        var repo = http.repo;
+        var method = request.getMethod();
+        if (method.equals("GET")) {
+            if (repo.containsObject(objectId)) {
+                response.setContentType("application/json");
+                try (var generator = OcflHttp.JsonGenerators.createGenerator(response.getOutputStream())) {
+                    generator.writeStartObject();
+                    generator.write("staged", repo.hasStagedChanges(objectId));
+                    generator.writeEnd();
+                }
+            } else {
+                http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
+            }
+        } else if (method.equals("POST")) {
+            try {
+                var versionInfo = http.getVersionInfo(request);
+                http.writeQueue.run(objectId, () -> {
+                    if (!repo.containsObject(objectId)) {
+                        http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
+                    } else if (!repo.hasStagedChanges(objectId)) {
+                        http.setResponseError(response, HttpServletResponse.SC_CONFLICT, objectId + " has no staged changes");
+                    } else {
+                        repo.commitStagedChanges(objectId, versionInfo);
+                        response.setStatus(HttpServletResponse.SC_CREATED);
+                    }
+                });
+            } catch (InvalidRequestException e) {
+                http.setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            }
+        } else if (method.equals("DELETE")) {
+            http.writeQueue.run(objectId, () -> {
+                if (repo.containsObject(objectId)) {
+                    repo.purgeStagedChanges(objectId);
+                    response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+                } else {
+                    http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
+                }
+            });
+        } else {
+            http.setResponseError(response, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "");
+        }
+    }
+
+    //PUT stages files (or a rename) the same way PUT /files writes them - creating the object if it doesn't exist yet
+    void handleStagedFiles(HttpServletRequest request,
+                           HttpServletResponse response,
+                           String objectId)
+            throws IOException, ServletException {
+        if (!request.getMethod().equals("PUT")) {
+            http.setResponseError(response, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "");
+            return;
+        }
+        var repo = http.repo;
+        try {
+            var versionInfo = http.getVersionInfo(request);
+            var renameInfo = http.getRenameInfo(request);
+            if (renameInfo != null) {
+                stageRename(response, objectId, versionInfo, renameInfo.get("old"), renameInfo.get("new"));
+                return;
+            }
+            var files = http.getFiles(request);
+            try {
+                http.writeQueue.run(objectId, () -> {
+                    if (repo.containsObject(objectId)) {
+                        var headVersion = repo.describeVersion(ObjectVersionId.head(objectId));
+                        var existingFiles = new ArrayList<String>();
+                        files.forEach((fileName, inputStream) -> {
+                            if (headVersion.containsFile(fileName)) {
+                                existingFiles.add(fileName);
+                            }
+                        });
+                        if (!existingFiles.isEmpty() && !"true".equals(request.getParameter("updateExisting"))) {
+                            var msg = "files " + existingFiles + " already exist. Add updateExisting=true parameter to the URL to update them.";
+                            http.setResponseError(response, HttpServletResponse.SC_CONFLICT, msg);
+                            return;
+                        }
+                    }
+                    var metadataStreams = new LinkedHashMap<String, TechnicalMetadataInputStream>();
+                    files.forEach((fileName, inputStream) -> {
+                        metadataStreams.put(Normalizer.normalize(fileName, Normalizer.Form.NFC), OcflHttp.getMetadataStream(inputStream));
+                    });
+                    var timings = new IngestTimings(objectId);
+                    try {
+                        var stagedVersionId = repo.stageChanges(ObjectVersionId.head(objectId), versionInfo, updater -> {
+                            metadataStreams.forEach((fileNameNFC, metadataStream) -> {
+                                http.writeFile(updater, fileNameNFC, metadataStream, true, timings);
+                            });
+                        });
+                        OcflHttp.removeMovedSources(metadataStreams.values());
+                        http.recordTechnicalMetadata(stagedVersionId, metadataStreams);
+                        response.setStatus(HttpServletResponse.SC_CREATED);
+                    } catch (FixityCheckException e) {
+                        http.setResponseError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
+                    }
+                });
+            } finally {
+                http.closeFilesInputStreams(files);
+            }
+        } catch (InvalidRequestException e) {
+            logger.warning(e.getMessage());
+            http.setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException | OcflJavaException e) {
+            http.handleUploadException(response, e);
+        }
+    }
+
+    void stageRename(HttpServletResponse response, String objectId, VersionInfo versionInfo, String oldPath, String newPath)
+            throws IOException {
+        var repo = http.repo;
+        http.writeQueue.run(objectId, () -> {
+            if (repo.containsObject(objectId)) {
+                if (repo.describeVersion(ObjectVersionId.head(objectId)).containsFile(oldPath)) {
+                    try {
+                        repo.stageChanges(ObjectVersionId.head(objectId), versionInfo, updater -> {
+                            updater.renameFile(oldPath, newPath);
+                        });
+                        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+                    } catch (OverwriteException e) {
+                        http.setResponseError(response, HttpServletResponse.SC_CONFLICT, newPath + " already exists");
+                    }
+                } else {
+                    http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, oldPath + " doesn't exist");
+                }
+            } else {
+                http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " doesn't exist");
+            }
+        });
+    }
+
+    //DELETE stages removing the file
+    void handleStagedPath(HttpServletRequest request,
+                          HttpServletResponse response,
+                          String objectId,
+                          String path)
+            throws IOException {
+        if (!request.getMethod().equals("DELETE")) {
+            http.setResponseError(response, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "");
+            return;
+        }
+        var repo = http.repo;
+        try {
+            var versionInfo = http.getVersionInfo(request);
+            http.writeQueue.run(objectId, () -> {
+                if (!repo.containsObject(objectId)) {
+                    http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, objectId + " not found");
+                } else if (!repo.describeVersion(ObjectVersionId.head(objectId)).containsFile(path)) {
+                    http.setResponseError(response, HttpServletResponse.SC_NOT_FOUND, path + " not found");
+                } else {
+                    repo.stageChanges(ObjectVersionId.head(objectId), versionInfo, updater -> {
+                        updater.removeFile(path);
+                    });
+                    response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+                }
+            });
+        } catch (InvalidRequestException e) {
+            http.setResponseError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+}
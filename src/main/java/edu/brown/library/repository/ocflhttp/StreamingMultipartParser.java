@@ -0,0 +1,295 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Incremental multipart/form-data parser: it reads the request body one part at a time, and each part's body
+ is read straight from the request stream, so nothing gets spooled to disk or held in memory.
+Only handles what the upload API needs: the Content-Disposition name & filename of each part.
+ */
+class StreamingMultipartParser implements MultipartParts {
+
+    private static final int BufferSize = 65536;
+    private static final int MaxHeaderSize = 16384;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    //no delimiter starts before this index in the buffer, so we don't scan the same bytes on every read
+    private int scannedTo = 0;
+    private boolean eof = false;
+    private boolean finished = false;
+    private PartInputStream currentPart;
+    private String name;
+    private String fileName;
+
+    StreamingMultipartParser(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[BufferSize + delimiter.length];
+        //the first boundary doesn't need the CRLF in front of it - adding one lets us treat all the boundaries the same
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    static String getBoundary(String contentType) throws InvalidRequestException {
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                var parts = param.trim().split("=", 2);
+                if (parts.length == 2 && parts[0].trim().equalsIgnoreCase("boundary")) {
+                    var boundary = unquote(parts[1].trim());
+                    if (!boundary.isEmpty()) {
+                        return boundary;
+                    }
+                }
+            }
+        }
+        throw new InvalidRequestException("invalid multipart request: no boundary");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    /*
+    Moves to the next part, skipping anything left of the current part. Returns false when there are no more parts.
+     */
+    @Override
+    public boolean next() throws IOException, InvalidRequestException {
+        if (finished) {
+            return false;
+        }
+        if (currentPart == null) {
+            //skip the preamble
+            currentPart = new PartInputStream();
+        }
+        currentPart.skipToEnd();
+        position += delimiter.length;
+        if (!ensureAvailable(2)) {
+            throw new InvalidRequestException("invalid multipart request: unexpected end of body");
+        }
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            finished = true;
+            currentPart = null;
+            return false;
+        }
+        readHeaders();
+        currentPart = new PartInputStream();
+        return true;
+    }
+
+    @Override
+    public InputStream getPartStream() {
+        return currentPart;
+    }
+
+    private void readHeaders() throws IOException, InvalidRequestException {
+        //rest of the boundary line (normally just the CRLF)
+        readLine();
+        name = null;
+        fileName = null;
+        var headerSize = 0;
+        while (true) {
+            var line = readLine();
+            headerSize += line.length();
+            if (headerSize > MaxHeaderSize) {
+                throw new InvalidRequestException("invalid multipart request: headers too large");
+            }
+            if (line.isEmpty()) {
+                break;
+            }
+            var colon = line.indexOf(':');
+            if (colon != -1 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Disposition")) {
+                var params = parseParams(line.substring(colon + 1));
+                name = params.get("name");
+                fileName = params.get("filename");
+            }
+        }
+        if (fileName != null) {
+            for (int i = 0; i < fileName.length(); i++) {
+                if (Character.isISOControl(fileName.charAt(i))) {
+                    throw new InvalidRequestException("invalid character in filename");
+                }
+            }
+        }
+    }
+
+    private String readLine() throws IOException, InvalidRequestException {
+        var line = new ByteArrayOutputStream();
+        while (true) {
+            if (!ensureAvailable(1)) {
+                throw new InvalidRequestException("invalid multipart request: unexpected end of headers");
+            }
+            var b = buffer[position++];
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MaxHeaderSize) {
+                throw new InvalidRequestException("invalid multipart request: headers too large");
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    static Map<String, String> parseParams(String headerValue) {
+        var params = new HashMap<String, String>();
+        var i = 0;
+        var length = headerValue.length();
+        while (i < length) {
+            var semicolon = headerValue.indexOf(';', i);
+            var equals = headerValue.indexOf('=', i);
+            if (equals == -1 || (semicolon != -1 && semicolon < equals)) {
+                //a value without a name (eg. "form-data")
+                i = (semicolon == -1) ? length : semicolon + 1;
+                continue;
+            }
+            var paramName = headerValue.substring(i, equals).trim().toLowerCase();
+            var value = new StringBuilder();
+            i = equals + 1;
+            while (i < length && headerValue.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < length && headerValue.charAt(i) == '"') {
+                i++;
+                while (i < length && headerValue.charAt(i) != '"') {
+                    if (headerValue.charAt(i) == '\\' && i + 1 < length) {
+                        i++;
+                    }
+                    value.append(headerValue.charAt(i));
+                    i++;
+                }
+                semicolon = headerValue.indexOf(';', i);
+            } else {
+                semicolon = headerValue.indexOf(';', i);
+                var end = (semicolon == -1) ? length : semicolon;
+                value.append(headerValue.substring(i, end).trim());
+            }
+            params.put(paramName, value.toString());
+            i = (semicolon == -1) ? length : semicolon + 1;
+        }
+        return params;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private boolean ensureAvailable(int count) throws IOException {
+        while (limit - position < count) {
+            if (eof) {
+                return false;
+            }
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                scannedTo = Math.max(0, scannedTo - position);
+                position = 0;
+            }
+            var read = in.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return true;
+    }
+
+    private int findDelimiter() {
+        var last = limit - delimiter.length;
+        outer:
+        for (int i = Math.max(position, scannedTo); i <= last; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        scannedTo = Math.max(scannedTo, last + 1);
+        return -1;
+    }
+
+    /*
+    The body of the current part - returns -1 at the delimiter, and leaves the parser positioned on it.
+     */
+    private class PartInputStream extends InputStream {
+
+        private boolean done = false;
+
+        @Override
+        public int read() throws IOException {
+            var b = new byte[1];
+            var count = read(b, 0, 1);
+            return (count == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                ensureAvailable(delimiter.length);
+                var delimiterIndex = findDelimiter();
+                int available;
+                if (delimiterIndex != -1) {
+                    available = delimiterIndex - position;
+                    if (available == 0) {
+                        done = true;
+                        return -1;
+                    }
+                } else if (eof) {
+                    throw new IOException("invalid multipart request: unexpected end of body");
+                } else {
+                    //anything after this could be the start of the delimiter
+                    available = limit - position - (delimiter.length - 1);
+                    if (available <= 0) {
+                        //force a read of more data
+                        ensureAvailable(limit - position + 1);
+                        continue;
+                    }
+                }
+                var count = Math.min(len, available);
+                System.arraycopy(buffer, position, b, off, count);
+                position += count;
+                return count;
+            }
+        }
+
+        void skipToEnd() throws IOException {
+            var skipBuffer = new byte[8192];
+            while (read(skipBuffer, 0, skipBuffer.length) != -1) {
+                //discard
+            }
+        }
+
+        @Override
+        public void close() {
+            //the request stream belongs to the parser - the rest of the part is skipped by next()
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import edu.wisc.library.ocfl.api.io.FixityCheckInputStream;
+
+/*
+Wraps an uploaded file's stream, counting the bytes & keeping the start of the content as it goes through,
+ so we can record the size & mimetype of the file without reading it again after it's stored.
+If the client sent a checksum, the file is read through a FixityCheckInputStream on top of this one, so
+ ocfl-java gets that stream itself - it reuses its digest when the algorithms match & checks the fixity.
+ */
+class TechnicalMetadataInputStream extends FilterInputStream {
+
+    //files up to this size are kept whole, so detecting the mimetype sees exactly what it would see in the stored file
+    static final int HeadSize = 65536;
+
+    private final String clientMimetype;
+    private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+    private long size = 0;
+    private boolean skipped = false;
+    private FixityCheckInputStream fixityStream;
+    //for location files: the hard link that gets added to the version instead of reading this stream,
+    // & the original file, if it's removed after the version is committed
+    Path linkedPath;
+    Path movedSource;
+
+    TechnicalMetadataInputStream(InputStream in, String clientMimetype) {
+        super(in);
+        this.clientMimetype = clientMimetype;
+    }
+
+    void expectFixity(String checksumType, String checksum) {
+        fixityStream = new FixityCheckInputStream(this, checksumType, checksum);
+    }
+
+    FixityCheckInputStream getFixityStream() {
+        return fixityStream;
+    }
+
+    //the stream to read the content from
+    InputStream getUploadStream() {
+        return (fixityStream != null) ? fixityStream : this;
+    }
+
+    String getClientMimetype() {
+        return clientMimetype;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    boolean hasWholeContent() {
+        return !skipped && size <= HeadSize;
+    }
+
+    InputStream getContent() {
+        return new ByteArrayInputStream(head.toByteArray());
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = in.read();
+        if (b != -1) {
+            if (size < HeadSize) {
+                head.write(b);
+            }
+            size++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        var count = in.read(b, off, len);
+        if (count > 0) {
+            if (size < HeadSize) {
+                head.write(b, off, (int) Math.min(count, HeadSize - size));
+            }
+            size += count;
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var count = in.skip(n);
+        if (count > 0) {
+            skipped = true;
+            size += count;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
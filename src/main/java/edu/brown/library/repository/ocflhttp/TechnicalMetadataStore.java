@@ -0,0 +1,267 @@
+package edu.brown.library.repository.ocflhttp;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/*
+Size & mimetype of the files in each object, recorded as the files are ingested, so listings & HEAD requests
+ don't have to stat or open the content files.
+There's one file per object under the work directory, with a line appended for each version, keyed by content digest:
+    {"sha512-<digest>": {"size": 4, "mimetypes": {"file1": "text/plain"}}}
+ Later lines add to (or replace) the mimetypes of earlier ones.
+Once a file has more superseded entries than live ones (& at least compactThreshold), it's rewritten as a single
+ line of the merged entries, when it's loaded or appended to. The new file is written to a temp file & moved into
+ place, so a reader sees either the old file or the new one.
+The size only depends on the digest, and a mimetype only depends on the digest & the path, so an entry is
+ never wrong for an older version or after a rename - at worst it's missing, and the caller falls back to
+ looking at the content file. Objects written before this existed have no file at all.
+Files are read & written outside any synchronized block or cache compute, so a virtual thread doing the I/O
+ doesn't pin its carrier thread.
+ */
+class TechnicalMetadataStore {
+
+    static class FileMetadata {
+        final long size;
+        final Map<String, String> mimetypes;
+
+        FileMetadata(long size, Map<String, String> mimetypes) {
+            this.size = size;
+            this.mimetypes = mimetypes;
+        }
+    }
+
+    //an object's merged entries, & how many entries in its file they've replaced
+    static class ObjectFiles {
+        final Map<String, FileMetadata> files;
+        final int superseded;
+
+        ObjectFiles(Map<String, FileMetadata> files, int superseded) {
+            this.files = files;
+            this.superseded = superseded;
+        }
+    }
+
+    private static final Logger logger = Logger.getLogger("edu.brown.library.repository.ocflhttp");
+
+    private final Path metadataDir;
+    private final Cache<String, ObjectFiles> objects;
+    //one append (or rewrite) at a time to each object's file - ingests into different objects don't wait on each other
+    private final ObjectWriteQueue recordQueue = new ObjectWriteQueue();
+    int compactThreshold = 1000;
+
+    TechnicalMetadataStore(Path metadataDir, long maxWeight) throws IOException {
+        this.metadataDir = metadataDir;
+        Files.createDirectories(metadataDir);
+        this.objects = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String objectId, ObjectFiles objectFiles) -> 1 + objectFiles.files.size())
+                .build();
+    }
+
+    Path getMetadataPath(String objectId) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(objectId.getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return metadataDir.resolve(hex.substring(0, 2)).resolve(hex + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    FileMetadata get(String objectId, String digestKey) {
+        if (digestKey == null) {
+            return null;
+        }
+        var objectFiles = objects.getIfPresent(objectId);
+        if (objectFiles == null) {
+            objectFiles = load(objectId);
+            //record() always puts what it wrote, so if it got in first, keep its entry
+            var existing = objects.asMap().putIfAbsent(objectId, objectFiles);
+            if (existing != null) {
+                objectFiles = existing;
+            } else if (needsCompacting(objectFiles)) {
+                try {
+                    recordQueue.run(objectId, () -> compact(objectId));
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "couldn't compact technical metadata for " + objectId, e);
+                }
+            }
+        }
+        return objectFiles.files.get(digestKey);
+    }
+
+    ObjectFiles load(String objectId) {
+        try {
+            return read(objectId);
+        } catch (NoSuchFileException e) {
+            //object was written before we recorded technical metadata
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "couldn't read technical metadata for " + objectId, e);
+        }
+        return new ObjectFiles(new HashMap<>(), 0);
+    }
+
+    //unlike load(), this throws if the file can't be read, so a rewrite never drops what it couldn't read
+    ObjectFiles read(String objectId) throws IOException {
+        var files = new HashMap<String, FileMetadata>();
+        var superseded = 0;
+        try (var reader = Files.newBufferedReader(getMetadataPath(objectId), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try (var jsonReader = Json.createReader(new StringReader(line))) {
+                    var lineFiles = parse(jsonReader.readObject());
+                    superseded += countSuperseded(files, lineFiles);
+                    merge(files, lineFiles);
+                } catch (JsonException e) {
+                    //eg. a line that's still being appended - its files fall back to the content
+                    logger.log(Level.WARNING, "skipping unreadable technical metadata for " + objectId + ": " + e.getMessage());
+                }
+            }
+        }
+        return new ObjectFiles(files, superseded);
+    }
+
+    static Map<String, FileMetadata> parse(JsonObject object) {
+        var files = new HashMap<String, FileMetadata>();
+        for (Map.Entry<String, JsonValue> entry : object.entrySet()) {
+            var info = entry.getValue().asJsonObject();
+            var mimetypes = new HashMap<String, String>();
+            var mimetypesInfo = info.getJsonObject("mimetypes");
+            if (mimetypesInfo != null) {
+                mimetypesInfo.forEach((path, mimetype) -> mimetypes.put(path, ((JsonString) mimetype).getString()));
+            }
+            files.put(entry.getKey(), new FileMetadata(info.getJsonNumber("size").longValue(), mimetypes));
+        }
+        return files;
+    }
+
+    static Map<String, FileMetadata> merge(Map<String, FileMetadata> files, Map<String, FileMetadata> newFiles) {
+        newFiles.forEach((digestKey, metadata) -> {
+            var mimetypes = new HashMap<String, String>();
+            var existing = files.get(digestKey);
+            if (existing != null) {
+                mimetypes.putAll(existing.mimetypes);
+            }
+            mimetypes.putAll(metadata.mimetypes);
+            files.put(digestKey, new FileMetadata(metadata.size, mimetypes));
+        });
+        return files;
+    }
+
+    static int countSuperseded(Map<String, FileMetadata> files, Map<String, FileMetadata> newFiles) {
+        var superseded = 0;
+        for (String digestKey : newFiles.keySet()) {
+            if (files.containsKey(digestKey)) {
+                superseded++;
+            }
+        }
+        return superseded;
+    }
+
+    static String toJsonLine(Map<String, FileMetadata> files) {
+        var builder = Json.createObjectBuilder();
+        files.forEach((digestKey, metadata) -> {
+            var mimetypesBuilder = Json.createObjectBuilder();
+            metadata.mimetypes.forEach(mimetypesBuilder::add);
+            builder.add(digestKey, Json.createObjectBuilder()
+                    .add("size", metadata.size)
+                    .add("mimetypes", mimetypesBuilder));
+        });
+        var line = new StringWriter();
+        try (var writer = Json.createWriter(line)) {
+            writer.writeObject(builder.build());
+        }
+        return line.toString();
+    }
+
+    boolean needsCompacting(ObjectFiles objectFiles) {
+        return objectFiles.superseded >= compactThreshold && objectFiles.superseded > objectFiles.files.size();
+    }
+
+    //must be run on the object's recordQueue, so no append is lost - if it fails, the file is left as it was
+    void compact(String objectId) {
+        try {
+            //re-read the file, since the cached entry can be missing lines that were appended while it was loading
+            var merged = read(objectId);
+            if (merged.superseded == 0) {
+                return;
+            }
+            var path = getMetadataPath(objectId);
+            var tmpPath = Files.createTempFile(path.getParent(), "technical-metadata", ".tmp");
+            try {
+                Files.writeString(tmpPath, toJsonLine(merged.files) + "\n", StandardCharsets.UTF_8);
+                Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmpPath);
+            }
+            objects.asMap().computeIfPresent(objectId, (id, objectFiles) -> new ObjectFiles(merged.files, 0));
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "couldn't compact technical metadata for " + objectId, e);
+        }
+    }
+
+    void record(String objectId, Map<String, FileMetadata> newFiles) throws IOException {
+        if (newFiles.isEmpty()) {
+            return;
+        }
+        var line = toJsonLine(newFiles);
+        var path = getMetadataPath(objectId);
+        recordQueue.run(objectId, () -> {
+            Files.createDirectories(path.getParent());
+            try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                var size = channel.size();
+                var data = new StringBuilder();
+                if (size > 0) {
+                    //a line that was cut off (eg. by a crash) gets its own line, so it doesn't spoil this one
+                    var last = ByteBuffer.allocate(1);
+                    channel.read(last, size - 1);
+                    if (last.get(0) != '\n') {
+                        data.append('\n');
+                    }
+                }
+                data.append(line).append('\n');
+                var buffer = ByteBuffer.wrap(data.toString().getBytes(StandardCharsets.UTF_8));
+                var position = size;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            //only update an entry that's already loaded - otherwise the next get() reads the whole file
+            var objectFiles = objects.asMap().computeIfPresent(objectId, (id, existing) -> new ObjectFiles(
+                    merge(new HashMap<>(existing.files), newFiles),
+                    existing.superseded + countSuperseded(existing.files, newFiles)));
+            if (objectFiles != null && needsCompacting(objectFiles)) {
+                compact(objectId);
+            }
+        });
+    }
+}
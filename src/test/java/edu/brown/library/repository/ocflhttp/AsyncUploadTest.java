@@ -0,0 +1,155 @@
+package edu.brown.library.repository.ocflhttp;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+/*
+Runs all the upload tests again with async uploads turned on, plus a test with clients that send their bodies slowly,
+ & a few tests of the spooling itself.
+ */
+public class AsyncUploadTest extends MultipleFilesUploadTest {
+
+    @BeforeEach
+    private void enableAsyncUploads() {
+        ocflHttp.asyncUploads = true;
+    }
+
+    @Test
+    public void testSlowUploaders() throws Exception {
+        //more uploads than the pool has threads, each with only part of its body sent
+        var uploaders = 70;
+        var sockets = new ArrayList<Socket>();
+        var bodyStart = "--" + boundary + "\r\n" +
+                paramsContentDisposition + "\r\n" +
+                "\r\n" +
+                "{}\r\n" +
+                "--" + boundary + "\r\n" +
+                file1ContentDisposition + "\r\n" +
+                "\r\n" +
+                "first half,";
+        var bodyEnd = " second half\r\n" +
+                "--" + boundary + "--";
+        var bodyLength = (bodyStart + bodyEnd).getBytes(StandardCharsets.UTF_8).length;
+        try {
+            for (int i = 0; i < uploaders; i++) {
+                var socket = new Socket("localhost", 8000);
+                var head = "POST /" + encodedObjectId + i + "/files HTTP/1.1\r\n" +
+                        "Host: localhost\r\n" +
+                        "Content-Type: " + contentTypeHeader + "\r\n" +
+                        "Content-Length: " + bodyLength + "\r\n" +
+                        "\r\n";
+                socket.getOutputStream().write((head + bodyStart).getBytes(StandardCharsets.UTF_8));
+                socket.getOutputStream().flush();
+                sockets.add(socket);
+            }
+            var deadline = System.currentTimeMillis() + 10000;
+            while (ocflHttp.metrics.getUploads() < uploaders && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(uploaders, ocflHttp.metrics.getUploads());
+            //waiting on the rest of the bodies doesn't take any threads
+            deadline = System.currentTimeMillis() + 10000;
+            while (ocflHttp.metrics.getUploadThreads() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(0, ocflHttp.metrics.getUploadThreads());
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/metrics")).build();
+            var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertTrue(response.body().contains("ocfl_http_uploads_in_flight " + uploaders + "\n"), response.body());
+            Assertions.assertTrue(response.body().contains("ocfl_http_upload_threads 0\n"), response.body());
+
+            for (Socket socket : sockets) {
+                socket.getOutputStream().write(bodyEnd.getBytes(StandardCharsets.UTF_8));
+                socket.getOutputStream().flush();
+            }
+            for (Socket socket : sockets) {
+                var statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+                Assertions.assertEquals("HTTP/1.1 201 Created", statusLine);
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        for (int i = 0; i < uploaders; i++) {
+            try (var stream = ocflHttp.repo.getObject(ObjectVersionId.head(objectIdNFC + i)).getFile(file1NameNFC).getStream()) {
+                Assertions.assertEquals("first half, second half", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        Assertions.assertEquals(0, ocflHttp.metrics.getUploads());
+        //the spool files are removed once they're ingested
+        try (Stream<?> stream = Files.list(workDir.resolve("uploads"))) {
+            Assertions.assertEquals(0, stream.count());
+        }
+    }
+
+    @Test
+    public void testSpooledParts() throws Exception {
+        //boundary-like bytes in the content, & chunks that end in the middle of the delimiter & the headers
+        var body = ("preamble\r\n--xyz\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"a \\\"b\\\".txt\"\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "\r\n" +
+                "line1\r\n--xy\r\n-xyz" + "\r\n" +
+                "--xyz\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n" +
+                "\r\n" +
+                "\r\n" +
+                "--xyz--\r\n" +
+                "epilogue").getBytes(StandardCharsets.UTF_8);
+        for (int chunkSize : new int[] {1, 3, 7, body.length}) {
+            var spoolDir = Files.createTempDirectory(workDir, "spool");
+            var parts = new SpooledMultipart(spoolDir, "xyz");
+            for (int i = 0; i < body.length; i += chunkSize) {
+                parts.write(body, i, Math.min(chunkSize, body.length - i));
+            }
+            parts.finish();
+            Assertions.assertTrue(parts.next());
+            Assertions.assertEquals("files", parts.getName());
+            Assertions.assertEquals("a \"b\".txt", parts.getFileName());
+            Assertions.assertEquals("line1\r\n--xy\r\n-xyz", Files.readString(parts.getPartFile()));
+            Assertions.assertTrue(parts.next());
+            Assertions.assertEquals("params", parts.getName());
+            Assertions.assertNull(parts.getFileName());
+            Assertions.assertEquals("", new String(parts.getPartStream().readAllBytes(), StandardCharsets.UTF_8));
+            Assertions.assertFalse(parts.next());
+            Assertions.assertFalse(parts.next());
+            parts.delete();
+            Assertions.assertFalse(Files.exists(spoolDir));
+        }
+    }
+
+    @Test
+    public void testSpooledPartsCutOff() throws Exception {
+        var body = ("--xyz\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n" +
+                "\r\n" +
+                "{}\r\n" +
+                "--xyz\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n" +
+                "\r\n" +
+                "the rest is missing").getBytes(StandardCharsets.UTF_8);
+        var parts = new SpooledMultipart(Files.createTempDirectory(workDir, "spool"), "xyz");
+        parts.write(body, 0, body.length);
+        parts.finish();
+        //the complete part is there, then the error
+        Assertions.assertTrue(parts.next());
+        Assertions.assertEquals("params", parts.getName());
+        Assertions.assertThrows(InvalidRequestException.class, parts::next);
+        parts.delete();
+    }
+}
@@ -0,0 +1,90 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+
+import edu.wisc.library.ocfl.api.OcflOption;
+import edu.wisc.library.ocfl.api.OcflRepository;
+import edu.wisc.library.ocfl.api.model.DigestAlgorithm;
+import edu.wisc.library.ocfl.api.model.FileChangeType;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import edu.wisc.library.ocfl.core.OcflRepositoryBuilder;
+import edu.wisc.library.ocfl.core.extension.storage.layout.config.HashedNTupleIdEncapsulationLayoutConfig;
+import edu.wisc.library.ocfl.core.storage.filesystem.FileSystemOcflStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class FileHistoryIndexTest {
+
+    Path tmpRoot;
+    Path workDir;
+    OcflRepository repo;
+    String objectId = "testsuite:1";
+
+    @BeforeEach
+    private void setup() throws Exception {
+        tmpRoot = Files.createTempDirectory("ocfl-java-http");
+        workDir = Files.createTempDirectory("ocfl-work");
+        repo = new OcflRepositoryBuilder()
+                .defaultLayoutConfig(new HashedNTupleIdEncapsulationLayoutConfig())
+                .storage(FileSystemOcflStorage.builder().repositoryRoot(tmpRoot).build())
+                .workDir(workDir)
+                .build();
+    }
+
+    @AfterEach
+    private void teardown() throws Exception {
+        TestUtils.deleteDirectory(tmpRoot);
+        TestUtils.deleteDirectory(workDir);
+    }
+
+    private void write(String path, String contents) {
+        repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)), path, OcflOption.OVERWRITE);
+        });
+    }
+
+    @Test
+    public void testMatchesFileChangeHistory() throws Exception {
+        write("file1", "data"); //v1
+        write("file2", "data"); //v2 - file1 unchanged
+        write("file1", "new data"); //v3 - file1 updated
+        repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.removeFile("file2");
+        }); //v4
+        write("file3", "file3 data"); //v5
+        repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.removeFile("file3");
+        }); //v6
+
+        var index = FileHistoryIndex.build(repo.describeObject(objectId));
+        for (String path : new String[]{"file1", "file2", "file3"}) {
+            var history = repo.fileChangeHistory(objectId, path);
+            var mostRecent = history.getMostRecent();
+            var entry = index.get(path);
+            Assertions.assertEquals(mostRecent.getTimestamp().withOffsetSameInstant(ZoneOffset.UTC), entry.lastModified);
+            Assertions.assertEquals(mostRecent.getChangeType() != FileChangeType.REMOVE, entry.active);
+            var it = history.getReverseChangeIterator();
+            while (it.hasNext()) {
+                var change = it.next();
+                if (!change.getChangeType().equals(FileChangeType.REMOVE)) {
+                    Assertions.assertEquals(change.getStorageRelativePath(), entry.storageRelativePath);
+                    Assertions.assertEquals(change.getFixity().get(DigestAlgorithm.sha512), entry.fixity.get(DigestAlgorithm.sha512));
+                    break;
+                }
+            }
+        }
+        Assertions.assertEquals("A", index.get("file1").getState());
+        Assertions.assertEquals("D", index.get("file2").getState());
+        Assertions.assertEquals(2, index.getDeletedFiles().size());
+        Assertions.assertTrue(index.everContained("file3"));
+        Assertions.assertFalse(index.everContained("file4"));
+        Assertions.assertNull(index.get("file4"));
+    }
+}
@@ -0,0 +1,217 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import org.eclipse.jetty.server.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class GroupCommitTest {
+
+    Server server;
+    OcflHttp ocflHttp;
+    Path tmpRoot;
+    Path workDir;
+    HttpClient client;
+    String objectId = "testsuite:group";
+    String boundary = "AaB03x";
+
+    @BeforeEach
+    private void setup() throws Exception {
+        tmpRoot = Files.createTempDirectory("ocfl-java-http-tests");
+        workDir = Files.createTempDirectory("ocfl-java-http-tests-work");
+        var config = OcflHttpConfig.of(tmpRoot, workDir, OcflHttpConfig.DEFAULT_FILE_SIZE_THRESHOLD, List.of());
+        config.groupCommitWindowMillis = 500;
+        ocflHttp = new OcflHttp(config);
+        server = OcflHttp.getServer(8000, 8, 60);
+        server.setHandler(ocflHttp);
+        server.start();
+        client = HttpClient.newHttpClient();
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("existing".getBytes(StandardCharsets.UTF_8)), "existing.txt");
+        });
+    }
+
+    @AfterEach
+    private void teardown() throws Exception {
+        server.stop();
+        TestUtils.deleteDirectory(tmpRoot);
+        TestUtils.deleteDirectory(workDir);
+    }
+
+    CompletableFuture<HttpResponse<String>> put(String fileName, String contents, String params, String query) {
+        var multipartData = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n" +
+                "\r\n" +
+                params + "\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"" + fileName + "\"\r\n" +
+                "\r\n" +
+                contents + "\r\n" +
+                "--" + boundary + "--";
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/" + objectId + "/files?" + query))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .PUT(HttpRequest.BodyPublishers.ofString(multipartData)).build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testPutsBatchedIntoOneVersion() throws Exception {
+        var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(put("file" + i + ".txt", "contents " + i, "{}", "message=adding%20file" + i + "&userName=bot&userAddress=bot%40school.edu"));
+        }
+        for (var response : responses) {
+            Assertions.assertEquals(201, response.get().statusCode(), response.get().body());
+        }
+        var object = ocflHttp.repo.getObject(ObjectVersionId.head(objectId));
+        Assertions.assertEquals("v2", object.getVersionNum().toString());
+        for (int i = 0; i < 10; i++) {
+            try (var stream = object.getFile("file" + i + ".txt").getStream()) {
+                Assertions.assertEquals("contents " + i, new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            Assertions.assertTrue(object.getVersionInfo().getMessage().contains("adding file" + i));
+        }
+        Assertions.assertEquals("bot", object.getVersionInfo().getUser().getName());
+        Assertions.assertEquals(1, ocflHttp.groupCommits.committer.getBatches());
+        Assertions.assertEquals(10, ocflHttp.groupCommits.committer.getBatchedWrites());
+        //technical metadata was recorded from the staged files
+        Assertions.assertEquals("text/plain", ocflHttp.getFileMimetype(objectId, "file0.txt",
+                object.getFile("file0.txt").getFixity(), tmpRoot.resolve(object.getFile("file0.txt").getStorageRelativePath())));
+    }
+
+    @Test
+    public void testFailuresOnlyFailTheirOwnPut() throws Exception {
+        var ok = put("new.txt", "new", "{}", "");
+        var conflict = put("existing.txt", "changed", "{}", "");
+        var badChecksum = put("checked.txt", "data", "{\"checked.txt\": {\"checksumType\": \"MD5\", \"checksum\": \"abcd\"}}", "");
+        var updated = put("updated.txt", "updated", "{}", "updateExisting=true");
+        Assertions.assertEquals(201, ok.get().statusCode());
+        Assertions.assertEquals(409, conflict.get().statusCode());
+        Assertions.assertTrue(conflict.get().body().contains("already exist"), conflict.get().body());
+        Assertions.assertEquals(409, badChecksum.get().statusCode());
+        Assertions.assertEquals(201, updated.get().statusCode());
+        var headVersion = ocflHttp.repo.describeVersion(ObjectVersionId.head(objectId));
+        Assertions.assertEquals("v2", headVersion.getVersionNum().toString());
+        Assertions.assertTrue(headVersion.containsFile("new.txt"));
+        Assertions.assertTrue(headVersion.containsFile("updated.txt"));
+        Assertions.assertFalse(headVersion.containsFile("checked.txt"));
+        try (var stream = ocflHttp.repo.getObject(ObjectVersionId.head(objectId)).getFile("existing.txt").getStream()) {
+            Assertions.assertEquals("existing", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSameFileGoesInTheNextBatch() throws Exception {
+        var first = put("file.txt", "first", "{}", "updateExisting=true");
+        var deadline = System.currentTimeMillis() + 5000;
+        while (ocflHttp.groupCommits.committer.getOpenWrites(objectId) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        var second = put("file.txt", "second", "{}", "updateExisting=true");
+        Assertions.assertEquals(201, first.get().statusCode());
+        Assertions.assertEquals(201, second.get().statusCode());
+        Assertions.assertEquals(2, ocflHttp.groupCommits.committer.getBatches());
+        var object = ocflHttp.repo.getObject(ObjectVersionId.head(objectId));
+        Assertions.assertEquals("v3", object.getVersionNum().toString());
+        try (var stream = object.getFile("file.txt").getStream()) {
+            Assertions.assertEquals("second", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testFileAndDirectoryInOneBatch() throws Exception {
+        var file = put("a", "file", "{}", "");
+        var deadline = System.currentTimeMillis() + 5000;
+        while (ocflHttp.groupCommits.committer.getOpenWrites(objectId) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        //joins the same batch, but a can't be a file & a directory
+        var directory = put("a/b", "under a", "{}", "");
+        var invalid = put("x//y", "empty segment", "{}", "");
+        Assertions.assertEquals(201, file.get().statusCode(), file.get().body());
+        Assertions.assertEquals(400, directory.get().statusCode());
+        Assertions.assertTrue(directory.get().body().contains("conflicts with the existing path a"), directory.get().body());
+        Assertions.assertEquals(400, invalid.get().statusCode());
+        Assertions.assertEquals(1, ocflHttp.groupCommits.committer.getBatches());
+        Assertions.assertEquals(0, ocflHttp.groupCommits.committer.getRetriedBatches());
+        var headVersion = ocflHttp.repo.describeVersion(ObjectVersionId.head(objectId));
+        Assertions.assertEquals("v2", headVersion.getVersionNum().toString());
+        Assertions.assertTrue(headVersion.containsFile("a"));
+        Assertions.assertFalse(headVersion.containsFile("a/b"));
+    }
+
+    @Test
+    public void testFailedBatchRetriedOneWriteAtATime() throws Exception {
+        //a failure the checks don't catch - the batch fails, then only the bad write fails on its own
+        var committed = new ArrayList<List<String>>();
+        var groupCommitter = new GroupCommitter(200, (id, writes) -> {
+            var fileNames = new ArrayList<String>();
+            writes.forEach(write -> fileNames.addAll(write.fileIndexes.keySet()));
+            if (fileNames.contains("bad.txt")) {
+                throw new IllegalStateException("bad write");
+            }
+            committed.add(fileNames);
+            return ObjectVersionId.version(id, committed.size());
+        });
+        var results = new ArrayList<CompletableFuture<ObjectVersionId>>();
+        for (String fileName : List.of("one.txt", "bad.txt", "two.txt")) {
+            var write = new GroupCommitter.Write(Map.of(fileName, 0), null, new VersionInfo(), false);
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return groupCommitter.submit(objectId, write);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            var deadline = System.currentTimeMillis() + 5000;
+            while (groupCommitter.getOpenWrites(objectId) <= results.size() - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+        Assertions.assertNotNull(results.get(0).get());
+        var failure = Assertions.assertThrows(ExecutionException.class, () -> results.get(1).get());
+        Assertions.assertEquals("bad write", failure.getCause().getMessage());
+        Assertions.assertNotNull(results.get(2).get());
+        Assertions.assertEquals(1, groupCommitter.getBatches());
+        Assertions.assertEquals(1, groupCommitter.getRetriedBatches());
+        Assertions.assertEquals(List.of(List.of("one.txt"), List.of("two.txt")), committed);
+    }
+
+    @Test
+    public void testCommitOffTheRequestThread() throws Exception {
+        //the submitting thread only waits - the window & the commit run elsewhere, & an Error still wakes it
+        var commitThreads = new ArrayList<String>();
+        var groupCommitter = new GroupCommitter(50, (id, writes) -> {
+            commitThreads.add(Thread.currentThread().getName());
+            if (writes.get(0).fileIndexes.containsKey("error.txt")) {
+                throw new AssertionError("commit error");
+            }
+            return ObjectVersionId.version(id, 2);
+        });
+        var write = new GroupCommitter.Write(Map.of("a.txt", 0), null, new VersionInfo(), false);
+        Assertions.assertEquals(ObjectVersionId.version(objectId, 2), groupCommitter.submit(objectId, write));
+        Assertions.assertTrue(commitThreads.get(0).startsWith("ocfl-group-commit-"), commitThreads.toString());
+        var errorWrite = new GroupCommitter.Write(Map.of("error.txt", 0), null, new VersionInfo(), false);
+        var failure = Assertions.assertThrows(IllegalStateException.class, () -> groupCommitter.submit(objectId, errorWrite));
+        Assertions.assertTrue(failure.getMessage().contains("didn't finish"), failure.getMessage());
+    }
+}
@@ -0,0 +1,61 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import edu.wisc.library.ocfl.api.model.DigestAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MimetypeCacheTest {
+
+    Path tmpDir;
+    Map<DigestAlgorithm, String> fixity = Map.of(DigestAlgorithm.sha512, "ABCDEF0123");
+
+    @BeforeEach
+    private void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("ocfl-java-http");
+    }
+
+    @AfterEach
+    private void teardown() throws Exception {
+        TestUtils.deleteDirectory(tmpDir);
+    }
+
+    @Test
+    public void testNameKey() {
+        Assertions.assertEquals(".xml", MimetypeCache.getNameKey("dir/MODS.xml"));
+        Assertions.assertEquals("RELS-EXT", MimetypeCache.getNameKey("RELS-EXT"));
+        Assertions.assertEquals("sha512-abcdef0123", MimetypeCache.getDigestKey(fixity));
+        Assertions.assertNull(MimetypeCache.getDigestKey(Map.of()));
+    }
+
+    @Test
+    public void testCachedByDigestAndExtension() throws Exception {
+        var filePath = tmpDir.resolve("file");
+        Files.writeString(filePath, "<?xml version=\"1.0\"?><a/>", StandardCharsets.UTF_8);
+        var cache = new MimetypeCache(100, null);
+        Assertions.assertEquals("application/xml", cache.getContentType(fixity, "file1.xml", filePath));
+        //same digest & extension - the file isn't opened again
+        Files.delete(filePath);
+        Assertions.assertEquals("application/xml", cache.getContentType(fixity, "other.xml", filePath));
+        Assertions.assertEquals(1, cache.getStats().hitCount());
+    }
+
+    @Test
+    public void testPersisted() throws Exception {
+        var filePath = tmpDir.resolve("file");
+        Files.writeString(filePath, "some text", StandardCharsets.UTF_8);
+        var persistDir = tmpDir.resolve("mimetype-cache");
+        var cache = new MimetypeCache(100, persistDir);
+        Assertions.assertEquals("text/plain", cache.getContentType(fixity, "file1", filePath));
+        //a new cache (eg. after a restart) reads the entry from disk
+        Files.delete(filePath);
+        var newCache = new MimetypeCache(100, persistDir);
+        Assertions.assertEquals("text/plain", newCache.getContentType(fixity, "file1", filePath));
+    }
+}
@@ -9,7 +9,9 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.json.Json;
 import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -18,10 +20,18 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.text.Normalizer;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
 public class MultipleFilesUploadTest {
 
     Server server;
@@ -366,6 +376,44 @@ public class MultipleFilesUploadTest {
         Assertions.assertEquals("someoneelse@school.edu", user.getAddress());
     }
 
+    @Test
+    public void testIngesterClosedOnStop() throws Exception {
+        var config = OcflHttpConfig.of(tmpRoot, workDir, OcflHttpConfig.DEFAULT_FILE_SIZE_THRESHOLD, List.of());
+        config.ingestThreads = 2;
+        var handler = new OcflHttp(config);
+        handler.start();
+        var ingester = handler.ingester;
+        handler.stop();
+        Assertions.assertTrue(ingester.isClosed());
+        Assertions.assertNull(handler.ingester);
+        //a restart gets a new pool
+        handler.start();
+        Assertions.assertFalse(handler.ingester.isClosed());
+        handler.stop();
+    }
+
+    @Test
+    public void testParallelIngest() throws Exception {
+        var ingestDir = workDir.resolve("ingest");
+        ocflHttp.ingester = new ParallelIngester(4, ingestDir);
+        try {
+            //a fixity failure in one file must abort the whole version
+            testInvalidChecksum();
+            Assertions.assertEquals(2, ocflHttp.repo.describeObject(objectId).getVersionMap().size());
+            ocflHttp.repo.purgeObject(objectId);
+            testUploadMultipleFilesPostAndPut();
+            //the digests computed while staging end up in the inventory
+            var file2Details = ocflHttp.repo.describeVersion(ObjectVersionId.head(objectId)).getFile("file2.txt");
+            var expectedDigest = DigestAlgorithm.sha512.getMessageDigest().digest("... new contents of file2.txt...".getBytes(StandardCharsets.UTF_8));
+            Assertions.assertEquals(String.format("%0128x", new BigInteger(1, expectedDigest)), file2Details.getFixity().get(DigestAlgorithm.sha512));
+            try (Stream stream = Files.list(ingestDir)) {
+                Assertions.assertEquals(0, stream.count());
+            }
+        } finally {
+            ocflHttp.ingester.close();
+        }
+    }
+
     @Test
     public void testCreatedParam() throws Exception {
         //missing created value
@@ -579,6 +627,64 @@ public class MultipleFilesUploadTest {
         }
     }
 
+    @Test
+    public void testLocationLinkAndMove() throws Exception {
+        var linkDir = Files.createDirectories(workDir.resolve("link-uploads"));
+        var moveDir = Files.createDirectories(workDir.resolve("move-uploads"));
+        ocflHttp.locationLinker = new LocationLinker(workDir.resolve("ingest"),
+                Map.of(linkDir, OcflHttpConfig.IngestMode.LINK, moveDir, OcflHttpConfig.IngestMode.MOVE));
+        var file1Contents = "... contents of linked file ...";
+        var file1Path = Files.write(linkDir.resolve("file1.txt"), file1Contents.getBytes(StandardCharsets.UTF_8));
+        var file1Md5 = String.format("%032x", new BigInteger(1, MessageDigest.getInstance("MD5").digest(file1Contents.getBytes(StandardCharsets.UTF_8))));
+        var file2Contents = "... contents of moved file ...";
+        var file2Path = Files.write(moveDir.resolve("file2.txt"), file2Contents.getBytes(StandardCharsets.UTF_8));
+        var file2Sha512 = String.format("%0128x", new BigInteger(1, DigestAlgorithm.sha512.getMessageDigest().digest(file2Contents.getBytes(StandardCharsets.UTF_8))));
+        var uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files");
+
+        //a bad checksum on the moved file - nothing gets ingested, & the original stays where it was
+        var multipartData = "--" + boundary + "\r\n" +
+                paramsContentDisposition + "\r\n" +
+                "\r\n" +
+                "{\"file1.txt\": {\"location\": \"" + file1Path.toUri() + "\"}, " +
+                "\"file2.txt\": {\"location\": \"" + file2Path.toUri() + "\", \"checksum\": \"a\", \"checksumType\": \"SHA-512\"}}\r\n" +
+                "--" + boundary + "--";
+        var request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", contentTypeHeader)
+                .POST(HttpRequest.BodyPublishers.ofString(multipartData)).build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(409, response.statusCode());
+        Assertions.assertFalse(ocflHttp.repo.containsObject(objectId));
+        Assertions.assertEquals(file2Contents, Files.readString(file2Path));
+        try (Stream stream = Files.list(workDir.resolve("ingest"))) {
+            Assertions.assertEquals(0, stream.count());
+        }
+
+        multipartData = "--" + boundary + "\r\n" +
+                paramsContentDisposition + "\r\n" +
+                "\r\n" +
+                "{\"file1.txt\": {\"location\": \"" + file1Path.toUri() + "\", \"checksum\": \"" + file1Md5 + "\"}, " +
+                "\"file2.txt\": {\"location\": \"" + file2Path.toUri() + "\", \"checksum\": \"" + file2Sha512 + "\", \"checksumType\": \"SHA-512\"}}\r\n" +
+                "--" + boundary + "--";
+        request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", contentTypeHeader)
+                .POST(HttpRequest.BodyPublishers.ofString(multipartData)).build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(201, response.statusCode());
+        var version = ocflHttp.repo.describeVersion(ObjectVersionId.head(objectId));
+        //the linked file is the same file as the content file in the repository
+        var file1Details = version.getFile("file1.txt");
+        Assertions.assertTrue(Files.isSameFile(file1Path, tmpRoot.resolve(file1Details.getStorageRelativePath())));
+        Assertions.assertEquals(file2Sha512, version.getFile("file2.txt").getFixity().get(DigestAlgorithm.sha512));
+        Assertions.assertFalse(Files.exists(file2Path));
+        try (var stream = ocflHttp.repo.getObject(ObjectVersionId.head(objectId)).getFile("file2.txt").getStream()) {
+            Assertions.assertEquals(file2Contents, new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (Stream stream = Files.list(workDir.resolve("ingest"))) {
+            Assertions.assertEquals(0, stream.count());
+        }
+        Assertions.assertEquals(file1Contents.length(), ocflHttp.technicalMetadata.get(objectId, MimetypeCache.getDigestKey(file1Details.getFixity())).size);
+    }
+
     @Test
     public void testLargerFile() throws Exception {
         var jettyDir = workDir.resolve("jetty");
@@ -612,6 +718,50 @@ public class MultipleFilesUploadTest {
         }
     }
 
+    @Test
+    public void testTechnicalMetadataRecorded() throws Exception {
+        var uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files");
+        var file1Contents = "... contents of first file ...";
+        var file2Contents = "...contents of file2.txt...";
+        var multipartData = "--" + boundary + "\r\n" +
+                paramsContentDisposition + "\r\n" +
+                "\r\n" +
+                "{\"" + file1Name + "\": {\"mimetype\": \"application/x-custom\"}}" + "\r\n" +
+                "--" + boundary + "\r\n" +
+                file1ContentDisposition + "\r\n" +
+                "\r\n" +
+                file1Contents + "\r\n" +
+                "--" + boundary + "\r\n" +
+                file2ContentDisposition + "\r\n" +
+                "\r\n" +
+                file2Contents + "\r\n" +
+                "--" + boundary + "--";
+        var request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", contentTypeHeader)
+                .POST(HttpRequest.BodyPublishers.ofString(multipartData)).build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(201, response.statusCode());
+        Assertions.assertTrue(Files.exists(ocflHttp.technicalMetadata.getMetadataPath(objectIdNFC)));
+
+        //the listing uses the recorded size & mimetype, instead of looking at the content files
+        var file2Path = tmpRoot.resolve(ocflHttp.repo.describeVersion(ObjectVersionId.head(objectIdNFC)).getFile("file2.txt").getStorageRelativePath());
+        file2Path.toFile().setWritable(true);
+        Files.writeString(file2Path, "<?xml changed", StandardCharsets.UTF_8);
+        uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files?fields=size,mimetype");
+        response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        var filesJson = Json.createReader(new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8))).readObject().getJsonObject("files");
+        Assertions.assertEquals("application/x-custom", filesJson.getJsonObject(file1NameNFC).getString("mimetype"));
+        Assertions.assertEquals(file1Contents.length(), filesJson.getJsonObject(file1NameNFC).getInt("size"));
+        Assertions.assertEquals("text/plain", filesJson.getJsonObject("file2.txt").getString("mimetype"));
+        Assertions.assertEquals(file2Contents.length(), filesJson.getJsonObject("file2.txt").getInt("size"));
+
+        uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files/" + encodedFile1NameNFC + "/content");
+        response = client.send(HttpRequest.newBuilder(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("application/x-custom", response.headers().firstValue("Content-Type").get());
+    }
+
     @Test
     public void testRenameObjectDoesntExist() throws Exception {
         var uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files?message=adding%20multiple%20files&userName=someone&userAddress=someone%40school.edu");
@@ -669,6 +819,7 @@ public class MultipleFilesUploadTest {
 
     @Test
     public void testRename() throws Exception {
+        ocflHttp.serverTiming = true;
         ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
             updater.writeFile(new ByteArrayInputStream("asdf".getBytes(StandardCharsets.UTF_8)), "file1.txt");
         });
@@ -683,6 +834,12 @@ public class MultipleFilesUploadTest {
                 .PUT(HttpRequest.BodyPublishers.ofString(multipartData)).build();
         var response = client.send(request, HttpResponse.BodyHandlers.ofString());
         Assertions.assertEquals(204, response.statusCode());
+        //a rename is timed & counted like any other ingest
+        var serverTiming = response.headers().firstValue("Server-Timing").get();
+        Assertions.assertTrue(serverTiming.startsWith("ingest-receive;"), serverTiming);
+        Assertions.assertTrue(serverTiming.contains("ingest-commit;"), serverTiming);
+        Assertions.assertEquals(1, ocflHttp.metrics.getIngestCount(IngestTimings.Phase.RECEIVE));
+        Assertions.assertEquals(1, ocflHttp.metrics.getIngestCount(IngestTimings.Phase.COMMIT));
         var object = ocflHttp.repo.getObject(ObjectVersionId.head(objectId));
         var files = object.getFiles();
         Assertions.assertEquals(1, files.size());
@@ -698,4 +855,92 @@ public class MultipleFilesUploadTest {
         Assertions.assertEquals("someone", user.getName());
         Assertions.assertEquals("someone@school.edu", user.getAddress());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIngestTimings() throws Exception {
+        ocflHttp.serverTiming = true;
+        var uri = URI.create("http://localhost:8000/" + objectId + "/files");
+        var file1Contents = "... contents of first file ...";
+        var multipartData = "--" + boundary + "\r\n" +
+                paramsContentDisposition + "\r\n" +
+                "\r\n" +
+                "{}" + "\r\n" +
+                "--" + boundary + "\r\n" +
+                file1ContentDisposition + "\r\n" +
+                "\r\n" +
+                file1Contents + "\r\n" +
+                "--" + boundary + "--";
+        var request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", contentTypeHeader)
+                .POST(HttpRequest.BodyPublishers.ofString(multipartData)).build();
+        var recordingFile = workDir.resolve("ingest.jfr");
+        HttpResponse<String> response;
+        try (var recording = new Recording()) {
+            recording.enable(IngestPhaseEvent.class);
+            recording.start();
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        Assertions.assertEquals(201, response.statusCode());
+        var serverTiming = response.headers().firstValue("Server-Timing").get();
+        Assertions.assertTrue(serverTiming.startsWith("ingest-receive;desc=\"" + multipartData.getBytes(StandardCharsets.UTF_8).length + " bytes\";dur="), serverTiming);
+        Assertions.assertTrue(serverTiming.contains("ingest-write;desc=\"" + file1Contents.length() + " bytes\";dur="), serverTiming);
+        Assertions.assertTrue(serverTiming.contains("ingest-commit;"), serverTiming);
+        Assertions.assertTrue(serverTiming.contains("ingest-metadata;"), serverTiming);
+        Assertions.assertFalse(serverTiming.contains("ingest-stage;"), serverTiming);
+        Assertions.assertEquals(1, ocflHttp.metrics.getIngestCount(IngestTimings.Phase.WRITE));
+        Assertions.assertEquals(0, ocflHttp.metrics.getIngestCount(IngestTimings.Phase.STAGE));
+
+        List<String> phases = new ArrayList<>();
+        for (var event : RecordingFile.readAllEvents(recordingFile)) {
+            if (event.getEventType().getName().equals("edu.brown.library.repository.ocflhttp.IngestPhase")) {
+                Assertions.assertEquals(objectIdNFC, Normalizer.normalize(event.getString("objectId"), Normalizer.Form.NFC));
+                phases.add(event.getString("phase"));
+            }
+        }
+        Assertions.assertEquals(List.of("receive", "write", "commit", "metadata"), phases);
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("first".getBytes(StandardCharsets.UTF_8)), "file0.txt");
+        });
+        var uri = URI.create("http://localhost:8000/" + objectId + "/files");
+        var puts = 10;
+        var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+        for (int i = 1; i <= puts; i++) {
+            var multipartData = "--" + boundary + "\r\n" +
+                    paramsContentDisposition + "\r\n" +
+                    "\r\n" +
+                    "{}" + "\r\n" +
+                    "--" + boundary + "\r\n" +
+                    "Content-Disposition: form-data; name=\"files\"; filename=\"file" + i + ".txt\"" + "\r\n" +
+                    "\r\n" +
+                    "contents " + i + "\r\n" +
+                    "--" + boundary + "--";
+            var request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", contentTypeHeader)
+                    .PUT(HttpRequest.BodyPublishers.ofString(multipartData)).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        //they take turns, instead of failing with ObjectOutOfSyncException
+        for (var response : responses) {
+            Assertions.assertEquals(201, response.get().statusCode(), response.get().body());
+        }
+        var headVersion = ocflHttp.repo.describeVersion(ObjectVersionId.head(objectIdNFC));
+        Assertions.assertEquals("v" + (puts + 1), headVersion.getVersionNum().toString());
+        for (int i = 0; i <= puts; i++) {
+            Assertions.assertTrue(headVersion.containsFile("file" + i + ".txt"));
+        }
+        Assertions.assertEquals(puts, ocflHttp.writeQueue.getWaitCount());
+        Assertions.assertEquals(0, ocflHttp.writeQueue.getWaiting());
+        Assertions.assertEquals(0, ocflHttp.writeQueue.getObjects());
+
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/metrics")).build();
+        var body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        Assertions.assertTrue(body.contains("ocfl_http_write_queue_depth 0\n"), body);
+        Assertions.assertTrue(body.contains("ocfl_http_write_queue_wait_seconds_count " + puts + "\n"), body);
+    }
+}
@@ -1,6 +1,7 @@
 package edu.brown.library.repository.ocflhttp;
 
 import java.io.ByteArrayInputStream;
+import java.net.Socket;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -12,6 +13,8 @@ import java.nio.file.Path;
 import java.text.Normalizer;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 import edu.wisc.library.ocfl.api.model.ObjectVersionId;
 import edu.wisc.library.ocfl.api.model.VersionInfo;
@@ -180,6 +183,33 @@ public class OcflHttpTest {
         Assertions.assertNull(objectJson);
     }
 
+    @Test
+    public void testGetFilesObjectCache() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), "file1");
+        });
+        var url = "http://localhost:8000/" + encodedObjectId + "/files";
+        var request = HttpRequest.newBuilder(URI.create(url)).build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        var missCount = ocflHttp.objectCache.getStats().missCount();
+        var hitCount = ocflHttp.objectCache.getStats().hitCount();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals(missCount, ocflHttp.objectCache.getStats().missCount());
+        Assertions.assertTrue(ocflHttp.objectCache.getStats().hitCount() > hitCount);
+
+        //a write to the object has to show up in the next read
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), "file2");
+        });
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        var responseJson = Json.createReader(new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8))).readObject();
+        Assertions.assertEquals("v2", responseJson.getString("version"));
+        Assertions.assertTrue(responseJson.getJsonObject("files").containsKey("file2"));
+    }
+
     @Test
     public void testGetVersionFilesNoObject() throws Exception {
         var url = "http://localhost:8000/" + encodedObjectId + "/v1/files";
@@ -290,6 +320,92 @@ public class OcflHttpTest {
         Assertions.assertTrue(filesJson.containsKey("file2"));
     }
 
+    @Test
+    public void testGetFilesNdjson() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), "file1");
+        });
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.removeFile("file1");
+            updater.writeFile(new ByteArrayInputStream("file2 data".getBytes(StandardCharsets.UTF_8)), fileName);
+        });
+        var url = "http://localhost:8000/" + encodedObjectId + "/files?" + OcflHttp.IncludeDeletedParameter + "=true&fields=state,size&objectTimestamps=true";
+        var request = HttpRequest.newBuilder(URI.create(url)).header("Accept", OcflHttp.NdjsonContentType).build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals(OcflHttp.NdjsonContentType, response.headers().firstValue("Content-Type").get());
+        var lines = response.body().split("\n");
+        Assertions.assertEquals(3, lines.length);
+        var header = Json.createReader(new ByteArrayInputStream(lines[0].getBytes(StandardCharsets.UTF_8))).readObject();
+        Assertions.assertEquals("v2", header.getString("version"));
+        Assertions.assertTrue(header.getJsonObject("object").getString("created").endsWith("Z"));
+        var file2Json = Json.createReader(new ByteArrayInputStream(lines[1].getBytes(StandardCharsets.UTF_8))).readObject();
+        Assertions.assertEquals(fileName, file2Json.getString("path"));
+        Assertions.assertEquals("A", file2Json.getString("state"));
+        Assertions.assertEquals(10, file2Json.getInt("size"));
+        var file1Json = Json.createReader(new ByteArrayInputStream(lines[2].getBytes(StandardCharsets.UTF_8))).readObject();
+        Assertions.assertEquals("file1", file1Json.getString("path"));
+        Assertions.assertEquals("D", file1Json.getString("state"));
+        Assertions.assertEquals(4, file1Json.getInt("size"));
+    }
+
+    @Test
+    public void testGetFilesPaging() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            for (String path : new String[]{"file3", "file1", "file5", "file2"}) {
+                updater.writeFile(new ByteArrayInputStream(path.getBytes(StandardCharsets.UTF_8)), path);
+            }
+        });
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.removeFile("file2");
+            updater.writeFile(new ByteArrayInputStream("file4".getBytes(StandardCharsets.UTF_8)), "file4");
+        });
+        var baseUrl = "http://localhost:8000/" + encodedObjectId + "/files?" + OcflHttp.LimitParameter + "=2&fields=state";
+        var paths = new ArrayList<String>();
+        var url = baseUrl;
+        var pages = 0;
+        while (true) {
+            var response = client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+            Assertions.assertEquals(200, response.statusCode());
+            JsonObject responseJson = Json.createReader(new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8))).readObject();
+            Assertions.assertEquals("v2", responseJson.getString("version"));
+            paths.addAll(responseJson.getJsonObject("files").keySet());
+            pages++;
+            if (!responseJson.containsKey("nextCursor")) {
+                break;
+            }
+            url = baseUrl + "&" + OcflHttp.CursorParameter + "=" + responseJson.getString("nextCursor");
+        }
+        Assertions.assertEquals(2, pages);
+        Assertions.assertEquals(Arrays.asList("file1", "file3", "file4", "file5"), paths);
+
+        //include deleted files in the pages
+        baseUrl = "http://localhost:8000/" + encodedObjectId + "/files?" + OcflHttp.LimitParameter + "=3&fields=state&" + OcflHttp.IncludeDeletedParameter + "=true";
+        var response = client.send(HttpRequest.newBuilder(URI.create(baseUrl)).build(), HttpResponse.BodyHandlers.ofString());
+        JsonObject responseJson = Json.createReader(new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8))).readObject();
+        var filesJson = responseJson.getJsonObject("files");
+        Assertions.assertEquals(Arrays.asList("file1", "file2", "file3"), new ArrayList<>(filesJson.keySet()));
+        Assertions.assertEquals("D", filesJson.getJsonObject("file2").getString("state"));
+        url = baseUrl + "&" + OcflHttp.CursorParameter + "=" + responseJson.getString("nextCursor");
+        response = client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+        responseJson = Json.createReader(new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8))).readObject();
+        Assertions.assertEquals(Arrays.asList("file4", "file5"), new ArrayList<>(responseJson.getJsonObject("files").keySet()));
+        Assertions.assertFalse(responseJson.containsKey("nextCursor"));
+
+        //earlier version
+        url = "http://localhost:8000/" + encodedObjectId + "/v1/files?" + OcflHttp.LimitParameter + "=10";
+        response = client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+        responseJson = Json.createReader(new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8))).readObject();
+        Assertions.assertEquals(Arrays.asList("file1", "file2", "file3", "file5"), new ArrayList<>(responseJson.getJsonObject("files").keySet()));
+
+        //invalid params
+        for (String query : new String[]{OcflHttp.LimitParameter + "=0", OcflHttp.LimitParameter + "=abc", OcflHttp.CursorParameter + "=***"}) {
+            url = "http://localhost:8000/" + encodedObjectId + "/files?" + query;
+            response = client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+            Assertions.assertEquals(400, response.statusCode());
+        }
+    }
+
     @Test
     public void testGetAllFilesFields() throws Exception {
         //add file1
@@ -489,6 +605,35 @@ public class OcflHttpTest {
         Assertions.assertEquals(416, response.statusCode());
     }
 
+    @Test
+    public void testGetFileContentLargeFileRanges() throws Exception {
+        //bigger than jetty's output buffer, so the content goes out in multiple writes
+        var contents = new byte[300000];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) (i % 251);
+        }
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream(contents), "largefile");
+        });
+        var uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files/largefile/content");
+        var request = HttpRequest.newBuilder(uri).GET().build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertArrayEquals(contents, response.body());
+
+        request = HttpRequest.newBuilder(uri).header("Range", "bytes=1000-250999").GET().build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertEquals(206, response.statusCode());
+        Assertions.assertEquals("250000", response.headers().firstValue("Content-Length").get());
+        Assertions.assertEquals("bytes 1000-250999/300000", response.headers().firstValue("Content-Range").get());
+        Assertions.assertArrayEquals(Arrays.copyOfRange(contents, 1000, 251000), response.body());
+
+        request = HttpRequest.newBuilder(uri).header("Range", "bytes=299990-").GET().build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertEquals(206, response.statusCode());
+        Assertions.assertArrayEquals(Arrays.copyOfRange(contents, 299990, 300000), response.body());
+    }
+
     @Test
     public void testGetFileContentWrongMethod() throws Exception {
         var url = "http://localhost:8000/" + encodedObjectId + "/files/file1/content";
@@ -641,4 +786,225 @@ public class OcflHttpTest {
         var response = client.send(request, HttpResponse.BodyHandlers.ofString());
         Assertions.assertEquals(404, response.statusCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCoalescedListings() throws Exception {
+        ocflHttp.listings.coalescer = new RequestCoalescer();
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)),"file1");
+        });
+        var url = "http://localhost:8000/" + encodedObjectId + "/files?fields=size,mimetype,state&objectTimestamps=true";
+        var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        var body = responses.get(0).get().body();
+        for (var response : responses) {
+            Assertions.assertEquals(200, response.get().statusCode());
+            Assertions.assertEquals("application/json", response.get().headers().firstValue("Content-Type").get());
+            Assertions.assertEquals(body, response.get().body());
+        }
+        //every request either rendered the listing, shared one that was already being rendered, or got it from the cache
+        Assertions.assertEquals(20, ocflHttp.listings.coalescer.getRendered() + ocflHttp.listings.coalescer.getCollapsed() + ocflHttp.listings.responseCache.getStats().hitCount());
+        var reordered = "http://localhost:8000/" + encodedObjectId + "/files?objectTimestamps=true&fields=size,mimetype,state";
+        Assertions.assertEquals(body, client.send(HttpRequest.newBuilder(URI.create(reordered)).build(), HttpResponse.BodyHandlers.ofString()).body());
+
+        //the key has the head version, so a write changes the listing
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)),"file2");
+        });
+        var newBody = client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString()).body();
+        Assertions.assertTrue(newBody.contains("file2"), newBody);
+        var response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8000/testsuite:nonexistent/versions")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(404, response.statusCode());
+
+        response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8000/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.body().contains("ocfl_http_coalesced_requests_total " + ocflHttp.listings.coalescer.getCollapsed() + "\n"), response.body());
+    }
+
+    @Test
+    public void testResponseCache() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)),"file1");
+        });
+        var filesUrl = URI.create("http://localhost:8000/" + encodedObjectId + "/files?fields=size,mimetype");
+        var versionsUrl = URI.create("http://localhost:8000/" + encodedObjectId + "/versions");
+        var files = client.send(HttpRequest.newBuilder(filesUrl).build(), HttpResponse.BodyHandlers.ofString());
+        var versions = client.send(HttpRequest.newBuilder(versionsUrl).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(0, ocflHttp.listings.responseCache.getStats().hitCount());
+        Assertions.assertEquals(2, ocflHttp.listings.responseCache.getEntries());
+
+        //hits are the same bytes, without any storage calls
+        var describeCalls = ocflHttp.storage.getCalls(InstrumentedOcflRepository.Method.describeObject);
+        var response = client.send(HttpRequest.newBuilder(filesUrl).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("application/json", response.headers().firstValue("Content-Type").get());
+        Assertions.assertEquals(files.body(), response.body());
+        Assertions.assertEquals(versions.body(), client.send(HttpRequest.newBuilder(versionsUrl).build(), HttpResponse.BodyHandlers.ofString()).body());
+        Assertions.assertEquals(2, ocflHttp.listings.responseCache.getStats().hitCount());
+        Assertions.assertEquals(describeCalls, ocflHttp.storage.getCalls(InstrumentedOcflRepository.Method.describeObject));
+        //errors aren't cached
+        client.send(HttpRequest.newBuilder(URI.create("http://localhost:8000/testsuite:nonexistent/files")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(2, ocflHttp.listings.responseCache.getEntries());
+
+        //a write drops the object's responses
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/" + encodedObjectId + "/files/file1")).DELETE().build();
+        Assertions.assertEquals(204, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assertions.assertEquals(0, ocflHttp.listings.responseCache.getEntries());
+        response = client.send(HttpRequest.newBuilder(filesUrl).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(410, response.statusCode());
+
+        response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8000/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.body().contains("ocfl_http_response_cache_requests_total{result=\"hit\"} 2\n"), response.body());
+    }
+
+    @Test
+    public void testListingTooBigToBuffer() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)),"file1");
+        });
+        var url = URI.create("http://localhost:8000/" + encodedObjectId + "/files?fields=size,mimetype");
+        var body = client.send(HttpRequest.newBuilder(url).build(), HttpResponse.BodyHandlers.ofString()).body();
+        ocflHttp.listings.responseCache.invalidateAll();
+        ocflHttp.listings.coalescer = new RequestCoalescer();
+        ocflHttp.listings.maxBufferedBytes = 20;
+
+        //streamed, & not cached - requests that waited on one still get the whole listing
+        var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(url).build(), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (var response : responses) {
+            Assertions.assertEquals(200, response.get().statusCode());
+            Assertions.assertEquals("application/json", response.get().headers().firstValue("Content-Type").get());
+            Assertions.assertEquals(body, response.get().body());
+        }
+        Assertions.assertEquals(0, ocflHttp.listings.responseCache.getEntries());
+        //one that fits is cached
+        ocflHttp.listings.maxBufferedBytes = 1024;
+        Assertions.assertEquals(body, client.send(HttpRequest.newBuilder(url).build(), HttpResponse.BodyHandlers.ofString()).body());
+        Assertions.assertEquals(1, ocflHttp.listings.responseCache.getEntries());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)),"file1");
+        });
+        var contentUrl = "http://localhost:8000/" + encodedObjectId + "/files/file1/content";
+        var response = client.send(HttpRequest.newBuilder(URI.create(contentUrl)).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8000/not-found")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(404, response.statusCode());
+
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/metrics")).build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertTrue(response.headers().firstValue("Content-Type").get().startsWith("text/plain; version=0.0.4"));
+        var body = response.body();
+        Assertions.assertTrue(body.contains("ocfl_http_requests_total{route=\"content\",status=\"200\"} 1\n"), body);
+        Assertions.assertTrue(body.contains("ocfl_http_requests_total{route=\"not_found\",status=\"404\"} 1\n"), body);
+        Assertions.assertTrue(body.contains("ocfl_http_request_duration_seconds_bucket{route=\"content\",le=\"+Inf\"} 1\n"), body);
+        Assertions.assertTrue(body.contains("ocfl_http_response_bytes_total{route=\"content\"} 4\n"), body);
+        //the metrics request itself
+        Assertions.assertTrue(body.contains("ocfl_http_requests_in_flight 1\n"), body);
+        Assertions.assertTrue(body.contains("ocfl_http_threads_max 60\n"), body);
+
+        request = HttpRequest.newBuilder(URI.create("http://localhost:8000/metrics")).POST(HttpRequest.BodyPublishers.ofString("")).build();
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(405, response.statusCode());
+        Assertions.assertEquals(1, ocflHttp.metrics.getRequestCount(RequestMetrics.Route.METRICS, 405));
+    }
+
+    @Test
+    public void testAsyncDownloads() throws Exception {
+        ocflHttp.asyncDownloads = true;
+        var contents = new byte[16 * 1024 * 1024];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) i;
+        }
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream(contents),"bigfile");
+        });
+        var uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files/bigfile/content");
+        var response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertArrayEquals(contents, response.body());
+        response = client.send(HttpRequest.newBuilder(uri).header("Range", "bytes=100000-199999").build(), HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertEquals(206, response.statusCode());
+        Assertions.assertArrayEquals(Arrays.copyOfRange(contents, 100000, 200000), response.body());
+        //the last chunk can reach the client just before the writer finishes
+        var finishDeadline = System.currentTimeMillis() + 10000;
+        while (ocflHttp.metrics.getAsyncDownloads() > 0 && System.currentTimeMillis() < finishDeadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, ocflHttp.metrics.getAsyncDownloads());
+        Assertions.assertEquals(1, ocflHttp.metrics.getRequestCount(RequestMetrics.Route.CONTENT, 200));
+
+        //more clients that never read than the pool has threads - they shouldn't hold any of them
+        var sockets = new ArrayList<Socket>();
+        try {
+            for (int i = 0; i < 70; i++) {
+                var socket = new Socket("localhost", 8000);
+                socket.getOutputStream().write(("GET /" + encodedObjectId + "/files/bigfile/content HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                sockets.add(socket);
+            }
+            var deadline = System.currentTimeMillis() + 10000;
+            while (ocflHttp.metrics.getAsyncDownloads() < 70 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(70, ocflHttp.metrics.getAsyncDownloads());
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/" + encodedObjectId + "/files")).build();
+            Assertions.assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        var deadline = System.currentTimeMillis() + 10000;
+        while (ocflHttp.metrics.getAsyncDownloads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, ocflHttp.metrics.getAsyncDownloads());
+
+        //same responses with async downloads off
+        ocflHttp.asyncDownloads = false;
+        response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+        Assertions.assertArrayEquals(contents, response.body());
+    }
+
+    @Test
+    public void testServerTiming() throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)),"file1");
+        });
+        var url = "http://localhost:8000/" + encodedObjectId + "/files";
+        var request = HttpRequest.newBuilder(URI.create(url)).build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.headers().firstValue("Server-Timing").isEmpty());
+
+        ocflHttp.serverTiming = true;
+        ocflHttp.objectCache.invalidate(objectId);
+        var describeCalls = ocflHttp.storage.getCalls(InstrumentedOcflRepository.Method.describeObject);
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        var serverTiming = response.headers().firstValue("Server-Timing").get();
+        Assertions.assertTrue(serverTiming.startsWith("describeObject;desc=\"1 call\";dur="), serverTiming);
+        Assertions.assertTrue(serverTiming.contains(", total;dur="), serverTiming);
+        Assertions.assertEquals(describeCalls + 1, ocflHttp.storage.getCalls(InstrumentedOcflRepository.Method.describeObject));
+
+        //served from the object cache, so no storage calls
+        response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.headers().firstValue("Server-Timing").get().startsWith("total;dur="));
+
+        //a response without a body
+        var deleteUrl = "http://localhost:8000/" + encodedObjectId + "/files/file1";
+        response = client.send(HttpRequest.newBuilder(URI.create(deleteUrl)).DELETE().build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(204, response.statusCode());
+        Assertions.assertTrue(response.headers().firstValue("Server-Timing").get().contains("updateObject;desc=\"1 call\""));
+
+        response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:8000/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(response.body().contains("ocfl_http_storage_duration_seconds_count{method=\"updateObject\"} 2\n"), response.body());
+        Assertions.assertTrue(response.body().contains("ocfl_http_storage_errors_total{method=\"updateObject\"} 0\n"), response.body());
+    }
+}
@@ -113,6 +113,7 @@ public class RepoInitTest {
         //test no args - just defaults
         var config = new OcflHttpConfig();
         Assertions.assertEquals(OcflHttpConfig.DEFAULT_PORT, config.port);
+        Assertions.assertFalse(config.asyncDownloads);
 
         //test config file
         var filePath = Path.of(workDir.toString(), "config.json");
@@ -123,5 +124,20 @@ public class RepoInitTest {
         config = new OcflHttpConfig(args);
         Assertions.assertTrue(config.allowedUploadDirs.contains(tmp));
         Assertions.assertTrue(config.allowedUploadDirs.contains(userDir));
+        Assertions.assertFalse(config.asyncDownloads);
+
+        //link mode shares the file with the producer, so it has to be acknowledged explicitly
+        var linkDir = tmp.toString().replace("\\", "\\\\");
+        configJson = "{\"OCFL-ROOT\": \"" + linkDir + "\", \"ALLOWED-UPLOAD-DIRS\": [{\"PATH\": \"" + linkDir + "\", \"INGEST_MODE\": \"link\"}]}";
+        Files.write(filePath, configJson.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new OcflHttpConfig(args));
+        configJson = "{\"OCFL-ROOT\": \"" + linkDir + "\", \"ALLOWED-UPLOAD-DIRS\": [{\"PATH\": \"" + linkDir + "\", \"INGEST_MODE\": \"link\", \"ALLOW_SHARED_INODE\": true}]}";
+        Files.write(filePath, configJson.getBytes(StandardCharsets.UTF_8));
+        config = new OcflHttpConfig(args);
+        Assertions.assertEquals(OcflHttpConfig.IngestMode.LINK, config.uploadDirIngestModes.get(tmp));
+        configJson = "{\"OCFL-ROOT\": \"" + linkDir + "\", \"ALLOWED-UPLOAD-DIRS\": [{\"PATH\": \"" + linkDir + "\", \"INGEST_MODE\": \"move\"}]}";
+        Files.write(filePath, configJson.getBytes(StandardCharsets.UTF_8));
+        config = new OcflHttpConfig(args);
+        Assertions.assertEquals(OcflHttpConfig.IngestMode.MOVE, config.uploadDirIngestModes.get(tmp));
     }
 }
@@ -0,0 +1,108 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RequestCoalescerTest {
+
+    static BufferedResponse.Rendered rendered(String body) {
+        return new BufferedResponse.Rendered(200, "application/json", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneRender() throws Exception {
+        var coalescer = new RequestCoalescer();
+        var release = new CountDownLatch(1);
+        var leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return coalescer.run("key", () -> {
+                    await(release);
+                    return rendered("{}");
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (coalescer.getInFlight() == 0) {
+            Thread.sleep(5);
+        }
+        var followers = new ArrayList<CompletableFuture<BufferedResponse.Rendered>>();
+        for (int i = 0; i < 5; i++) {
+            followers.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return coalescer.run("key", () -> {
+                        throw new IllegalStateException("should have waited for the first request");
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        while (coalescer.getCollapsed() < 5) {
+            Thread.sleep(5);
+        }
+        //a different key doesn't wait
+        Assertions.assertEquals("[]", new String(coalescer.run("other", () -> rendered("[]")).body, StandardCharsets.UTF_8));
+        release.countDown();
+        var response = leader.get();
+        for (var follower : followers) {
+            Assertions.assertSame(response, follower.get());
+        }
+        Assertions.assertEquals(2, coalescer.getRendered());
+        Assertions.assertEquals(5, coalescer.getCollapsed());
+        Assertions.assertEquals(0, coalescer.getInFlight());
+        //once it's done, the next request renders again
+        Assertions.assertNotSame(response, coalescer.run("key", () -> rendered("{}")));
+    }
+
+    @Test
+    public void testFailureIsShared() throws Exception {
+        var coalescer = new RequestCoalescer();
+        var release = new CountDownLatch(1);
+        var leader = CompletableFuture.runAsync(() -> {
+            try {
+                coalescer.run("key", () -> {
+                    await(release);
+                    throw new IOException("storage failed");
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (coalescer.getInFlight() == 0) {
+            Thread.sleep(5);
+        }
+        var follower = CompletableFuture.runAsync(() -> {
+            try {
+                coalescer.run("key", () -> rendered("{}"));
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        while (coalescer.getCollapsed() < 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        Assertions.assertThrows(ExecutionException.class, leader::get);
+        var e = Assertions.assertThrows(ExecutionException.class, follower::get);
+        Assertions.assertEquals("storage failed", e.getCause().getMessage());
+        Assertions.assertEquals(0, coalescer.getInFlight());
+    }
+}
@@ -0,0 +1,44 @@
+package edu.brown.library.repository.ocflhttp;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RequestMetricsTest {
+
+    @Test
+    public void testGetRoute() {
+        var router = new RequestRouter();
+        var files = router.match("/testsuite:1/files");
+        var content = router.match("/testsuite:1/v1/files/file.txt/content");
+        Assertions.assertEquals(RequestMetrics.Route.ROOT, RequestMetrics.getRoute("/", "GET", null));
+        Assertions.assertEquals(RequestMetrics.Route.METRICS, RequestMetrics.getRoute("/metrics", "GET", null));
+        Assertions.assertEquals(RequestMetrics.Route.NOT_FOUND, RequestMetrics.getRoute("/testsuite:1", "GET", null));
+        Assertions.assertEquals(RequestMetrics.Route.FILES, RequestMetrics.getRoute("/testsuite:1/files", "GET", files));
+        Assertions.assertEquals(RequestMetrics.Route.POST, RequestMetrics.getRoute("/testsuite:1/files", "POST", files));
+        Assertions.assertEquals(RequestMetrics.Route.PUT, RequestMetrics.getRoute("/testsuite:1/files", "PUT", files));
+        Assertions.assertEquals(RequestMetrics.Route.CONTENT, RequestMetrics.getRoute("", "HEAD", content));
+        Assertions.assertEquals(RequestMetrics.Route.OTHER, RequestMetrics.getRoute("", "OPTIONS", content));
+    }
+
+    @Test
+    public void testHistogram() {
+        var metrics = new RequestMetrics();
+        metrics.requestStarted();
+        metrics.requestFinished(RequestMetrics.Route.CONTENT, 200, 2_000_000, 0, 100);
+        metrics.requestStarted();
+        metrics.requestFinished(RequestMetrics.Route.CONTENT, 206, 120_000_000_000L, 0, 50);
+        var builder = new StringBuilder();
+        metrics.write(builder, null);
+        var output = builder.toString();
+        Assertions.assertTrue(output.contains("ocfl_http_request_duration_seconds_bucket{route=\"content\",le=\"0.001\"} 0\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_request_duration_seconds_bucket{route=\"content\",le=\"0.0025\"} 1\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_request_duration_seconds_bucket{route=\"content\",le=\"60.0\"} 1\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_request_duration_seconds_bucket{route=\"content\",le=\"+Inf\"} 2\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_request_duration_seconds_sum{route=\"content\"} 120.002\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_request_duration_seconds_count{route=\"content\"} 2\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_requests_total{route=\"content\",status=\"206\"} 1\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_response_bytes_total{route=\"content\"} 150\n"));
+        Assertions.assertTrue(output.contains("ocfl_http_requests_in_flight 0\n"));
+        Assertions.assertEquals(1, metrics.getRequestCount(RequestMetrics.Route.CONTENT, 200));
+    }
+}
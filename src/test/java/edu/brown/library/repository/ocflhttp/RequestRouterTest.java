@@ -0,0 +1,117 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RequestRouterTest {
+
+    //the regexes the handler used before the router - the router has to accept & reject exactly the same paths
+    static final String objectIdRegex = "[-:_. %a-zA-Z0-9]+";
+    static final String fileNameRegex = "[-:_. %a-zA-Z0-9]+";
+    static final List<Pattern> Patterns = List.of(
+            Pattern.compile("^/(" + objectIdRegex + ")/files$"),
+            Pattern.compile("^/(" + objectIdRegex + ")/files/(" + fileNameRegex + ")/content$"),
+            Pattern.compile("^/(" + objectIdRegex + ")/files/(" + fileNameRegex + ")$"),
+            Pattern.compile("^/(" + objectIdRegex + ")/v([0-9]+)/files/(" + fileNameRegex + ")/content$"),
+            Pattern.compile("^/(" + objectIdRegex + ")/v([0-9]+)/files$"),
+            Pattern.compile("^/(" + objectIdRegex + ")/versions$"));
+    static final List<RequestRouter.Route> Routes = List.of(
+            RequestRouter.Route.OBJECT_FILES,
+            RequestRouter.Route.OBJECT_PATH_CONTENT,
+            RequestRouter.Route.OBJECT_PATH,
+            RequestRouter.Route.OBJECT_VERSION_PATH_CONTENT,
+            RequestRouter.Route.OBJECT_VERSION_FILES,
+            RequestRouter.Route.OBJECT_VERSIONS);
+
+    static String decode(String segment) {
+        return Normalizer.normalize(URLDecoder.decode(segment, StandardCharsets.UTF_8), Normalizer.Form.NFC);
+    }
+
+    @Test
+    public void testSameAsRegexes() {
+        var segments = List.of("testsuite:1", "files", "content", "versions", "v1", "v23", "v", "vx", "file.txt",
+                "n%C3%A2ti%C3%B4n", "na%CC%82tio%CC%82n.txt", "a%2Fb", "a b", "", "a+b", "a/b", "ü", "..");
+        var paths = new ArrayList<String>();
+        paths.add("/");
+        paths.add("");
+        paths.add("files");
+        for (String s1 : segments) {
+            paths.add("/" + s1);
+            for (String s2 : segments) {
+                paths.add("/" + s1 + "/" + s2);
+                for (String s3 : segments) {
+                    paths.add("/" + s1 + "/" + s2 + "/" + s3);
+                }
+            }
+        }
+        for (String s1 : List.of("testsuite:1", "a%2Fb", "files")) {
+            for (String s2 : List.of("files", "v2", "versions")) {
+                for (String s3 : List.of("files", "content", "file.txt")) {
+                    for (String s4 : segments) {
+                        paths.add("/" + s1 + "/" + s2 + "/" + s3 + "/" + s4);
+                        paths.add("/" + s1 + "/" + s2 + "/" + s3 + "/" + s4 + "/content");
+                        paths.add("/" + s1 + "/" + s2 + "/" + s3 + "/" + s4 + "/content/");
+                    }
+                }
+            }
+        }
+        var router = new RequestRouter();
+        for (String path : paths) {
+            var match = router.match(path);
+            RequestRouter.Route expectedRoute = null;
+            String expectedObjectId = null;
+            String expectedPath = null;
+            var expectedVersionNum = -1;
+            for (int i = 0; i < Patterns.size(); i++) {
+                var matcher = Patterns.get(i).matcher(path);
+                if (matcher.matches()) {
+                    expectedRoute = Routes.get(i);
+                    expectedObjectId = decode(matcher.group(1));
+                    if (matcher.groupCount() == 2 && expectedRoute != RequestRouter.Route.OBJECT_VERSION_FILES) {
+                        expectedPath = decode(matcher.group(2));
+                    } else if (matcher.groupCount() >= 2) {
+                        expectedVersionNum = Integer.parseInt(matcher.group(2));
+                    }
+                    if (matcher.groupCount() == 3) {
+                        expectedPath = decode(matcher.group(3));
+                    }
+                    break;
+                }
+            }
+            if (expectedRoute == null) {
+                Assertions.assertNull(match, path);
+            } else {
+                Assertions.assertNotNull(match, path);
+                Assertions.assertEquals(expectedRoute, match.route, path);
+                Assertions.assertEquals(expectedObjectId, match.objectId, path);
+                Assertions.assertEquals(expectedPath, match.path, path);
+                Assertions.assertEquals(expectedVersionNum, match.versionNum, path);
+            }
+        }
+    }
+
+    @Test
+    public void testStagedRoutes() {
+        var router = new RequestRouter();
+        var match = router.match("/testsuite:1/staged");
+        Assertions.assertEquals(RequestRouter.Route.OBJECT_STAGED, match.route);
+        Assertions.assertEquals("testsuite:1", match.objectId);
+        match = router.match("/testsuite:1/staged/files");
+        Assertions.assertEquals(RequestRouter.Route.OBJECT_STAGED_FILES, match.route);
+        match = router.match("/testsuite:1/staged/files/a%20b.txt");
+        Assertions.assertEquals(RequestRouter.Route.OBJECT_STAGED_PATH, match.route);
+        Assertions.assertEquals("a b.txt", match.path);
+        //an object can still be called "staged"
+        match = router.match("/staged/files");
+        Assertions.assertEquals(RequestRouter.Route.OBJECT_FILES, match.route);
+        Assertions.assertEquals("staged", match.objectId);
+        Assertions.assertNull(router.match("/testsuite:1/staged/files/a.txt/content"));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ResponseCacheTest {
+
+    static BufferedResponse.Rendered rendered(int size) {
+        return new BufferedResponse.Rendered(200, "application/json", "x".repeat(size).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInvalidateObject() {
+        var cache = new ResponseCache(1024 * 1024);
+        cache.put("object1", cache.getGeneration("object1"), "files object1 v1", rendered(10));
+        cache.put("object1", cache.getGeneration("object1"), "versions object1 v1", rendered(10));
+        cache.put("object2", cache.getGeneration("object2"), "files object2 v1", rendered(10));
+        cache.invalidate("object1");
+        Assertions.assertNull(cache.get("files object1 v1"));
+        Assertions.assertNull(cache.get("versions object1 v1"));
+        Assertions.assertNotNull(cache.get("files object2 v1"));
+        //a key that's put again after it was replaced is still dropped with its object
+        cache.put("object2", cache.getGeneration("object2"), "files object2 v1", rendered(20));
+        cache.put("object2", cache.getGeneration("object2"), "files object2 v1", rendered(30));
+        cache.invalidate("object2");
+        Assertions.assertNull(cache.get("files object2 v1"));
+        cache.invalidate("object3");
+    }
+
+    @Test
+    public void testRenderedBeforeInvalidate() {
+        var cache = new ResponseCache(1024 * 1024);
+        //a render that started before a write's invalidation isn't cached, even under a new key
+        var generation = cache.getGeneration("object1");
+        cache.invalidate("object1");
+        cache.put("object1", generation, "files object1 v2", rendered(10));
+        Assertions.assertNull(cache.get("files object1 v2"));
+        Assertions.assertEquals(0, cache.getEntries());
+        cache.put("object1", cache.getGeneration("object1"), "files object1 v2", rendered(10));
+        Assertions.assertNotNull(cache.get("files object1 v2"));
+        generation = cache.getGeneration("object1");
+        cache.invalidateAll();
+        cache.put("object1", generation, "files object1 v2", rendered(10));
+        Assertions.assertNull(cache.get("files object1 v2"));
+    }
+
+    @Test
+    public void testMemoryCap() {
+        var cache = new ResponseCache(10000);
+        for (int i = 0; i < 100; i++) {
+            cache.put("object" + i, cache.getGeneration("object" + i), "files object" + i + " v1", rendered(1000));
+        }
+        cache.get("files object0 v1");
+        //evictions are done on other threads
+        var deadline = System.currentTimeMillis() + 5000;
+        while ((cache.getWeightedSize() > 10000 || cache.getStats().evictionCount() < 90) && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        Assertions.assertTrue(cache.getWeightedSize() <= 10000, "weighted size " + cache.getWeightedSize());
+        Assertions.assertTrue(cache.getStats().evictionCount() >= 90, "evictions " + cache.getStats().evictionCount());
+        //a response bigger than the whole cap isn't kept
+        cache.put("big", cache.getGeneration("big"), "files big v1", rendered(20000));
+        Assertions.assertTrue(cache.getWeightedSize() <= 10000);
+    }
+}
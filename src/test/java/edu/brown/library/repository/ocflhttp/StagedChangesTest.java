@@ -0,0 +1,193 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import javax.json.Json;
+import javax.json.JsonObject;
+import org.eclipse.jetty.server.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StagedChangesTest {
+
+    Server server;
+    OcflHttp ocflHttp;
+    Path tmpRoot;
+    Path workDir;
+    HttpClient client;
+    String objectId = "testsuite:staged";
+    String boundary = "AaB03x";
+
+    @BeforeEach
+    private void setup() throws Exception {
+        tmpRoot = Files.createTempDirectory("ocfl-java-http-tests");
+        workDir = Files.createTempDirectory("ocfl-java-http-tests-work");
+        ocflHttp = new OcflHttp(tmpRoot, workDir);
+        server = OcflHttp.getServer(8000, 8, 60);
+        server.setHandler(ocflHttp);
+        server.start();
+        client = HttpClient.newHttpClient();
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("existing".getBytes(StandardCharsets.UTF_8)), "existing.txt");
+        });
+    }
+
+    @AfterEach
+    private void teardown() throws Exception {
+        server.stop();
+        TestUtils.deleteDirectory(tmpRoot);
+        TestUtils.deleteDirectory(workDir);
+    }
+
+    HttpResponse<String> send(String method, String path, String multipartData) throws Exception {
+        var builder = HttpRequest.newBuilder(URI.create("http://localhost:8000/" + path));
+        if (multipartData == null) {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            builder.header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .method(method, HttpRequest.BodyPublishers.ofString(multipartData));
+        }
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    String filesData(String fileName, String contents) {
+        return "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n" +
+                "\r\n" +
+                "{}\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"" + fileName + "\"\r\n" +
+                "\r\n" +
+                contents + "\r\n" +
+                "--" + boundary + "--";
+    }
+
+    String renameData(String oldPath, String newPath) {
+        return "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"rename\"\r\n" +
+                "\r\n" +
+                "{\"old\": \"" + oldPath + "\", \"new\": \"" + newPath + "\"}\r\n" +
+                "--" + boundary + "--";
+    }
+
+    JsonObject getJson(String path) throws Exception {
+        var response = send("GET", path, null);
+        Assertions.assertEquals(200, response.statusCode(), response.body());
+        return Json.createReader(new StringReader(response.body())).readObject();
+    }
+
+    @Test
+    public void testStageAndCommit() throws Exception {
+        Assertions.assertFalse(getJson(objectId + "/staged").getBoolean("staged"));
+        Assertions.assertEquals(201, send("PUT", objectId + "/staged/files", filesData("a.txt", "a")).statusCode());
+        Assertions.assertEquals(201, send("PUT", objectId + "/staged/files", filesData("b.txt", "b")).statusCode());
+        var response = send("PUT", objectId + "/staged/files", filesData("a.txt", "a again"));
+        Assertions.assertEquals(409, response.statusCode());
+        Assertions.assertTrue(response.body().contains("already exist"), response.body());
+        Assertions.assertEquals(204, send("PUT", objectId + "/staged/files", renameData("b.txt", "c.txt")).statusCode());
+        Assertions.assertEquals(204, send("DELETE", objectId + "/staged/files/existing.txt", null).statusCode());
+
+        //the staged changes are visible, but they're not a version yet
+        Assertions.assertTrue(getJson(objectId + "/staged").getBoolean("staged"));
+        var listing = getJson(objectId + "/files");
+        Assertions.assertEquals("v2", listing.getString("version"));
+        Assertions.assertTrue(listing.getBoolean("staged"));
+        Assertions.assertEquals(Set.of("a.txt", "c.txt"), listing.getJsonObject("files").keySet());
+        response = send("GET", objectId + "/files/c.txt/content", null);
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("b", response.body());
+        Assertions.assertTrue(getJson(objectId + "/versions").getJsonObject("v2").getBoolean("staged"));
+        //a regular write has to wait until they're committed or discarded
+        Assertions.assertEquals(409, send("PUT", objectId + "/files", filesData("d.txt", "d")).statusCode());
+
+        Assertions.assertEquals(201, send("POST", objectId + "/staged?message=batch&userName=bot&userAddress=bot%40school.edu", null).statusCode());
+        var version = ocflHttp.repo.describeVersion(ObjectVersionId.head(objectId));
+        Assertions.assertEquals("v2", version.getVersionNum().toString());
+        Assertions.assertFalse(version.isMutable());
+        Assertions.assertEquals("batch", version.getVersionInfo().getMessage());
+        Assertions.assertEquals(2, ocflHttp.repo.describeObject(objectId).getVersionMap().size());
+        listing = getJson(objectId + "/files");
+        Assertions.assertFalse(listing.containsKey("staged"));
+        Assertions.assertEquals(Set.of("a.txt", "c.txt"), listing.getJsonObject("files").keySet());
+        Assertions.assertFalse(getJson(objectId + "/staged").getBoolean("staged"));
+        //nothing left to commit
+        Assertions.assertEquals(409, send("POST", objectId + "/staged", null).statusCode());
+        Assertions.assertEquals(201, send("PUT", objectId + "/files", filesData("d.txt", "d")).statusCode());
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        Assertions.assertEquals(201, send("PUT", objectId + "/staged/files", filesData("a.txt", "a")).statusCode());
+        Assertions.assertEquals(201, send("PUT", objectId + "/staged/files?updateExisting=true", filesData("existing.txt", "changed")).statusCode());
+        Assertions.assertEquals(204, send("DELETE", objectId + "/staged", null).statusCode());
+        Assertions.assertFalse(getJson(objectId + "/staged").getBoolean("staged"));
+        var listing = getJson(objectId + "/files");
+        Assertions.assertEquals("v1", listing.getString("version"));
+        Assertions.assertEquals(Set.of("existing.txt"), listing.getJsonObject("files").keySet());
+        var response = send("GET", objectId + "/files/existing.txt/content", null);
+        Assertions.assertEquals("existing", response.body());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        Assertions.assertEquals(404, send("GET", "testsuite:nonexistent/staged", null).statusCode());
+        Assertions.assertEquals(404, send("POST", "testsuite:nonexistent/staged", null).statusCode());
+        Assertions.assertEquals(404, send("DELETE", "testsuite:nonexistent/staged", null).statusCode());
+        Assertions.assertEquals(404, send("DELETE", objectId + "/staged/files/nonexistent.txt", null).statusCode());
+        Assertions.assertEquals(404, send("PUT", objectId + "/staged/files", renameData("nonexistent.txt", "new.txt")).statusCode());
+        Assertions.assertEquals(405, send("GET", objectId + "/staged/files", null).statusCode());
+        var data = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n" +
+                "\r\n" +
+                "{\"a.txt\": {\"checksumType\": \"MD5\", \"checksum\": \"abcd\"}}\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n" +
+                "\r\n" +
+                "a\r\n" +
+                "--" + boundary + "--";
+        Assertions.assertEquals(409, send("PUT", objectId + "/staged/files", data).statusCode());
+        Assertions.assertFalse(getJson(objectId + "/staged").getBoolean("staged"));
+    }
+
+    @Test
+    public void testInvalidUploads() throws Exception {
+        //same 400s as a regular PUT to /files
+        var response = send("PUT", objectId + "/staged/files", filesData("a//b.txt", "a"));
+        Assertions.assertEquals(400, response.statusCode(), response.body());
+        var data = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n" +
+                "\r\n" +
+                "{\"a.txt\": {\"checksumType\": \"FOO\", \"checksum\": \"abcd\"}}\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n" +
+                "\r\n" +
+                "a\r\n" +
+                "--" + boundary + "--";
+        response = send("PUT", objectId + "/staged/files", data);
+        Assertions.assertEquals(400, response.statusCode(), response.body());
+        Assertions.assertFalse(getJson(objectId + "/staged").getBoolean("staged"));
+    }
+
+    @Test
+    public void testStageNewObject() throws Exception {
+        var newObjectId = "testsuite:newstaged";
+        Assertions.assertEquals(201, send("PUT", newObjectId + "/staged/files", filesData("a.txt", "a")).statusCode());
+        Assertions.assertEquals(201, send("POST", newObjectId + "/staged", null).statusCode());
+        var response = send("GET", newObjectId + "/files/a.txt/content", null);
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("a", response.body());
+    }
+}
@@ -0,0 +1,87 @@
+package edu.brown.library.repository.ocflhttp;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.stream.Stream;
+
+/*
+Runs all the upload tests again with streaming uploads turned on, plus a few tests of the parser itself.
+ */
+public class StreamingUploadTest extends MultipleFilesUploadTest {
+
+    @BeforeEach
+    private void enableStreamingUploads() {
+        ocflHttp.streamingUploads = true;
+    }
+
+    @Test
+    public void testLargeUploadNotSpooled() throws Exception {
+        var file1Contents = "0123456789abcdef".repeat(100000);
+        var uri = URI.create("http://localhost:8000/" + encodedObjectId + "/files");
+        var multipartData = "--" + boundary + "\r\n" +
+                paramsContentDisposition + "\r\n" +
+                "\r\n" +
+                "{}\r\n" +
+                "--" + boundary + "\r\n" +
+                file1ContentDisposition + "\r\n" +
+                "\r\n" +
+                file1Contents + "\r\n" +
+                "--" + boundary + "--";
+        var request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", contentTypeHeader)
+                .POST(HttpRequest.BodyPublishers.ofString(multipartData)).build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(201, response.statusCode());
+        var jettyDir = workDir.resolve("jetty");
+        if (Files.exists(jettyDir)) {
+            try (Stream stream = Files.list(jettyDir)) {
+                Assertions.assertEquals(0, stream.count());
+            }
+        }
+        try (var stream = ocflHttp.repo.getObject(ObjectVersionId.head(objectIdNFC)).getFile(file1NameNFC).getStream()) {
+            Assertions.assertEquals(file1Contents, new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testParser() throws Exception {
+        //boundary-like bytes in the content, & small reads that end in the middle of the delimiter
+        var body = "preamble\r\n--xyz\r\n" +
+                "Content-Disposition: form-data; name=\"files\"; filename=\"a \\\"b\\\".txt\"\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "\r\n" +
+                "line1\r\n--xy\r\n-xyz" + "\r\n" +
+                "--xyz\r\n" +
+                "Content-Disposition: form-data; name=\"params\"\r\n" +
+                "\r\n" +
+                "\r\n" +
+                "--xyz--\r\n" +
+                "epilogue";
+        var in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        var parser = new StreamingMultipartParser(in, StreamingMultipartParser.getBoundary("multipart/form-data; boundary=\"xyz\""));
+        Assertions.assertTrue(parser.next());
+        Assertions.assertEquals("files", parser.getName());
+        Assertions.assertEquals("a \"b\".txt", parser.getFileName());
+        Assertions.assertEquals("line1\r\n--xy\r\n-xyz", new String(parser.getPartStream().readAllBytes(), StandardCharsets.UTF_8));
+        Assertions.assertTrue(parser.next());
+        Assertions.assertEquals("params", parser.getName());
+        Assertions.assertNull(parser.getFileName());
+        Assertions.assertEquals("", new String(parser.getPartStream().readAllBytes(), StandardCharsets.UTF_8));
+        Assertions.assertFalse(parser.next());
+        Assertions.assertFalse(parser.next());
+    }
+}
@@ -0,0 +1,82 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TechnicalMetadataStoreTest {
+
+    Path tmpDir;
+    String objectId = "testsuite:1";
+
+    @BeforeEach
+    private void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("ocfl-java-http");
+    }
+
+    @AfterEach
+    private void teardown() throws Exception {
+        TestUtils.deleteDirectory(tmpDir);
+    }
+
+    void recordVersions(TechnicalMetadataStore store) throws Exception {
+        //every version re-records the same two digests under new paths (eg. after renames)
+        for (int i = 0; i < 5; i++) {
+            store.record(objectId, Map.of(
+                    "sha512-aaa", new TechnicalMetadataStore.FileMetadata(4, Map.of("file1-" + i + ".txt", "text/plain")),
+                    "sha512-bbb", new TechnicalMetadataStore.FileMetadata(10, Map.of("file2-" + i + ".xml", "application/xml"))));
+        }
+    }
+
+    void assertMerged(TechnicalMetadataStore store) {
+        var file1 = store.get(objectId, "sha512-aaa");
+        Assertions.assertEquals(4, file1.size);
+        Assertions.assertEquals(5, file1.mimetypes.size());
+        Assertions.assertEquals("text/plain", file1.mimetypes.get("file1-0.txt"));
+        Assertions.assertEquals("text/plain", file1.mimetypes.get("file1-4.txt"));
+        var file2 = store.get(objectId, "sha512-bbb");
+        Assertions.assertEquals(10, file2.size);
+        Assertions.assertEquals(5, file2.mimetypes.size());
+        Assertions.assertEquals("application/xml", file2.mimetypes.get("file2-2.xml"));
+    }
+
+    @Test
+    public void testCompactedOnAppend() throws Exception {
+        var store = new TechnicalMetadataStore(tmpDir, 1000);
+        store.compactThreshold = 3;
+        //load the (empty) entry, so the appends are tracked in memory
+        Assertions.assertNull(store.get(objectId, "sha512-aaa"));
+        recordVersions(store);
+        //the 3rd & 5th versions left more superseded entries than live ones, so the file was rewritten both times
+        Assertions.assertEquals(1, Files.readAllLines(store.getMetadataPath(objectId), StandardCharsets.UTF_8).size());
+        assertMerged(store);
+        assertMerged(new TechnicalMetadataStore(tmpDir, 1000));
+        try (var files = Files.list(store.getMetadataPath(objectId).getParent())) {
+            Assertions.assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testCompactedOnLoad() throws Exception {
+        recordVersions(new TechnicalMetadataStore(tmpDir, 1000));
+        var path = new TechnicalMetadataStore(tmpDir, 1000).getMetadataPath(objectId);
+        Assertions.assertEquals(5, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+
+        //below the threshold - left alone
+        var store = new TechnicalMetadataStore(tmpDir, 1000);
+        assertMerged(store);
+        Assertions.assertEquals(5, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+
+        store = new TechnicalMetadataStore(tmpDir, 1000);
+        store.compactThreshold = 3;
+        assertMerged(store);
+        Assertions.assertEquals(1, Files.readAllLines(path, StandardCharsets.UTF_8).size());
+        assertMerged(new TechnicalMetadataStore(tmpDir, 1000));
+    }
+}
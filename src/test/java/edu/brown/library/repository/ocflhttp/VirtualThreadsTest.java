@@ -0,0 +1,140 @@
+package edu.brown.library.repository.ocflhttp;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import org.eclipse.jetty.server.Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadsTest {
+
+    Server server;
+    Path tmpRoot;
+    Path workDir;
+    HttpClient client;
+    String objectId = "testsuite:virtual";
+
+    @BeforeEach
+    private void setup() throws Exception {
+        tmpRoot = Files.createTempDirectory("ocfl-java-http-tests");
+        workDir = Files.createTempDirectory("ocfl-java-http-tests-work");
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    private void teardown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+        TestUtils.deleteDirectory(tmpRoot);
+        TestUtils.deleteDirectory(workDir);
+    }
+
+    OcflHttpConfig getConfig() throws Exception {
+        var config = OcflHttpConfig.of(tmpRoot, workDir, OcflHttpConfig.DEFAULT_FILE_SIZE_THRESHOLD, List.of());
+        config.virtualThreads = true;
+        return config;
+    }
+
+    void startServer(OcflHttp ocflHttp) throws Exception {
+        ocflHttp.repo.updateObject(ObjectVersionId.head(objectId), new VersionInfo(), updater -> {
+            updater.writeFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), "file1");
+        });
+        server = OcflHttp.getServer(8000, 8, 60);
+        server.setHandler(ocflHttp);
+        server.start();
+    }
+
+    void checkRequests() throws Exception {
+        var futures = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+        for (int i = 0; i < 20; i++) {
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/" + objectId + "/files/file1/content")).build();
+            futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (var future : futures) {
+            var response = future.get();
+            Assertions.assertEquals(200, response.statusCode());
+            Assertions.assertEquals("data", response.body());
+        }
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:8000/" + objectId + "/files/file2/content")).build();
+        Assertions.assertEquals(404, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    public void testRequestExecutor() throws Exception {
+        //same dispatch as virtual threads, but with a platform thread pool, so it runs on any Java version
+        var executed = new AtomicInteger();
+        var ocflHttp = new OcflHttp(getConfig()) {
+            @Override
+            ExecutorService newRequestExecutor() {
+                var pool = Executors.newCachedThreadPool();
+                return new AbstractExecutorService() {
+                    public void execute(Runnable command) {
+                        executed.incrementAndGet();
+                        pool.execute(command);
+                    }
+                    public void shutdown() {
+                        pool.shutdown();
+                    }
+                    public List<Runnable> shutdownNow() {
+                        return pool.shutdownNow();
+                    }
+                    public boolean isShutdown() {
+                        return pool.isShutdown();
+                    }
+                    public boolean isTerminated() {
+                        return pool.isTerminated();
+                    }
+                    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                        return pool.awaitTermination(timeout, unit);
+                    }
+                };
+            }
+        };
+        startServer(ocflHttp);
+        checkRequests();
+        Assertions.assertEquals(21, executed.get());
+        server.stop();
+        Assertions.assertNull(ocflHttp.requestExecutor);
+        server = null;
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        var ocflHttp = new OcflHttp(getConfig());
+        if (Runtime.version().feature() < 21) {
+            server = OcflHttp.getServer(8000, 8, 60);
+            server.setHandler(ocflHttp);
+            Assertions.assertThrows(IllegalStateException.class, () -> server.start());
+            server.stop();
+            server = null;
+        }
+        //CI's Java 21 job sets this, so the test can't quietly skip there
+        if (Boolean.getBoolean("virtualThreads.required")) {
+            Assertions.assertTrue(Runtime.version().feature() >= 21, "virtualThreads.required, but this is Java " + Runtime.version().feature());
+        }
+        Assumptions.assumeTrue(Runtime.version().feature() >= 21, "virtual threads need Java 21");
+        startServer(ocflHttp);
+        checkRequests();
+    }
+}